@@ -0,0 +1,158 @@
+package bci.bench;
+
+import bci.core.IntMap;
+import bci.core.LinkedIntMap;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the memory used by, and the time to look up entries of, the maps a library keeps its
+ * users, works and requests in by ID: {@link HashMap} and {@link LinkedHashMap}, as in earlier
+ * versions, against {@link IntMap} and {@link LinkedIntMap}.
+ * <p>
+ * Each map holds consecutive IDs from 1, as assigned by a library, mapped to values shared by
+ * every map, so that only the memory of the map itself is counted. Memory is measured as the
+ * growth of the used heap after garbage collection; lookups are of IDs picked at random.
+ * <p>
+ * Usage: {@code java -cp bin:bench_bin bci.bench.MapBench [sizes...]}, or
+ * {@code make bench BENCH=MapBench}, where each size is the number of entries of a map (by
+ * default 10000, 100000 and 1000000).
+ */
+public class MapBench {
+
+    /**
+     * Number of times each measurement is repeated; the best time is reported.
+     */
+    private static final int ROUNDS = 5;
+
+    /**
+     * Number of lookups timed in each round.
+     */
+    private static final int LOOKUPS = 1 << 22;
+
+    /**
+     * Keeps the results of lookups, so that they are not optimized away.
+     */
+    private static int _sink;
+
+    /**
+     * @param args the sizes of the maps to measure.
+     */
+    public static void main(String[] args) {
+        int[] sizes = args.length == 0 ? new int[]{10000, 100000, 1000000} : new int[args.length];
+        for (int i = 0; i < args.length; i++)
+            sizes[i] = Integer.parseInt(args[i]);
+
+        System.out.printf("%8s %14s %14s %12s%n", "size", "map", "bytes/entry", "ns/get");
+        for (int size : sizes)
+            measure(size);
+        if (_sink == 42)
+            System.out.println();
+    }
+
+    /**
+     * Measures every compared map of a given size.
+     *
+     * @param size the number of entries of the maps.
+     */
+    private static void measure(int size) {
+        Object[] values = new Object[size + 1];
+        for (int id = 1; id <= size; id++)
+            values[id] = new Object();
+        int[] ids = new int[LOOKUPS];
+        Random random = new Random(size);
+        for (int i = 0; i < LOOKUPS; i++)
+            ids[i] = 1 + random.nextInt(size);
+
+        measure(size, "HashMap", () -> {
+            Map<Integer, Object> map = new HashMap<>();
+            for (int id = 1; id <= size; id++)
+                map.put(id, values[id]);
+            return map;
+        }, map -> {
+            int found = 0;
+            for (int id : ids)
+                found += map.get(id) == null ? 0 : 1;
+            return found;
+        });
+        measure(size, "IntMap", () -> {
+            IntMap<Object> map = new IntMap<>();
+            for (int id = 1; id <= size; id++)
+                map.put(id, values[id]);
+            return map;
+        }, map -> {
+            int found = 0;
+            for (int id : ids)
+                found += map.get(id) == null ? 0 : 1;
+            return found;
+        });
+        measure(size, "LinkedHashMap", () -> {
+            Map<Integer, Object> map = new LinkedHashMap<>();
+            for (int id = 1; id <= size; id++)
+                map.put(id, values[id]);
+            return map;
+        }, map -> {
+            int found = 0;
+            for (int id : ids)
+                found += map.get(id) == null ? 0 : 1;
+            return found;
+        });
+        measure(size, "LinkedIntMap", () -> {
+            LinkedIntMap<Object> map = new LinkedIntMap<>();
+            for (int id = 1; id <= size; id++)
+                map.put(id, values[id]);
+            return map;
+        }, map -> {
+            int found = 0;
+            for (int id : ids)
+                found += map.get(id) == null ? 0 : 1;
+            return found;
+        });
+    }
+
+    /**
+     * Measures a map of a given size.
+     *
+     * @param size    the number of entries of the map.
+     * @param name    the name of the map.
+     * @param builder builds the map.
+     * @param lookups looks up the IDs picked at random, counting those found.
+     * @param <M>     the type of the map.
+     */
+    private static <M> void measure(int size, String name, Builder<M> builder, Lookups<M> lookups) {
+        long before = usedMemory();
+        M map = builder.build();
+        long bytes = usedMemory() - before;
+
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            _sink += lookups.run(map);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%8d %14s %14.1f %12.1f%n", size, name, (double) bytes / size, (double) best / LOOKUPS);
+    }
+
+    /**
+     * Gets the memory used by live objects, after collecting garbage.
+     *
+     * @return the used heap, in bytes.
+     */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private interface Builder<M> {
+        M build();
+    }
+
+    private interface Lookups<M> {
+        int run(M map);
+    }
+}
@@ -0,0 +1,157 @@
+package bci.bench;
+
+import bci.core.Library;
+import bci.core.LibraryManager;
+import bci.core.exception.RequestRuleFailedException;
+import bci.core.work.Work;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Compares save and load times and saved file sizes across compression levels, on synthetic
+ * libraries of growing size.
+ * <p>
+ * Each library is imported from a generated import file, given some requests and returns, and
+ * then saved with {@link LibraryManager#saveAs(String)} at every compared level. Loading is
+ * timed up to the first use of every user and work, since saved files are read lazily.
+ * <p>
+ * Usage: {@code java -cp bin:bench_bin bci.bench.SaveBench [sizes...]}, where each size is the
+ * number of users and of works of a library (by default 1000, 10000 and 100000).
+ */
+public class SaveBench {
+
+    /**
+     * Compared compression levels.
+     */
+    private static final int[] LEVELS = {0, 1, 6, 9};
+
+    /**
+     * Number of times each measurement is repeated; the best time is reported.
+     */
+    private static final int ROUNDS = 3;
+
+    private static final String[] CATEGORIES = {"FICTION", "REFERENCE", "SCITECH"};
+
+    /**
+     * @param args the sizes of the libraries to measure.
+     */
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length == 0 ? new int[]{1000, 10000, 100000} : new int[args.length];
+        for (int i = 0; i < args.length; i++)
+            sizes[i] = Integer.parseInt(args[i]);
+
+        Path directory = Files.createTempDirectory("savebench");
+        try {
+            System.out.printf("%8s %6s %10s %10s %12s%n", "size", "level", "save ms", "load ms", "bytes");
+            for (int size : sizes)
+                measure(directory, size);
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator)
+                    Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Measures a library of a given size at every compared level.
+     *
+     * @param directory the directory to write files into.
+     * @param size      the number of users and of works of the library.
+     */
+    private static void measure(Path directory, int size) throws Exception {
+        Path imported = directory.resolve("library-" + size + ".import");
+        writeImportFile(imported, size);
+
+        for (int level : LEVELS) {
+            Path saved = directory.resolve("library-" + size + "-" + level);
+            long bestSave = Long.MAX_VALUE;
+            long bestLoad = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                LibraryManager manager = new LibraryManager(false);
+                manager.importFile(imported.toString());
+                populate(manager.getLibrary(), size);
+                manager.setCompressionLevel(level);
+
+                long start = System.nanoTime();
+                manager.saveAs(saved.toString());
+                bestSave = Math.min(bestSave, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                LibraryManager loaded = new LibraryManager(false);
+                loaded.load(saved.toString());
+                touch(loaded.getLibrary());
+                bestLoad = Math.min(bestLoad, System.nanoTime() - start);
+            }
+            System.out.printf("%8d %6d %10.1f %10.1f %12d%n", size, level, bestSave / 1e6, bestLoad / 1e6,
+                    Files.size(saved));
+        }
+    }
+
+    /**
+     * Writes an import file with a given number of users and of works, with creators shared by
+     * several works.
+     *
+     * @param file the file to write.
+     * @param size the number of users and of works.
+     */
+    private static void writeImportFile(Path file, int size) throws IOException {
+        Random random = new Random(size);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            for (int i = 0; i < size; i++)
+                out.println("USER:Utente " + i + ":utente" + i + "@bci.pt");
+            for (int i = 0; i < size; i++) {
+                String creator = "Autor " + random.nextInt(Math.max(1, size / 4));
+                String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+                int price = 5 + random.nextInt(60);
+                int copies = 1 + random.nextInt(10);
+                if (random.nextBoolean())
+                    out.println("BOOK:Livro " + i + ":" + creator + ":" + price + ":" + category + ":"
+                            + (1000000000L + i) + ":" + copies);
+                else
+                    out.println("DVD:Filme " + i + ":" + creator + ":" + price + ":" + category + ":"
+                            + (200000000 + i) + ":" + copies);
+            }
+        }
+    }
+
+    /**
+     * Adds requests to a library, returning some of them later.
+     *
+     * @param library the library.
+     * @param size    the number of users and of works of the library.
+     */
+    private static void populate(Library library, int size) throws Exception {
+        Random random = new Random(-size);
+        for (int i = 0; i < size; i++) {
+            int userId = random.nextInt(size) + 1;
+            int workId = random.nextInt(size) + 1;
+            try {
+                library.requestWork(userId, workId);
+            } catch (RequestRuleFailedException e) {
+                continue;
+            }
+            if (random.nextInt(3) == 0)
+                library.returnWork(userId, workId);
+        }
+        library.advanceDate(7);
+    }
+
+    /**
+     * Uses every user and work of a library, so that all of them are read from its file.
+     *
+     * @param library the library.
+     * @return a value depending on every user and work, so that the reads are not optimized away.
+     */
+    private static int touch(Library library) {
+        int hash = library.getUsers().stream().mapToInt(user -> user.toString().hashCode()).sum();
+        for (Work work : library.getWorks())
+            hash += work.toString().hashCode();
+        return hash;
+    }
+}
@@ -7,6 +7,7 @@ param(
     [string]$RunArgs,
     [switch]$Test,
     [switch]$Clean,
+    [switch]$Bench,
     [switch]$BuildJar
 )
 
@@ -16,6 +17,8 @@ param(
 $SRC_DIR     = "src"
 $BIN_DIR     = "bin"
 $PROJ_BIN    = "proj_bin"
+$BENCH_DIR   = "bench"
+$BENCH_BIN   = "bench_bin"
 $MAIN_CLASS  = "bci.app.App"
 $OUTPUT_JAR  = "proj.jar"
 $TEST_DIR    = "tests"
@@ -33,7 +36,7 @@ function Say($msg, $color="White") {
 # ==============================
 # Compilation
 # ==============================
-if ($Compile -or $Run -or $Test) {
+if ($Compile -or $Run -or $Test -or $Bench) {
     if (-not (Test-Path $BIN_DIR)) {
         New-Item -ItemType Directory -Path $BIN_DIR | Out-Null
     }
@@ -97,6 +100,23 @@ if ($Test) {
     & $TEST_SCRIPT
 }
 
+# ==============================
+# Run Benchmarks
+# ==============================
+if ($Bench) {
+    Say "→ Running benchmarks..." "Cyan"
+    if (-not (Test-Path $BENCH_BIN)) {
+        New-Item -ItemType Directory -Path $BENCH_BIN | Out-Null
+    }
+    $benchSources = Get-ChildItem -Path $BENCH_DIR -Recurse -Filter *.java | ForEach-Object { $_.FullName }
+    & javac -cp $CLASSPATH -d $BENCH_BIN $benchSources
+    if ($LASTEXITCODE -ne 0) {
+        Say "✗ Benchmark compilation failed." "Red"
+        exit 1
+    }
+    & java -cp "$CLASSPATH;$BENCH_BIN" bci.bench.SaveBench
+}
+
 # ==============================
 # Clean build artifacts
 # ==============================
@@ -104,6 +124,7 @@ if ($Clean) {
     Say "🧹 Cleaning up..." "Cyan"
     if (Test-Path $BIN_DIR) { Remove-Item -Recurse -Force $BIN_DIR }
     if (Test-Path $PROJ_BIN) { Remove-Item -Recurse -Force $PROJ_BIN }
+    if (Test-Path $BENCH_BIN) { Remove-Item -Recurse -Force $BENCH_BIN }
     if (Test-Path $OUTPUT_JAR) { Remove-Item -Force $OUTPUT_JAR }
 
     Get-ChildItem -Path $TEST_DIR -Recurse -Include *.outhyp, *.diff -ErrorAction SilentlyContinue | Remove-Item -Force
@@ -84,6 +84,7 @@ Get-ChildItem -Path $TEST_DIR -Filter '*.in' -File -ErrorAction SilentlyContinue
     $baseName     = [System.IO.Path]::GetFileNameWithoutExtension($_.Name)
     $inputFile    = Join-Path $TEST_DIR "$baseName.in"
     $importFile   = Join-Path $TEST_DIR "$baseName.import"
+    $optsFile     = Join-Path $TEST_DIR "$baseName.opts"
     $expectedFile = Join-Path $TEST_DIR "$baseName.out"
     $outputFile   = Join-Path $TEST_DIR "$baseName.outhyp"
     $diffFile     = Join-Path $TEST_DIR "$baseName.diff"
@@ -91,6 +92,7 @@ Get-ChildItem -Path $TEST_DIR -Filter '*.in' -File -ErrorAction SilentlyContinue
     # Run program
     $javaArgs = @("-cp", "`"$CLASSPATH`"", "-Din=`"$inputFile`"", "-DwriteInput=false", "-Dout=`"$outputFile`"")
     if (Test-Path $importFile) { $javaArgs += "-Dimport=`"$importFile`"" }
+    if (Test-Path $optsFile) { $javaArgs = @((Get-Content $optsFile -Raw).Trim() -split '\s+') + $javaArgs }
     & java @javaArgs $MAIN_CLASS
 
     $total++
@@ -150,4 +152,7 @@ Remove-Item "requisicao"
 Remove-Item "user"
 Remove-Item "user2.dat"
 Remove-Item "works"
+Remove-Item *.journal -ErrorAction SilentlyContinue
+Remove-Item *.archive -ErrorAction SilentlyContinue
+Remove-Item (Join-Path $TEST_DIR "*.cache") -ErrorAction SilentlyContinue
 
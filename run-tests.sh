@@ -54,15 +54,20 @@ for input_file in "$TEST_DIR"/*.in; do
     test_name=$(basename "${input_file%.in}")
 
     import_file="${input_file%.in}.import"
+    opts_file="${input_file%.in}.opts"
     expected_file="${input_file%.in}.out"
     output_file="${input_file%.in}.outhyp"
     diff_file="${input_file%.in}.diff"
 
-    # Run program
+    # Run program, with the JVM options of the test, if any
+    opts=()
+    if [ -e "$opts_file" ]; then
+        read -r -a opts < "$opts_file"
+    fi
     if [ -e "$import_file" ]; then
-        java -cp "$JAR:$BIN_DIR" -Dimport="$import_file" -Din="$input_file" -DwriteInput=false -Dout="$output_file" "$MAIN_CLASS" >/dev/null 2>&1
+        java -cp "$JAR:$BIN_DIR" "${opts[@]}" -Dimport="$import_file" -Din="$input_file" -DwriteInput=false -Dout="$output_file" "$MAIN_CLASS" >/dev/null 2>&1
     else
-        java -cp "$JAR:$BIN_DIR" -Din="$input_file" -DwriteInput=false -Dout="$output_file" "$MAIN_CLASS" >/dev/null 2>&1
+        java -cp "$JAR:$BIN_DIR" "${opts[@]}" -Din="$input_file" -DwriteInput=false -Dout="$output_file" "$MAIN_CLASS" >/dev/null 2>&1
     fi
 
     # Check output exists
@@ -117,3 +122,6 @@ echo "=============================="
 rm -f user
 rm -f user2.dat
 rm -f works
+rm -f *.journal
+rm -f *.archive
+rm -f "$TEST_DIR"/*.cache
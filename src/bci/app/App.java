@@ -3,6 +3,7 @@ package bci.app;
 import pt.tecnico.uilib.Dialog;
 
 import bci.core.LibraryManager;
+import bci.core.SaveStatus;
 import bci.core.exception.ImportFileException;
 
 /**
@@ -15,7 +16,11 @@ public class App {
     public static void main(String[] args) {
         try (var ui = Dialog.UI) {
 
-            var mgr = new LibraryManager();
+            var mgr = new LibraryManager(Boolean.getBoolean("backgroundSave"));
+            mgr.setCompressionLevel(Integer.getInteger("saveCompression", 0));
+            mgr.setCheckpointInterval(Integer.getInteger("checkpointInterval", 1000));
+            mgr.setImportThreads(Integer.getInteger("importThreads", 1));
+            mgr.setImportCache(Boolean.getBoolean("importCache"));
             String datafile = System.getProperty("import");
             if (datafile != null) {
                 try {
@@ -29,6 +34,10 @@ public class App {
             }
 
             new bci.app.main.Menu(mgr).open();
+
+            mgr.awaitPendingSaves();
+            if (mgr.getSaveStatus() == SaveStatus.FAILED)
+                System.err.println("Error saving: " + mgr.getSaveError().getMessage());
         }
     }
 }
@@ -0,0 +1,54 @@
+package bci.app;
+
+import pt.tecnico.uilib.Display;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Shows long listings a page at a time in the text interface, so the first lines are printed as
+ * soon as they are read and only one page of text is held at once. The text printed is the same
+ * as a single popup of all the lines. Other interfaces show each popup in a window of its own, so
+ * listings are shown there in a single popup.
+ */
+public final class PagedDisplay {
+
+    /**
+     * Number of lines shown at a time.
+     */
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * Whether the text interface is used, as chosen by the {@code ui} property read by
+     * {@link pt.tecnico.uilib.Dialog}.
+     */
+    private static final boolean TEXT_UI = !List.of("swing", "newswing").contains(System.getProperty("ui", "text"));
+
+    private PagedDisplay() {
+    }
+
+    /**
+     * Shows the string representation of each item in its own line, a page at a time in the text
+     * interface. A single empty page is shown when there are no items, as by
+     * {@link Display#popup(java.util.Collection)}.
+     *
+     * @param display the display to show the lines in.
+     * @param items   the items to show, consumed as they are shown.
+     */
+    public static void popup(Display display, Stream<?> items) {
+        Iterator<?> iterator = items.iterator();
+        int pageSize = TEXT_UI ? PAGE_SIZE : Integer.MAX_VALUE;
+        int lines = 0;
+        do {
+            if (iterator.hasNext()) {
+                display.addLine(iterator.next());
+                lines++;
+            }
+            if (lines == pageSize || !iterator.hasNext()) {
+                display.display();
+                lines = 0;
+            }
+        } while (iterator.hasNext());
+    }
+}
@@ -1,5 +1,7 @@
 package bci.app.exception;
 
+import java.util.List;
+
 /**
  * Messages for menu interactions.
  */
@@ -24,6 +26,21 @@ interface Message {
         return "O criador '" + id + "' não existe.";
     }
 
+    /**
+     * <code>noSuchCreator</code> gera a mensagem que indica que um criador não existe,
+     * seguida dos nomes de criadores mais próximos, se houver.
+     *
+     * @param id          é o identificador do criador (<code>string</code>)
+     * @param suggestions são os nomes de criadores sugeridos (<code>List</code>)
+     * @return <code>String</code> com a mensagem
+     */
+    static String noSuchCreator(String id, List<String> suggestions) {
+        if (suggestions.isEmpty()) {
+            return noSuchCreator(id);
+        }
+        return noSuchCreator(id) + " Sugestões: '" + String.join("', '", suggestions) + "'.";
+    }
+
     /**
      * <code>noSuchWork</code> gera a mensagem que indica que uma obra não existe.
      *
@@ -2,6 +2,8 @@ package bci.app.exception;
 
 import pt.tecnico.uilib.menus.CommandException;
 
+import java.util.List;
+
 /**
  * Exception thrown when a creator with the given identifier does not exist.
  */
@@ -19,4 +21,14 @@ public class NoSuchCreatorException extends CommandException {
     public NoSuchCreatorException(String id) {
         super(Message.noSuchCreator(id));
     }
+
+    /**
+     * Creates an exception for a missing creator, suggesting the names of existing creators.
+     *
+     * @param id          the creator identifier that was not found
+     * @param suggestions the names of the creators closest to the identifier, if any
+     */
+    public NoSuchCreatorException(String id, List<String> suggestions) {
+        super(Message.noSuchCreator(id, suggestions));
+    }
 }
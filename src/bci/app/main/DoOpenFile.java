@@ -37,7 +37,7 @@ class DoOpenFile extends Command<LibraryManager> {
     protected final void execute() throws CommandException {
         String filename = stringField("filename");
 
-        if (_receiver.getLibrary().isModified()) {
+        if (_receiver.hasUnsavedChanges()) {
             boolean saveBeforeExit = Form.confirm(Prompt.saveBeforeExit());
             if (saveBeforeExit) {
                 new DoSaveFile(_receiver).execute();
@@ -0,0 +1,35 @@
+package bci.app.main;
+
+import bci.core.LibraryManager;
+import bci.core.SaveStatus;
+import pt.tecnico.uilib.menus.Command;
+
+/**
+ * Command to show the status of the background saves.
+ * This class is part of the user interface layer and interacts with the `LibraryManager`
+ * to report whether the last save is still being written, was written or failed.
+ * The command is only available once a background save was started.
+ */
+class DoShowSaveStatus extends Command<LibraryManager> {
+
+    /**
+     * Constructs the command to show the save status.
+     *
+     * @param receiver the `LibraryManager` instance that handles the library operations.
+     */
+    DoShowSaveStatus(LibraryManager receiver) {
+        super(Label.SAVE_STATUS, receiver, manager -> manager.getSaveStatus() != SaveStatus.IDLE);
+    }
+
+    /**
+     * Executes the command to show the save status in a popup.
+     */
+    @Override
+    protected final void execute() {
+        _display.popup(switch (_receiver.getSaveStatus()) {
+            case IN_PROGRESS -> Message.saveInProgress();
+            case FAILED -> Message.saveFailed(_receiver.getSaveError().getMessage());
+            case IDLE, COMPLETED -> Message.saveCompleted();
+        });
+    }
+}
@@ -9,6 +9,7 @@ interface Label {
 
     String OPEN_FILE = "Abrir ficheiro";
     String SAVE_FILE = "Guardar ficheiro";
+    String SAVE_STATUS = "Estado da gravação";
 
     String DISPLAY_DATE = "Ver data";
     String ADVANCE_DATE = "Avançar data";
@@ -22,7 +22,8 @@ public class Menu extends pt.tecnico.uilib.menus.Menu {
                 new DoAdvanceDate(receiver), //
                 new DoOpenMenuUsers(receiver), //
                 new DoOpenMenuWorks(receiver), //
-                new DoOpenMenuRequests(receiver) //
+                new DoOpenMenuRequests(receiver), //
+                new DoShowSaveStatus(receiver) //
         );
     }
 }
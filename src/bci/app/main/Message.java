@@ -4,4 +4,16 @@ public interface Message {
     static String currentDate(int date) {
         return "Data actual: " + date;
     }
+
+    static String saveInProgress() {
+        return "Gravação em curso.";
+    }
+
+    static String saveCompleted() {
+        return "Gravação concluída.";
+    }
+
+    static String saveFailed(String reason) {
+        return "Falha na gravação: " + reason;
+    }
 }
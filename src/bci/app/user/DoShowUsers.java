@@ -1,7 +1,7 @@
 package bci.app.user;
 
+import bci.app.PagedDisplay;
 import bci.core.LibraryManager;
-import bci.core.user.User;
 import pt.tecnico.uilib.menus.Command;
 
 /**
@@ -23,15 +23,11 @@ class DoShowUsers extends Command<LibraryManager> {
 
     /**
      * Executes the command to display all users.
-     * Retrieves the list of all users from the `LibraryManager`, converts each user
-     * to its string representation, and displays the list in a popup.
+     * Streams the users from the `LibraryManager` and displays the string representation
+     * of each user, a page at a time, as the users are read.
      */
     @Override
     protected final void execute() {
-        _display.popup(_receiver.getLibrary()
-                                .getUsers()
-                                .stream()
-                                .map(User::toString)
-                                .toList());
+        PagedDisplay.popup(_display, _receiver.getLibrary().streamUsers());
     }
 }
\ No newline at end of file
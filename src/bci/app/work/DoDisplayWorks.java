@@ -1,7 +1,7 @@
 package bci.app.work;
 
+import bci.app.PagedDisplay;
 import bci.core.LibraryManager;
-import bci.core.work.Work;
 import pt.tecnico.uilib.menus.Command;
 
 /**
@@ -23,15 +23,11 @@ class DoDisplayWorks extends Command<LibraryManager> {
 
     /**
     * Executes the command to display all works.
-    * Retrieves the collection of works from the `LibraryManager`, converts each work
-    * to its string representation, and displays the list in a popup.
+    * Streams the works from the `LibraryManager` and displays the string representation
+    * of each work, a page at a time, as the works are read.
     */
     @Override
     protected final void execute() {
-        _display.popup(_receiver.getLibrary()
-                                .getWorks()
-                                .stream()
-                                .map(Work::toString)
-                                .toList());
+        PagedDisplay.popup(_display, _receiver.getLibrary().streamWorks());
     }
 }
\ No newline at end of file
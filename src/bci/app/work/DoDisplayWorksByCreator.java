@@ -1,11 +1,16 @@
 package bci.app.work;
 
+import bci.core.Library;
 import bci.core.LibraryManager;
 import bci.app.exception.NoSuchCreatorException;
 import bci.core.exception.NoSuchCreatorWithIdException;
 import bci.core.work.Work;
 import pt.tecnico.uilib.menus.Command;
 
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * Command to display all works by a specific creator in the library system.
  * This class is part of the user interface layer and interacts with the `LibraryManager`
@@ -13,6 +18,12 @@ import pt.tecnico.uilib.menus.Command;
  */
 class DoDisplayWorksByCreator extends Command<LibraryManager> {
 
+    /**
+     * Number of creator names suggested when no creator has the name given, set by the
+     * {@code creatorSuggestions} property; 3 by default, and none if set to 0.
+     */
+    private static final int SUGGESTIONS = Integer.getInteger("creatorSuggestions", 3);
+
     /**
      * Constructs the command to display works by a specific creator.
      * Initializes the command with the label and input field for the creator ID.
@@ -28,7 +39,7 @@ class DoDisplayWorksByCreator extends Command<LibraryManager> {
      * Executes the command to display works by a specific creator.
      * Reads the user-provided creator ID, retrieves the creator from the `LibraryManager`,
      * and displays the works associated with the creator. If the creator does not exist,
-     * throws a `NoSuchCreatorException`.
+     * throws a `NoSuchCreatorException` naming creators whose names start with or are close to it.
      *
      * @throws NoSuchCreatorException if the creator ID is invalid or the creator does not exist.
      */
@@ -43,7 +54,29 @@ class DoDisplayWorksByCreator extends Command<LibraryManager> {
                                     .map(Work::toString)
                                     .toList());
         } catch (NoSuchCreatorWithIdException e) {
-            throw new NoSuchCreatorException(creatorId);
+            throw new NoSuchCreatorException(creatorId, suggestionsFor(creatorId));
+        }
+    }
+
+    /**
+     * Suggests creator names for a name that no creator has: first the names starting with it,
+     * as when a name is typed in part, and then the names closest to it, as when it is mistyped.
+     *
+     * @param name the name given.
+     * @return the names suggested, at most {@link #SUGGESTIONS}.
+     */
+    private List<String> suggestionsFor(String name) {
+        if (SUGGESTIONS == 0) {
+            return List.of();
+        }
+        Library library = _receiver.getLibrary();
+        Set<String> suggestions = new LinkedHashSet<>(library.completeCreatorNames(name, SUGGESTIONS));
+        for (String closeName : library.suggestCreatorNames(name, SUGGESTIONS)) {
+            if (suggestions.size() == SUGGESTIONS) {
+                break;
+            }
+            suggestions.add(closeName);
         }
+        return List.copyOf(suggestions);
     }
 }
\ No newline at end of file
@@ -1,13 +1,24 @@
 package bci.app.work;
 
+import bci.app.PagedDisplay;
+import bci.core.Library;
 import bci.core.LibraryManager;
+import bci.core.WorkQuery;
 import bci.core.work.Work;
 import pt.tecnico.uilib.menus.Command;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
 /**
  * Command that performs a search for works using a user-provided term.
+ * The term is parsed as a {@link WorkQuery}, so it may combine clauses on the creators, title,
+ * category, type, availability and price of works, and is otherwise searched as a whole.
  * The matching works are retrieved from the receiver's library and displayed in
- * a popup as the string representation of each {@link Work}.
+ * a popup as the string representation of each {@link Work}, after the steps of the
+ * search when the term starts with {@code ?}.
  *
  * @since 1.0
  */
@@ -24,17 +35,24 @@ class DoPerformSearch extends Command<LibraryManager> {
 
     /**
      * Executes the search: reads the search term, queries the library for matching
-     * works, and displays the results in a popup.
+     * works, and displays the results a page at a time, as the works found are read.
      *
      * @see Command#execute()
      */
     @Override
     protected final void execute() {
-        String searchTerm = stringField("searchTerm");
-        _display.popup(_receiver.getLibrary()
-                                .searchWorksByTerm(searchTerm)
-                                .stream()
-                                .map(Work::toString)
-                                .toList());
+        WorkQuery query = WorkQuery.parse(stringField("searchTerm"));
+        Library library = _receiver.getLibrary();
+        if (!query.isExplain()) {
+            PagedDisplay.popup(_display, library.queryWorks(query));
+            return;
+        }
+
+        List<WorkQuery.Step> plan = new ArrayList<>();
+        Stream<Work> works = library.queryWorks(query, plan);
+        Stream<String> steps = IntStream.range(0, plan.size())
+                .mapToObj(i -> Message.queryStep(i + 1, plan.get(i).access(), plan.get(i).clauses(),
+                        plan.get(i).candidates()));
+        PagedDisplay.popup(_display, Stream.concat(steps, works));
     }
 }
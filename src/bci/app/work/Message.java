@@ -1,5 +1,7 @@
 package bci.app.work;
 
+import bci.core.WorkQuery;
+
 /**
  * Messages for menu interactions.
  */
@@ -46,4 +48,23 @@ interface Message {
     static String notEnoughInventory(int idWork, int amount) {
         return "A quantidade de exemplares da obra " + idWork + " não pode ser decrementada em " + amount + " (excederia o inventário).";
     }
+
+    /**
+     * <code>queryStep</code> generates the message describing a step of the plan of a search.
+     *
+     * @param number     the number of the step, from 1 (<code>int</code>)
+     * @param access     how the works of the step are found (<code>WorkQuery.Access</code>)
+     * @param clauses    the clauses of the search in the step (<code>String</code>)
+     * @param candidates the number of works left after the step (<code>int</code>)
+     * @return <code>String</code> with the message
+     */
+    static String queryStep(int number, WorkQuery.Access access, String clauses, int candidates) {
+        String how = switch (access) {
+            case CREATOR_INDEX -> "índice de criadores";
+            case TERM_INDEX -> "índice de termos";
+            case FACETS -> "mapas de bits";
+            case RESIDUAL -> "verificação";
+        };
+        return "Passo " + number + ": " + how + " " + clauses + " - " + candidates + " obras candidatas";
+    }
 }
@@ -0,0 +1,259 @@
+package bci.core;
+
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.regex.Pattern;
+
+/**
+ * Index of texts by edit distance, to find the texts closest to a mistyped one.
+ * <p>
+ * Texts are compared in lower case and without accents, by the Levenshtein distance between
+ * them: the number of characters inserted, deleted or replaced to turn one into the other. In a
+ * BK-tree, each node holds a text and has a child for each distance at which other texts lie
+ * from it. The distance between texts obeys the triangle inequality, so the texts within a
+ * distance of a query lie only under the children whose distance differs from that of the
+ * query to the node by at most as much, and the other children are skipped. The closest texts
+ * are found by shrinking that distance to the farthest of those found so far.
+ * <p>
+ * Each text is counted as many times as it is added, and is only found while its count is
+ * positive. The nodes are also kept by key, so texts already in the tree are counted without
+ * walking it. The nodes of texts removed are kept, to still lead to their children.
+ */
+final class BkTree {
+
+    /**
+     * Marks left by removing accents from decomposed characters.
+     */
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Orders matches from the farthest to the closest, for a queue that drops the farthest.
+     */
+    private static final Comparator<Match> FARTHEST_FIRST =
+            Comparator.comparingInt(Match::distance).thenComparing(Match::text).reversed();
+
+    private Node _root;
+
+    /**
+     * The nodes by their keys, to count texts already in the tree without walking it.
+     */
+    private final Map<String, Node> _nodes = new HashMap<>();
+
+    /**
+     * Number of nodes that hold some text, and that hold none.
+     */
+    private int _liveNodes;
+    private int _deadNodes;
+
+    /**
+     * Rows of the table of edit distances, reused between comparisons.
+     */
+    private int[] _previous = new int[16];
+    private int[] _current = new int[16];
+
+    /**
+     * Adds a text, or counts it once more.
+     *
+     * @param text the text.
+     */
+    void add(String text) {
+        String key = fold(text);
+        Node node = _nodes.get(key);
+        if (node == null) {
+            node = new Node(key);
+            _nodes.put(key, node);
+            _deadNodes++;
+            if (_root == null) {
+                _root = node;
+            } else {
+                Node parent = _root;
+                int distance = distance(key, parent._key);
+                while (parent.child(distance) != null) {
+                    parent = parent.child(distance);
+                    distance = distance(key, parent._key);
+                }
+                parent.setChild(distance, node);
+            }
+        }
+        if (node._texts.isEmpty()) {
+            _deadNodes--;
+            _liveNodes++;
+        }
+        node._texts.merge(text, 1, Integer::sum);
+    }
+
+    /**
+     * Counts a text once less, removing it when no longer counted.
+     *
+     * @param text the text.
+     */
+    void remove(String text) {
+        Node node = _nodes.get(fold(text));
+        Integer count = node == null ? null : node._texts.get(text);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            node._texts.put(text, count - 1);
+        } else {
+            node._texts.remove(text);
+            if (node._texts.isEmpty()) {
+                _liveNodes--;
+                _deadNodes++;
+            }
+        }
+    }
+
+    /**
+     * Checks if most nodes hold no text, so that the tree is better rebuilt.
+     *
+     * @return true if there are more nodes without texts than with them.
+     */
+    boolean isMostlyEmpty() {
+        return _deadNodes > _liveNodes;
+    }
+
+    /**
+     * Finds the texts closest to a query, within a distance.
+     *
+     * @param query       the query.
+     * @param count       the maximum number of texts found.
+     * @param maxDistance the maximum distance of the texts found to the query.
+     * @return the texts found, from the closest to the farthest, and alphabetically at the same
+     *         distance.
+     */
+    List<String> closest(String query, int count, int maxDistance) {
+        if (_root == null || count <= 0) {
+            return List.of();
+        }
+
+        String key = fold(query);
+        PriorityQueue<Match> best = new PriorityQueue<>(FARTHEST_FIRST);
+        int radius = maxDistance;
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(_root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int distance = distance(key, node._key);
+            if (distance <= radius) {
+                for (String text : node._texts.keySet()) {
+                    best.add(new Match(text, distance));
+                    if (best.size() > count) {
+                        best.poll();
+                    }
+                }
+                if (best.size() == count) {
+                    radius = best.peek().distance();
+                }
+            }
+            int from = Math.max(1, distance - radius);
+            int to = Math.min(node._children.length - 1, distance + radius);
+            for (int childDistance = from; childDistance <= to; childDistance++) {
+                if (node._children[childDistance] != null) {
+                    pending.push(node._children[childDistance]);
+                }
+            }
+        }
+
+        List<Match> matches = new ArrayList<>(best);
+        matches.sort(FARTHEST_FIRST.reversed());
+        return matches.stream().map(Match::text).toList();
+    }
+
+    /**
+     * Folds a text for comparison: decomposes its characters, drops their accents, and puts it
+     * in lower case.
+     *
+     * @param text the text.
+     * @return the folded text.
+     */
+    static String fold(String text) {
+        boolean ascii = true;
+        for (int i = 0; i < text.length() && ascii; i++) {
+            ascii = text.charAt(i) < 0x80;
+        }
+        if (ascii) {
+            return text.toLowerCase(Locale.ROOT);
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Computes the Levenshtein distance between two texts, one row of the table at a time.
+     *
+     * @param a a text.
+     * @param b another text.
+     * @return the number of characters inserted, deleted or replaced to turn one into the other.
+     */
+    private int distance(String a, String b) {
+        if (a.equals(b)) {
+            return 0;
+        }
+        if (_previous.length <= b.length()) {
+            _previous = new int[b.length() + 1];
+            _current = new int[b.length() + 1];
+        }
+        int[] previous = _previous;
+        int[] current = _current;
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int replaced = previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(replaced, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] row = previous;
+            previous = current;
+            current = row;
+        }
+        return previous[b.length()];
+    }
+
+    /**
+     * A text found, at its distance to the query.
+     *
+     * @param text     the text.
+     * @param distance its distance to the query.
+     */
+    private record Match(String text, int distance) {
+    }
+
+    /**
+     * A node of the tree: the texts folding to a key, and the children at each distance from it.
+     */
+    private static final class Node {
+
+        private final String _key;
+        private final Map<String, Integer> _texts = new LinkedHashMap<>(2);
+        private Node[] _children = new Node[0];
+
+        Node(String key) {
+            _key = key;
+        }
+
+        Node child(int distance) {
+            return distance < _children.length ? _children[distance] : null;
+        }
+
+        void setChild(int distance, Node child) {
+            if (distance >= _children.length) {
+                _children = Arrays.copyOf(_children, distance + 1);
+            }
+            _children[distance] = child;
+        }
+    }
+}
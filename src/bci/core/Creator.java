@@ -2,15 +2,22 @@ package bci.core;
 
 import bci.core.work.Work;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
- * Represents a creator with a name and a list of works.
+ * Represents a creator with a name and a set of works.
  * Implements Serializable for object serialization.
  */
 public class Creator implements Serializable {
@@ -18,8 +25,35 @@ public class Creator implements Serializable {
     @Serial
     private static final long serialVersionUID = 5840056146680662490L;
 
+    /**
+     * Order in which works are listed: by title, ignoring case, then by ID.
+     */
+    private static final Comparator<Work> LISTING_ORDER =
+            Comparator.comparing(Work::getTitleKey).thenComparingInt(Work::getId);
+
     private final String _name;
-    private final List<Work> _works;
+
+    /**
+     * The works of the creator, for constant-time membership checks.
+     */
+    private transient Set<Work> _workSet;
+
+    /**
+     * The works of the creator, kept in listing order as they are added.
+     */
+    private transient NavigableSet<Work> _sortedWorks;
+
+    /**
+     * The works of the creator as a list, which is how they are serialized. Only set while the
+     * creator is serialized, and once deserialized until its works are first used, since they
+     * may not be fully deserialized yet when the creator is.
+     */
+    private List<Work> _works;
+
+    /**
+     * The name in lower case, computed when first needed.
+     */
+    private transient String _nameKey;
 
     /**
      * Constructs a Creator with the specified name.
@@ -28,7 +62,8 @@ public class Creator implements Serializable {
      */
     public Creator(String name) {
         _name = name;
-        _works = new ArrayList<>();
+        _workSet = new HashSet<>();
+        _sortedWorks = new TreeSet<>(LISTING_ORDER);
     }
 
     /**
@@ -41,34 +76,50 @@ public class Creator implements Serializable {
     }
 
     /**
-     * Returns an unmodifiable, alphabetically sorted list of works by title.
+     * Returns the name of the creator in lower case, as matched by searches.
      *
-     * @return sorted, unmodifiable list of works
+     * @return the name in lower case.
      */
-    public List<Work> getWorks() {
-        List<Work> worksCopy = new ArrayList<>(_works);
-        worksCopy.sort(Comparator.comparing(w -> w.getTitle().toLowerCase()));
-        return Collections.unmodifiableList(worksCopy);
+    public String getNameKey() {
+        if (_nameKey == null)
+            _nameKey = _name.toLowerCase();
+        return _nameKey;
     }
 
     /**
-     * Adds a work to the creator's list if it is not null and not already present.
+     * Returns an unmodifiable view of the works, sorted alphabetically by title, ignoring case.
+     * Works with the same title are sorted by ID. Works are kept in this order as they are
+     * added, so listing them takes time proportional to their number.
+     *
+     * @return sorted, unmodifiable view of the works
+     */
+    public Collection<Work> getWorks() {
+        indexWorks();
+        return Collections.unmodifiableSortedSet(_sortedWorks);
+    }
+
+    /**
+     * Adds a work to the creator's works if it is not null and not already present.
      *
      * @param work the work to add
      */
     public void addWork(Work work) {
-        if (work != null && !_works.contains(work)) {
-            _works.add(work);
+        indexWorks();
+        if (work != null && _workSet.add(work)) {
+            _sortedWorks.add(work);
         }
     }
 
     /**
-     * Removes a work from the creator's list.
+     * Removes a work from the creator's works.
      *
      * @param work the work to remove
      */
     public void removeWork(Work work) {
-        _works.remove(work);
+        indexWorks();
+        if (_workSet.remove(work)) {
+            _sortedWorks.remove(work);
+        }
     }
 
     /**
@@ -77,7 +128,8 @@ public class Creator implements Serializable {
      * @return true if the creator has no works, false otherwise
      */
     public boolean shouldBeRemovedFromSystem() {
-        return _works.isEmpty();
+        indexWorks();
+        return _workSet.isEmpty();
     }
 
     /**
@@ -90,4 +142,28 @@ public class Creator implements Serializable {
     public boolean equals(Object obj) {
         return obj instanceof Creator creator && _name.equals(creator._name);
     }
+
+    /**
+     * Builds the sets of works from the deserialized list of works, on first use after the
+     * creator is deserialized.
+     */
+    private void indexWorks() {
+        if (_workSet != null)
+            return;
+        _workSet = new HashSet<>(_works);
+        _sortedWorks = new TreeSet<>(LISTING_ORDER);
+        _sortedWorks.addAll(_works);
+        _works = null;
+    }
+
+    @Serial
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        indexWorks();
+        _works = new ArrayList<>(_sortedWorks);
+        try {
+            out.defaultWriteObject();
+        } finally {
+            _works = null;
+        }
+    }
 }
@@ -23,6 +23,15 @@ public class Date implements Serializable {
         this.currentDate = 1;
     }
 
+    /**
+     * Constructs a new Date set to the given day.
+     *
+     * @param currentDate the current date as an integer
+     */
+    Date(int currentDate) {
+        this.currentDate = currentDate;
+    }
+
     /**
      * Returns the current date.
      *
@@ -0,0 +1,140 @@
+package bci.core;
+
+import bci.core.request.Request;
+import bci.core.user.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The requests of a {@link Library} by deadline, to find the users whose state may change when
+ * the date is advanced.
+ * <p>
+ * The state of a user depends on the date only through the deadlines of their requests: a
+ * request is overdue, or owes a fine, once the date is past its deadline. So the state of a user
+ * only changes with the date when it goes past the deadline of one of their requests, or when the
+ * user was changed since the date was last advanced, without their state being updated. Requests
+ * are kept in lists by deadline, and stay in them until their deadline is past, even if returned
+ * or disposed of meanwhile; advancing the date takes only the lists of the deadlines it went past.
+ * <p>
+ * As when every active request was walked, the state of a user is only updated on advancing the
+ * date while the user has some work not yet returned. A user who borrows a work after having none
+ * has their earlier requests scheduled again, as their deadlines may have gone past unnoticed.
+ */
+final class DeadlineQueue {
+
+    /**
+     * The requests by deadline, a list for each date, as a timing wheel whose slots are only kept
+     * for the dates that are some deadline.
+     */
+    private final NavigableMap<Integer, List<Request>> _requests = new TreeMap<>();
+
+    /**
+     * The users changed since the date was last advanced.
+     */
+    private final Set<User> _touched = new LinkedHashSet<>();
+
+    /**
+     * Builds the queue of the requests of the users with some work not yet returned, all of whom
+     * are marked as changed.
+     *
+     * @param loans the requests not yet returned.
+     */
+    DeadlineQueue(Collection<Request> loans) {
+        for (Request request : loans) {
+            if (_touched.add(request.getUser())) {
+                scheduleAll(request.getUser());
+            }
+        }
+    }
+
+    /**
+     * Schedules a request just made by a user, before it is added to the user, and marks the
+     * user as changed.
+     *
+     * @param user    the user.
+     * @param request the request.
+     */
+    void lend(User user, Request request) {
+        if (!hasLoan(user)) {
+            scheduleAll(user);
+        }
+        schedule(request);
+        _touched.add(user);
+    }
+
+    /**
+     * Marks a user as changed, so that their state is updated when the date is next advanced.
+     *
+     * @param user the user.
+     */
+    void touch(User user) {
+        _touched.add(user);
+    }
+
+    /**
+     * Finds the users whose state may have changed on advancing the date, and forgets them.
+     *
+     * @param currentDate the date advanced to.
+     * @return the users changed since the date was last advanced or with a request whose
+     *         deadline is now past, who still have some work not yet returned.
+     */
+    List<User> advance(int currentDate) {
+        Map<Integer, List<Request>> past = _requests.headMap(currentDate);
+        for (List<Request> requests : past.values()) {
+            for (Request request : requests) {
+                _touched.add(request.getUser());
+            }
+        }
+        past.clear();
+        List<User> due = new ArrayList<>(_touched.size());
+        for (User user : _touched) {
+            if (hasLoan(user)) {
+                due.add(user);
+            }
+        }
+        _touched.clear();
+        return due;
+    }
+
+    /**
+     * Schedules a request, so that its user is found once the date goes past its deadline.
+     *
+     * @param request the request.
+     */
+    private void schedule(Request request) {
+        _requests.computeIfAbsent(request.getDeadline(), deadline -> new ArrayList<>()).add(request);
+    }
+
+    /**
+     * Schedules every request of a user.
+     *
+     * @param user the user.
+     */
+    private void scheduleAll(User user) {
+        for (Request request : user.getAllRequests()) {
+            schedule(request);
+        }
+    }
+
+    /**
+     * Checks if a user has some work not yet returned.
+     *
+     * @param user the user.
+     * @return true if some active request of the user was not returned, false otherwise.
+     */
+    private static boolean hasLoan(User user) {
+        for (Request request : user.getActiveRequests()) {
+            if (!request.hasBeenReturned()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,87 @@
+package bci.core;
+
+import bci.core.request.Request;
+import bci.core.user.User;
+import bci.core.work.Work;
+import bci.core.work.WorkObserver;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The entities of a {@link Library} changed, added or removed since its last checkpoint.
+ * Users, works and requests are tracked by ID and creators by name.
+ */
+final class DirtyEntities {
+
+    private final BitSet _users = new BitSet();
+    private final BitSet _works = new BitSet();
+    private final BitSet _requests = new BitSet();
+    private final Set<String> _creators = new HashSet<>();
+
+    void user(User user) {
+        _users.set(user.getId());
+    }
+
+    void work(Work work) {
+        _works.set(work.getId());
+    }
+
+    void request(Request request) {
+        _requests.set(request.getId());
+    }
+
+    void creator(Creator creator) {
+        _creators.add(creator.getName());
+    }
+
+    /**
+     * Marks the observers of a work, which may have been notified of a change to it.
+     *
+     * @param work the work whose observers are marked.
+     */
+    void observersOf(Work work) {
+        for (WorkObserver observer : work.getObservers()) {
+            if (observer instanceof User user) {
+                user(user);
+            }
+        }
+    }
+
+    /**
+     * Gets the IDs of the changed users.
+     *
+     * @return the IDs of the changed users.
+     */
+    BitSet users() {
+        return _users;
+    }
+
+    /**
+     * Gets the IDs of the changed works.
+     *
+     * @return the IDs of the changed works.
+     */
+    BitSet works() {
+        return _works;
+    }
+
+    /**
+     * Gets the IDs of the changed requests.
+     *
+     * @return the IDs of the changed requests.
+     */
+    BitSet requests() {
+        return _requests;
+    }
+
+    /**
+     * Gets the names of the changed creators.
+     *
+     * @return the names of the changed creators.
+     */
+    Set<String> creators() {
+        return _creators;
+    }
+}
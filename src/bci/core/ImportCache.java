@@ -0,0 +1,203 @@
+package bci.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Binary cache of the library built by importing a text file, kept next to the file.
+ * <p>
+ * The cache holds a snapshot of the imported library in the segmented layout of library files,
+ * opened by {@link MappedSnapshot} without parsing nor validating the text file again. It is
+ * keyed by the size, the modification time and the SHA-256 hash of the imported file: a cache
+ * whose size differs is stale, one whose modification time matches is current, and otherwise
+ * the contents of the file are hashed to tell. Stale caches are deleted when found.
+ * <pre>
+ *   header    magic, version, file size, modification time, content hash, modified flag
+ *   snapshot  a library file, as written by a full snapshot
+ * </pre>
+ * The cache only stands for a library into which nothing but the file was imported.
+ */
+final class ImportCache {
+
+    /**
+     * Suffix appended to the imported filename to obtain the cache filename.
+     */
+    static final String SUFFIX = ".cache";
+
+    /**
+     * Magic number identifying cache files ("BCIC").
+     */
+    private static final int MAGIC = 0x42434943;
+
+    /**
+     * Version of the cache header format.
+     */
+    private static final short VERSION = 1;
+
+    /**
+     * Length of the content hash of the imported file.
+     */
+    private static final int HASH_SIZE = 32;
+
+    /**
+     * Size of the cache file header, which the snapshot follows.
+     */
+    private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + 2 * Long.BYTES + HASH_SIZE + 1;
+
+    /**
+     * Size of the blocks in which the imported file is read to be hashed.
+     */
+    private static final int HASH_BLOCK_SIZE = 1 << 20;
+
+    /**
+     * The imported file.
+     */
+    private final Path _source;
+
+    /**
+     * The cache file.
+     */
+    private final Path _file;
+
+    /**
+     * Size and modification time of the imported file when the cache was looked up.
+     */
+    private final long _size;
+    private final long _lastModified;
+
+    /**
+     * Looks up the cache of an imported file, recording the file's current size and
+     * modification time.
+     *
+     * @param source the imported file.
+     * @throws IOException if the attributes of the imported file cannot be read.
+     */
+    ImportCache(Path source) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        _source = source;
+        _file = Path.of(source + SUFFIX);
+        _size = attributes.size();
+        _lastModified = attributes.lastModifiedTime().toMillis();
+    }
+
+    /**
+     * Opens the library cached for the imported file. A cache that is stale, or that cannot be
+     * read, is deleted.
+     *
+     * @return the cached library, or null if there is no current cache.
+     */
+    Library open() {
+        if (!Files.isRegularFile(_file))
+            return null;
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            try (FileChannel channel = FileChannel.open(_file, StandardOpenOption.READ)) {
+                while (header.hasRemaining() && channel.read(header) >= 0) {
+                    // keep reading until the whole header is read
+                }
+            }
+            header.flip();
+            if (!isCurrent(header)) {
+                delete();
+                return null;
+            }
+            boolean modified = header.get() != 0;
+
+            Library library = MappedSnapshot.open(_file, HEADER_SIZE).getLibrary();
+            if (modified)
+                library.setToModified();
+            return library;
+        } catch (IOException | IllegalStateException | IndexOutOfBoundsException e) {
+            delete();
+            return null;
+        }
+    }
+
+    /**
+     * Checks if a cache header matches the imported file, hashing the file only when its
+     * modification time changed while its size did not.
+     *
+     * @param header the cache header, positioned before the modified flag on return.
+     * @return true if the cache is current, false if it is stale or not a cache.
+     * @throws IOException if an error occurs while reading the imported file.
+     */
+    private boolean isCurrent(ByteBuffer header) throws IOException {
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getShort() != VERSION
+                || header.getLong() != _size)
+            return false;
+
+        boolean sameTime = header.getLong() == _lastModified;
+        byte[] hash = new byte[HASH_SIZE];
+        header.get(hash);
+        return sameTime || Arrays.equals(hash, hash());
+    }
+
+    /**
+     * Writes the cache of the imported file, unless the file changed since the cache was
+     * looked up. The cache is written as a whole and then renamed into place.
+     *
+     * @param library the library imported from the file.
+     * @param capture the captured library, written as a full snapshot.
+     * @param level   the compression level of the segments of the snapshot.
+     * @throws IOException if an error occurs while writing the cache.
+     */
+    void write(Library library, SnapshotCodec.Capture capture, int level) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(_source, BasicFileAttributes.class);
+        if (attributes.size() != _size || attributes.lastModifiedTime().toMillis() != _lastModified)
+            return;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).putLong(_size).putLong(_lastModified).put(hash());
+        header.put((byte) (library.isModified() ? 1 : 0));
+
+        LibraryManager.writeAtomically(_file, channel -> {
+            LibraryManager.write(channel, 0, header.array());
+            return LibraryManager.writeSnapshot(channel, HEADER_SIZE, null, capture, level, 0);
+        });
+    }
+
+    /**
+     * Deletes the cache file, if it can.
+     */
+    private void delete() {
+        try {
+            Files.deleteIfExists(_file);
+        } catch (IOException e) {
+            // a cache that cannot be deleted is looked up, and found stale, again
+        }
+    }
+
+    /**
+     * Hashes the contents of the imported file.
+     *
+     * @return the SHA-256 hash of the file.
+     * @throws IOException if an error occurs while reading the file.
+     */
+    private byte[] hash() throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        ByteBuffer block = ByteBuffer.allocate(HASH_BLOCK_SIZE);
+        try (FileChannel channel = FileChannel.open(_source, StandardOpenOption.READ)) {
+            while (channel.read(block) >= 0) {
+                block.flip();
+                digest.update(block);
+                block.clear();
+            }
+        }
+        return digest.digest();
+    }
+}
@@ -6,25 +6,119 @@ import bci.core.work.Book;
 import bci.core.work.Dvd;
 import bci.core.work.WorkCategory;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Parses import files and registers users, books, and DVDs in the library.
+ * <p>
+ * The file is read through a {@link FileChannel} into a reusable byte buffer, and each line is
+ * split into fields in place, by recording where its fields start and end. Numbers and
+ * categories are read straight from the bytes of their fields, so only the strings kept by the
+ * registered entities are created. Lines and fields are split as by
+ * {@link java.io.BufferedReader#readLine()} and {@link String#split(String)}, and files are
+ * read as UTF-8.
+ * <p>
+ * Files are parsed in chunks of whole lines, which may be parsed on several threads. Parsing a
+ * line does not change the library: it yields an entry holding the values found in it, and the
+ * entries are registered in file order, once their chunk is parsed, through a
+ * {@link Library.BulkRegistration} that adds them to the library at the end of the import.
  */
 class ImportFileParser {
+
+    /**
+     * Initial size of the buffer holding the lines being parsed. The buffer grows to hold
+     * longer lines.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Approximate size, in bytes, of the chunks files are parsed in by default, set by the
+     * {@code importChunkSize} property; 4 MiB unless set.
+     */
+    private static final int CHUNK_SIZE = Integer.getInteger("importChunkSize", 1 << 22);
+
+    /**
+     * Size of the reads looking for the line boundaries between chunks.
+     */
+    private static final int BOUNDARY_WINDOW = 1 << 12;
+
+    private static final byte[] USER = ascii("USER");
+    private static final byte[] DVD = ascii("DVD");
+    private static final byte[] BOOK = ascii("BOOK");
+
+    /**
+     * Work categories, and the bytes of their names.
+     */
+    private static final WorkCategory[] CATEGORIES = WorkCategory.values();
+    private static final byte[][] CATEGORY_NAMES = new byte[CATEGORIES.length][];
+
+    static {
+        for (int i = 0; i < CATEGORIES.length; i++)
+            CATEGORY_NAMES[i] = ascii(CATEGORIES[i].name());
+    }
+
     private final Library _library;
 
+    /**
+     * Approximate size of the chunks the file is parsed in. Each chunk is parsed before any of
+     * its entries is registered.
+     */
+    private final int _chunkSize;
+
+    /**
+     * Bytes read from the file, holding the line being parsed.
+     */
+    private byte[] _buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * Start and end of the line being parsed, in the buffer.
+     */
+    private int _lineStart;
+    private int _lineEnd;
+
+    /**
+     * Start and end of each field of the line being parsed, in the buffer.
+     */
+    private int[] _fieldStarts = new int[8];
+    private int[] _fieldEnds = new int[8];
+    private int _fieldCount;
+
     /**
      * Constructs an ImportFileParser with the given library.
      *
      * @param lib the library to register entries into
      */
     ImportFileParser(Library lib) {
+        this(lib, CHUNK_SIZE);
+    }
+
+    /**
+     * Constructs an ImportFileParser with the given library, parsing files in chunks of the
+     * given size.
+     *
+     * @param lib the library to register entries into
+     * @param chunkSize the approximate size of the chunks, in bytes
+     * @throws IllegalArgumentException if the chunk size is not positive
+     */
+    ImportFileParser(Library lib, int chunkSize) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Invalid import chunk size " + chunkSize);
         _library = lib;
+        _chunkSize = chunkSize;
     }
 
     /**
@@ -35,119 +129,563 @@ class ImportFileParser {
      * @throws IOException if an I/O error occurs
      */
     void parseFile(String filename) throws UnrecognizedEntryException, IOException {
-        String line;
+        parseFile(filename, 1);
+    }
 
-        try (BufferedReader in = new BufferedReader(new FileReader(filename))) {
-            while ((line = in.readLine()) != null)
-                parseLine(line);
+    /**
+     * Parses the specified file and registers its entries in the library, parsing the file on
+     * several threads. The file is split into chunks at line boundaries, which are parsed and
+     * validated concurrently and registered one after the other in file order, so users, works
+     * and creators are registered exactly as by a sequential import, up to the first invalid
+     * entry.
+     *
+     * @param filename the path to the file to parse
+     * @param threads the number of threads parsing the file, or 1 to parse it on the calling thread
+     * @throws UnrecognizedEntryException if an entry type is unrecognized
+     * @throws IOException if an I/O error occurs
+     */
+    void parseFile(String filename, int threads) throws UnrecognizedEntryException, IOException {
+        Library.BulkRegistration registration = _library.startBulkRegistration();
+        try (FileInputStream in = new FileInputStream(filename);
+             FileChannel channel = in.getChannel()) {
+            long size = channel.size();
+            if (threads <= 1) {
+                for (long position = 0; position < size; ) {
+                    long end = nextLineStart(channel, position + _chunkSize);
+                    register(registration, parseChunk(channel, position, end));
+                    position = end;
+                }
+                return;
+            }
+
+            ExecutorService parsers = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "library-import");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                Deque<Future<List<Entry>>> chunks = new ArrayDeque<>();
+                long position = 0;
+                while (position < size || !chunks.isEmpty()) {
+                    while (position < size && chunks.size() < 2 * threads) {
+                        long start = position;
+                        long end = nextLineStart(channel, start + _chunkSize);
+                        chunks.add(parsers.submit(() -> new ImportFileParser(_library, _chunkSize)
+                                .parseChunk(channel, start, end)));
+                        position = end;
+                    }
+                    register(registration, await(chunks.remove()));
+                }
+            } finally {
+                parsers.shutdownNow();
+            }
+        } finally {
+            registration.finish();
         }
     }
 
     /**
-     * Parses a single line and dispatches to the appropriate handler.
+     * Finds the start of the first line beginning at or after a position of a file.
+     *
+     * @param channel the channel of the file
+     * @param position the position to search from
+     * @return the start of the line, or the size of the file if no line begins there
+     * @throws IOException if an I/O error occurs
+     */
+    private static long nextLineStart(FileChannel channel, long position) throws IOException {
+        // a line begins after a line feed, so look for one from the byte before the position
+        long size = channel.size();
+        if (position >= size)
+            return size;
+
+        ByteBuffer window = ByteBuffer.allocate(BOUNDARY_WINDOW);
+        position--;
+        while (true) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read < 0)
+                return size;
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == '\n')
+                    return position + i + 1;
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Waits for a chunk of the file to be parsed.
      *
-     * @param line the line to parse
-     * @throws UnrecognizedEntryException if the entry type is unrecognized
+     * @param chunk the parsing of the chunk
+     * @return the entries of the chunk
+     * @throws IOException if an I/O error occurred while reading the chunk
      */
-    private void parseLine(String line) throws UnrecognizedEntryException {
-        String[] components = line.split(":");
+    private static List<Entry> await(Future<List<Entry>> chunk) throws IOException {
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause)
+                throw cause;
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw (Error) e.getCause();
+        }
+    }
 
-        switch (components[0]) {
-            case "USER":
-                parseUser(components, line);
-                break;
+    /**
+     * Registers the entries of a chunk of the file in the library, in order.
+     *
+     * @param registration the registration of the entries of the file
+     * @param entries the entries to register
+     * @throws UnrecognizedEntryException if an entry is invalid
+     */
+    private static void register(Library.BulkRegistration registration, List<Entry> entries)
+            throws UnrecognizedEntryException {
+        for (Entry entry : entries)
+            entry.register(registration);
+    }
 
-            case "DVD":
-                parseDvd(components, line);
-                break;
+    /**
+     * Parses a chunk of a file, without registering its entries. The chunk starts at the start
+     * of a line and ends at the end of a line.
+     *
+     * @param channel the channel of the file
+     * @param position the start of the chunk
+     * @param limit the end of the chunk
+     * @return the entries of the chunk, in order
+     * @throws IOException if an I/O error occurs
+     */
+    private List<Entry> parseChunk(FileChannel channel, long position, long limit) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        int start = 0;
+        int scanned = 0;
+        int filled = 0;
+        boolean skipLineFeed = false;
+
+        while (true) {
+            if (skipLineFeed && start < filled) {
+                skipLineFeed = false;
+                if (_buffer[start] == '\n')
+                    scanned = ++start;
+            }
+
+            int end = scanned;
+            while (end < filled && _buffer[end] != '\n' && _buffer[end] != '\r')
+                end++;
+
+            if (end < filled) {
+                entries.add(parseLine(start, end));
+                skipLineFeed = _buffer[end] == '\r';
+                start = scanned = end + 1;
+                continue;
+            }
 
-            case "BOOK":
-                parseBook(components, line);
-                break;
+            scanned = end;
+            if (start > 0) {
+                System.arraycopy(_buffer, start, _buffer, 0, filled - start);
+                filled -= start;
+                scanned -= start;
+                start = 0;
+            } else if (filled == _buffer.length) {
+                _buffer = Arrays.copyOf(_buffer, 2 * _buffer.length);
+            }
 
-            default:
-                throw new UnrecognizedEntryException("Tipo inválido " + components[0] + " na linha " + line);
+            int length = (int) Math.min(_buffer.length - filled, limit - position);
+            int read = length == 0 ? -1 : channel.read(ByteBuffer.wrap(_buffer, filled, length), position);
+            if (read < 0) {
+                if (start < filled)
+                    entries.add(parseLine(start, filled));
+                return entries;
+            }
+            filled += read;
+            position += read;
         }
     }
 
     /**
-     * Parses and registers a user entry.
+     * Parses a single line and dispatches to the appropriate handler.
      *
-     * @param components the split line components
-     * @param line the original line
-     * @throws UnrecognizedEntryException if the entry is invalid
+     * @param start the start of the line in the buffer
+     * @param end the end of the line in the buffer
+     * @return the entry of the line
      */
-    private void parseUser(String[] components, String line) throws UnrecognizedEntryException {
-        try {
-            if (components.length != 3)
-                throw new UnrecognizedEntryException ("Número inválido de campos (3) na descrição de um utente: " + line);
+    private Entry parseLine(int start, int end) {
+        _lineStart = start;
+        _lineEnd = end;
+        splitFields(start, end);
 
-            _library.registerUser(components[1], components[2]);
+        if (_fieldCount > 0 && fieldEquals(0, USER))
+            return parseUser();
+        else if (_fieldCount > 0 && fieldEquals(0, DVD))
+            return parseDvd();
+        else if (_fieldCount > 0 && fieldEquals(0, BOOK))
+            return parseBook();
+        else
+            return new InvalidEntry(new UnrecognizedEntryException("Tipo inválido "
+                    + (_fieldCount > 0 ? field(0) : "") + " na linha " + line()));
+    }
+
+    /**
+     * Parses a user entry.
+     *
+     * @return the user entry, or an invalid entry
+     */
+    private Entry parseUser() {
+        if (_fieldCount != 3)
+            return new InvalidEntry(new UnrecognizedEntryException ("Número inválido de campos (3) na descrição de um utente: " + line()));
+
+        return new UserEntry(field(1), field(2));
+    }
+
+    /**
+     * Parses a book entry.
+     *
+     * @return the book entry, or an invalid entry
+     */
+    private Entry parseBook() {
+        if (_fieldCount != 7)
+            return new InvalidEntry(new UnrecognizedEntryException ("Número inválido de campos (7) na descrição de um Book: " + line()));
+
+        List<String> authors = new ArrayList<>();
+        int start = _fieldStarts[2];
+        int end = withoutTrailingSeparators(start, _fieldEnds[2], (byte) ',');
+        if (end > start || end == _fieldEnds[2]) {
+            while (true) {
+                int comma = start;
+                while (comma < end && _buffer[comma] != ',')
+                    comma++;
+                authors.add(creatorName(start, comma));
+                if (comma == end)
+                    break;
+                start = comma + 1;
+            }
+        }
+
+        try {
+            Book.Builder builder = new Book.Builder()
+                    .title(field(1))
+                    .price(intField(3))
+                    .category(categoryField(4))
+                    .totalCopies(intField(6))
+                    .isbn(field(5));
+            return new BookEntry(authors, builder, null);
         } catch (InvalidArgumentsException e) {
-            throw new UnrecognizedEntryException(e.getArgSpecification());
+            return new BookEntry(authors, null, new UnrecognizedEntryException(e.getArgSpecification()));
+        } catch (RuntimeException e) {
+            return new BookEntry(authors, null, e);
         }
     }
 
     /**
-     * Parses and registers a book entry.
+     * Parses a DVD entry.
      *
-     * @param components the split line components
-     * @param line the original line
-     * @throws UnrecognizedEntryException if the entry is invalid
+     * @return the DVD entry, or an invalid entry
      */
-    private void parseBook(String[] components, String line) throws UnrecognizedEntryException {
-        if (components.length != 7)
-            throw new UnrecognizedEntryException ("Número inválido de campos (7) na descrição de um Book: " + line);
+    private Entry parseDvd() {
+        if (_fieldCount != 7)
+            return new InvalidEntry(new UnrecognizedEntryException ("Número inválido de campos (7) na descrição de um DVD: " + line()));
 
+        String director = creatorName(_fieldStarts[2], _fieldEnds[2]);
         try {
-            List<Creator> authors = new ArrayList<>();
-            for (String name : components[2].split(",")) {
-                Creator author = _library.registerCreator(name.trim());
-                authors.add(author);
+            Dvd.Builder builder = new Dvd.Builder()
+                    .title(field(1))
+                    .price(intField(3))
+                    .category(categoryField(4))
+                    .totalCopies(intField(6))
+                    .igac(field(5));
+            return new DvdEntry(director, builder, null);
+        } catch (InvalidArgumentsException e) {
+            return new DvdEntry(director, null, new UnrecognizedEntryException(e.getArgSpecification()));
+        } catch (RuntimeException e) {
+            return new DvdEntry(director, null, e);
+        }
+    }
+
+    /**
+     * Splits a line into its colon-separated fields, as {@link String#split(String)} does.
+     *
+     * @param start the start of the line in the buffer
+     * @param end the end of the line in the buffer
+     */
+    private void splitFields(int start, int end) {
+        _fieldCount = 0;
+        end = withoutTrailingSeparators(start, end, (byte) ':');
+        if (end == start && end < _lineEnd)
+            return;
+
+        for (int i = start; i < end; i++) {
+            if (_buffer[i] == ':') {
+                addField(start, i);
+                start = i + 1;
             }
+        }
+        addField(start, end);
+    }
 
-            Book.Builder builder = new Book.Builder()
-                    .title(components[1])
-                    .price(Integer.parseInt(components[3]))
-                    .category(WorkCategory.valueOf(components[4]))
-                    .totalCopies(Integer.parseInt(components[6]))
-                    .isbn(components[5])
-                    .authors(authors);
-            Book book = _library.registerWork(builder);
-
-            for (Creator author : authors)
-                author.addWork(book);
+    /**
+     * Finds the end of a list of separated values once the trailing empty values, which
+     * {@link String#split(String)} drops, are removed.
+     *
+     * @param start the start of the list in the buffer
+     * @param end the end of the list in the buffer
+     * @param separator the separator of the values
+     * @return the end of the list without its trailing separators
+     */
+    private int withoutTrailingSeparators(int start, int end, byte separator) {
+        while (end > start && _buffer[end - 1] == separator)
+            end--;
+        return end;
+    }
+
+    /**
+     * Records the bounds of the next field of the line being parsed.
+     *
+     * @param start the start of the field in the buffer
+     * @param end the end of the field in the buffer
+     */
+    private void addField(int start, int end) {
+        if (_fieldCount == _fieldStarts.length) {
+            _fieldStarts = Arrays.copyOf(_fieldStarts, 2 * _fieldCount);
+            _fieldEnds = Arrays.copyOf(_fieldEnds, 2 * _fieldCount);
+        }
+        _fieldStarts[_fieldCount] = start;
+        _fieldEnds[_fieldCount] = end;
+        _fieldCount++;
+    }
+
+    /**
+     * Gets the creator name held by part of a field, without surrounding whitespace as
+     * {@link String#trim()} does.
+     *
+     * @param start the start of the name in the buffer
+     * @param end the end of the name in the buffer
+     * @return the name
+     */
+    private String creatorName(int start, int end) {
+        while (start < end && (_buffer[start] & 0xff) <= ' ')
+            start++;
+        while (end > start && (_buffer[end - 1] & 0xff) <= ' ')
+            end--;
+        return string(start, end);
+    }
+
+    /**
+     * Parses an integer field. Fields not made of ASCII digits, with an optional sign, are
+     * left to {@link Integer#parseInt(String)}, which also reports invalid ones.
+     *
+     * @param field the index of the field
+     * @return the value of the field
+     * @throws NumberFormatException if the field is not a valid integer
+     */
+    private int intField(int field) {
+        int i = _fieldStarts[field];
+        int end = _fieldEnds[field];
+        boolean negative = i < end && _buffer[i] == '-';
+        if (i < end && (negative || _buffer[i] == '+'))
+            i++;
+        if (i == end || end - i > 10)
+            return Integer.parseInt(field(field));
+
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = _buffer[i] - '0';
+            if (digit < 0 || digit > 9)
+                return Integer.parseInt(field(field));
+            value = 10 * value + digit;
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            return Integer.parseInt(field(field));
+        return (int) value;
+    }
+
+    /**
+     * Parses a work category field.
+     *
+     * @param field the index of the field
+     * @return the category named by the field
+     * @throws IllegalArgumentException if the field does not name a category
+     */
+    private WorkCategory categoryField(int field) {
+        for (int i = 0; i < CATEGORIES.length; i++) {
+            if (fieldEquals(field, CATEGORY_NAMES[i]))
+                return CATEGORIES[i];
+        }
+        return WorkCategory.valueOf(field(field));
+    }
+
+    /**
+     * Checks if a field of the line being parsed holds the given bytes.
+     *
+     * @param field the index of the field
+     * @param bytes the bytes to compare with
+     * @return true if the field holds exactly the given bytes, false otherwise
+     */
+    private boolean fieldEquals(int field, byte[] bytes) {
+        return Arrays.equals(_buffer, _fieldStarts[field], _fieldEnds[field], bytes, 0, bytes.length);
+    }
+
+    /**
+     * Gets a field of the line being parsed.
+     *
+     * @param field the index of the field
+     * @return the field
+     */
+    private String field(int field) {
+        return string(_fieldStarts[field], _fieldEnds[field]);
+    }
+
+    /**
+     * Gets the line being parsed, to report it.
+     *
+     * @return the line
+     */
+    private String line() {
+        return string(_lineStart, _lineEnd);
+    }
+
+    /**
+     * Decodes part of the buffer.
+     *
+     * @param start the start of the part
+     * @param end the end of the part
+     * @return the decoded string
+     */
+    private String string(int start, int end) {
+        return new String(_buffer, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes an ASCII keyword.
+     *
+     * @param keyword the keyword
+     * @return its bytes
+     */
+    private static byte[] ascii(String keyword) {
+        return keyword.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Registers a creator of a work in the library.
+     *
+     * @param registration the registration of the entries of the file
+     * @param name the name of the creator
+     * @return the registered creator
+     * @throws UnrecognizedEntryException if the name is empty
+     */
+    private static Creator registerCreator(Library.BulkRegistration registration, String name) throws UnrecognizedEntryException {
+        try {
+            return registration.registerCreator(name);
         } catch (InvalidArgumentsException e) {
             throw new UnrecognizedEntryException(e.getArgSpecification());
         }
     }
 
     /**
-     * Parses and registers a DVD entry.
+     * Reports the failure found while parsing an entry.
      *
-     * @param components the split line components
-     * @param line the original line
+     * @param failure the failure, either an {@link UnrecognizedEntryException} or a runtime exception
      * @throws UnrecognizedEntryException if the entry is invalid
      */
-    private void parseDvd(String[] components, String line) throws UnrecognizedEntryException {
-        if (components.length != 7)
-            throw new UnrecognizedEntryException ("Número inválido de campos (7) na descrição de um DVD: " + line);
+    private static void fail(Exception failure) throws UnrecognizedEntryException {
+        if (failure instanceof RuntimeException e)
+            throw e;
+        throw (UnrecognizedEntryException) failure;
+    }
 
-        try {
-            Creator director = _library.registerCreator(components[2].trim());
+    /**
+     * A parsed line of an import file, waiting to be registered in the library. Lines are
+     * parsed and validated apart from the library, so that they can be parsed concurrently;
+     * an invalid line is reported when registered, after the lines before it.
+     */
+    private interface Entry {
 
-            Dvd.Builder builder = new Dvd.Builder()
-                    .title(components[1])
-                    .price(Integer.parseInt(components[3]))
-                    .category(WorkCategory.valueOf(components[4]))
-                    .totalCopies(Integer.parseInt(components[6]))
-                    .igac(components[5])
-                    .director(director);
-            Dvd dvd = _library.registerWork(builder);
-
-            director.addWork(dvd);
-        } catch (InvalidArgumentsException e) {
-            throw new UnrecognizedEntryException(e.getArgSpecification());
+        /**
+         * Registers the entry in the library.
+         *
+         * @param registration the registration of the entries of the file
+         * @throws UnrecognizedEntryException if the entry is invalid
+         */
+        void register(Library.BulkRegistration registration) throws UnrecognizedEntryException;
+    }
+
+    /**
+     * A user entry.
+     *
+     * @param name the name of the user
+     * @param email the email of the user
+     */
+    private record UserEntry(String name, String email) implements Entry {
+        @Override
+        public void register(Library.BulkRegistration registration) throws UnrecognizedEntryException {
+            try {
+                registration.registerUser(name, email);
+            } catch (InvalidArgumentsException e) {
+                throw new UnrecognizedEntryException(e.getArgSpecification());
+            }
+        }
+    }
+
+    /**
+     * A book entry. Its authors are registered even if the rest of the entry is invalid, as
+     * they are found first.
+     *
+     * @param authors the names of the authors
+     * @param builder the builder of the book, with every field but the authors set
+     * @param failure the failure found while parsing the rest of the entry, if any
+     */
+    private record BookEntry(List<String> authors, Book.Builder builder, Exception failure) implements Entry {
+        @Override
+        public void register(Library.BulkRegistration registration) throws UnrecognizedEntryException {
+            List<Creator> creators = new ArrayList<>(authors.size());
+            for (String author : authors)
+                creators.add(registerCreator(registration, author));
+            if (failure != null)
+                fail(failure);
+
+            try {
+                registration.registerWork(builder.authors(creators));
+            } catch (InvalidArgumentsException e) {
+                throw new UnrecognizedEntryException(e.getArgSpecification());
+            }
+        }
+    }
+
+    /**
+     * A DVD entry. Its director is registered even if the rest of the entry is invalid, as
+     * it is found first.
+     *
+     * @param director the name of the director
+     * @param builder the builder of the DVD, with every field but the director set
+     * @param failure the failure found while parsing the rest of the entry, if any
+     */
+    private record DvdEntry(String director, Dvd.Builder builder, Exception failure) implements Entry {
+        @Override
+        public void register(Library.BulkRegistration registration) throws UnrecognizedEntryException {
+            Creator creator = registerCreator(registration, director);
+            if (failure != null)
+                fail(failure);
+
+            try {
+                registration.registerWork(builder.director(creator));
+            } catch (InvalidArgumentsException e) {
+                throw new UnrecognizedEntryException(e.getArgSpecification());
+            }
+        }
+    }
+
+    /**
+     * An entry that could not be parsed.
+     *
+     * @param failure the failure found while parsing it
+     */
+    private record InvalidEntry(UnrecognizedEntryException failure) implements Entry {
+        @Override
+        public void register(Library.BulkRegistration registration) throws UnrecognizedEntryException {
+            throw failure;
         }
     }
-}
\ No newline at end of file
+}
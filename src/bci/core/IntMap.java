@@ -0,0 +1,301 @@
+package bci.core;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A map from {@code int} keys, such as entity IDs, to values, with no boxed keys nor entries.
+ * <p>
+ * Keys and values are kept in parallel arrays, with open addressing and linear probing from the
+ * hash of the key. A slot is free if it holds no value, so null values are not allowed; removals
+ * shift back the entries after them, leaving no tombstones. The table is kept at most half full,
+ * and is only allocated when the first entry is added. Values are iterated in no given order;
+ * {@link LinkedIntMap} keeps the order entries were added in.
+ *
+ * @param <V> the type of the values.
+ */
+public final class IntMap<V> {
+
+    private static final int[] NO_KEYS = {};
+    private static final Object[] NO_VALUES = {};
+    private static final int MIN_CAPACITY = 8;
+
+    private int[] _keys = NO_KEYS;
+    private Object[] _values = NO_VALUES;
+    private int _size;
+    private int _modifications;
+
+    /**
+     * Creates an empty map.
+     */
+    public IntMap() {
+    }
+
+    /**
+     * Creates an empty map, sized to hold some entries without growing.
+     *
+     * @param expectedSize the number of entries expected.
+     */
+    public IntMap(int expectedSize) {
+        if (expectedSize > 0) {
+            allocate(capacityFor(expectedSize));
+        }
+    }
+
+    /**
+     * Creates a map holding the entries of another map.
+     *
+     * @param map the map to copy.
+     * @param <V> the type of the values.
+     * @return the new map.
+     */
+    public static <V> IntMap<V> of(Map<Integer, V> map) {
+        IntMap<V> copy = new IntMap<>(map.size());
+        map.forEach(copy::put);
+        return copy;
+    }
+
+    /**
+     * Copies the entries of the map into a {@link HashMap}.
+     *
+     * @return the new map.
+     */
+    public HashMap<Integer, V> toHashMap() {
+        HashMap<Integer, V> copy = new HashMap<>((int) Math.ceil(_size / 0.75));
+        for (int slot = 0; slot < _keys.length; slot++) {
+            if (_values[slot] != null) {
+                copy.put(_keys[slot], value(slot));
+            }
+        }
+        return copy;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    public boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /**
+     * Gets the value of a key.
+     *
+     * @param key the key.
+     * @return the value of the key, or null if it has none.
+     */
+    public V get(int key) {
+        if (_size == 0) {
+            return null;
+        }
+        return value(slotOf(key));
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Sets the value of a key.
+     *
+     * @param key   the key.
+     * @param value the value, not null.
+     * @return the previous value of the key, or null if it had none.
+     */
+    public V put(int key, V value) {
+        Objects.requireNonNull(value);
+        if (2 * (_size + 1) > _keys.length) {
+            rehash(Math.max(MIN_CAPACITY, _keys.length * 2));
+        }
+        int slot = slotOf(key);
+        V previous = value(slot);
+        if (previous == null) {
+            _keys[slot] = key;
+            _size++;
+            _modifications++;
+        }
+        _values[slot] = value;
+        return previous;
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @param key the key.
+     * @return the value the key had, or null if it had none.
+     */
+    public V remove(int key) {
+        if (_size == 0) {
+            return null;
+        }
+        int slot = slotOf(key);
+        V previous = value(slot);
+        if (previous == null) {
+            return null;
+        }
+
+        int mask = _keys.length - 1;
+        int free = slot;
+        for (int next = (slot + 1) & mask; _values[next] != null; next = (next + 1) & mask) {
+            int home = hash(_keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                _keys[free] = _keys[next];
+                _values[free] = _values[next];
+                free = next;
+            }
+        }
+        _values[free] = null;
+        _size--;
+        _modifications++;
+        return previous;
+    }
+
+    /**
+     * Grows the table, if needed, to hold some entries without growing again.
+     *
+     * @param size the number of entries to hold.
+     */
+    public void ensureCapacity(int size) {
+        int capacity = capacityFor(size);
+        if (capacity > _keys.length) {
+            rehash(capacity);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(_values, null);
+        _size = 0;
+        _modifications++;
+    }
+
+    /**
+     * Gets the keys of the map.
+     *
+     * @return a new array of the keys, in no given order.
+     */
+    public int[] keys() {
+        int[] keys = new int[_size];
+        int count = 0;
+        for (int slot = 0; slot < _keys.length; slot++) {
+            if (_values[slot] != null) {
+                keys[count++] = _keys[slot];
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Gets a view of the values of the map, which fails when iterated over while the map is
+     * changed, other than by setting the values of keys it already holds.
+     *
+     * @return the values, in no given order.
+     */
+    public Collection<V> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new Iterator<>() {
+                    private final int _expectedModifications = _modifications;
+                    private int _slot = nextSlot(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return _slot < _keys.length;
+                    }
+
+                    @Override
+                    public V next() {
+                        if (_modifications != _expectedModifications) {
+                            throw new ConcurrentModificationException();
+                        }
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        V value = value(_slot);
+                        _slot = nextSlot(_slot + 1);
+                        return value;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return _size;
+            }
+        };
+    }
+
+    private int nextSlot(int slot) {
+        while (slot < _values.length && _values[slot] == null) {
+            slot++;
+        }
+        return slot;
+    }
+
+    /**
+     * Finds the slot of a key: the slot holding it, or the free slot where it would be added.
+     *
+     * @param key the key.
+     * @return the slot.
+     */
+    private int slotOf(int key) {
+        int mask = _keys.length - 1;
+        int slot = hash(key) & mask;
+        while (_values[slot] != null && _keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int slot) {
+        return (V) _values[slot];
+    }
+
+    private void rehash(int capacity) {
+        int[] keys = _keys;
+        Object[] values = _values;
+        allocate(capacity);
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (values[slot] != null) {
+                int to = slotOf(keys[slot]);
+                _keys[to] = keys[slot];
+                _values[to] = values[slot];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        _keys = new int[capacity];
+        _values = new Object[capacity];
+    }
+
+    /**
+     * Gets the capacity of a table holding some entries, at most half full.
+     *
+     * @param size the number of entries.
+     * @return the capacity, a power of two.
+     */
+    static int capacityFor(int size) {
+        return Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, 2 * size - 1)) << 1);
+    }
+
+    /**
+     * Spreads the bits of a key over its lowest bits, which pick its slot, so that keys differing
+     * only in their highest bits do not crowd together.
+     *
+     * @param key the key.
+     * @return the hash of the key.
+     */
+    static int hash(int key) {
+        int mixed = key * 0x9E3779B9;
+        return mixed ^ mixed >>> 16;
+    }
+}
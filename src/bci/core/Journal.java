@@ -0,0 +1,406 @@
+package bci.core;
+
+import bci.core.exception.*;
+import bci.core.user.NotificationType;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only log of the mutating operations performed on a {@link Library}.
+ * <p>
+ * Every successful mutation is recorded as a compact, length-prefixed record: its length, as a
+ * 4-byte int, then a 1-byte operation code and the arguments of the operation, with ints written
+ * big-endian, as by {@link DataOutputStream}. Records are buffered in memory until they are
+ * taken by {@link #takePendingRecords()} and written by {@link #append(byte[])} at the end of
+ * the journal file associated with a snapshot. Taking the records is done on the thread
+ * mutating the library, while writing them can be done on the background thread writing the
+ * snapshot. The journal file starts with a header holding the identifier of the snapshot it
+ * extends, so a journal left behind by an older snapshot is never replayed on top of a newer one.
+ * <p>
+ * Recovery is the latest snapshot followed by {@link #replay(Library)} of its journal.
+ */
+class Journal {
+
+    /**
+     * Magic number identifying journal files ("BCIJ").
+     */
+    private static final int MAGIC = 0x4243494A;
+
+    /**
+     * Version of the journal record format.
+     */
+    private static final short VERSION = 1;
+
+    /**
+     * Suffix appended to the snapshot filename to obtain the journal filename.
+     */
+    static final String SUFFIX = ".journal";
+
+    /**
+     * Size of the journal file header.
+     */
+    private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + Long.BYTES;
+
+    private static final byte REGISTER_USER = 1;
+    private static final byte REQUEST_WORK = 2;
+    private static final byte RETURN_WORK = 3;
+    private static final byte CHANGE_WORK_INVENTORY = 4;
+    private static final byte PAY_FINE = 5;
+    private static final byte ADVANCE_DATE = 6;
+    private static final byte SUBSCRIBE = 7;
+    private static final byte UNSUBSCRIBE = 8;
+    private static final byte READ_NOTIFICATIONS = 9;
+
+    /**
+     * The journal file.
+     */
+    private final Path _file;
+
+    /**
+     * Identifier of the snapshot this journal extends: the checksum of a file written with Java
+     * serialization or the identifier of the manifest of a segmented file. Only used by the
+     * thread writing the journal file.
+     */
+    private long _snapshotChecksum;
+
+    /**
+     * Number of records already stored in the journal file.
+     */
+    private int _storedRecords;
+
+    /**
+     * Records not yet written to the journal file.
+     */
+    private final ByteArrayOutputStream _pending = new ByteArrayOutputStream();
+
+    /**
+     * Number of records not yet written to the journal file.
+     */
+    private int _pendingRecords;
+
+    /**
+     * Scratch buffer used to encode a single record.
+     */
+    private final ByteArrayOutputStream _record = new ByteArrayOutputStream(64);
+
+    /**
+     * Encoder writing into {@link #_record}.
+     */
+    private final DataOutputStream _out = new DataOutputStream(_record);
+
+    /**
+     * Constructs a journal extending the snapshot stored in the given file.
+     *
+     * @param snapshotFile     the name of the snapshot file.
+     * @param snapshotChecksum the identifier of the snapshot.
+     */
+    Journal(String snapshotFile, long snapshotChecksum) {
+        _file = Path.of(snapshotFile + SUFFIX);
+        _snapshotChecksum = snapshotChecksum;
+    }
+
+    /**
+     * Constructs a journal extending a snapshot not written yet, whose identifier is only known
+     * once it is encoded. The journal must be bound to it before records are written.
+     *
+     * @param snapshotFile the name of the snapshot file.
+     * @see #bind(long)
+     */
+    Journal(String snapshotFile) {
+        this(snapshotFile, 0);
+    }
+
+    /**
+     * Binds this journal to the snapshot it extends, once written.
+     *
+     * @param snapshotChecksum the identifier of the snapshot.
+     */
+    void bind(long snapshotChecksum) {
+        _snapshotChecksum = snapshotChecksum;
+    }
+
+    /**
+     * Checks whether this journal extends the snapshot stored in the given file.
+     *
+     * @param snapshotFile the name of the snapshot file.
+     * @return true if this journal belongs to that file, false otherwise.
+     */
+    boolean belongsTo(String snapshotFile) {
+        return _file.equals(Path.of(snapshotFile + SUFFIX));
+    }
+
+    /**
+     * Gets the total number of records, stored and pending.
+     *
+     * @return the number of records in this journal.
+     */
+    int size() {
+        return _storedRecords + _pendingRecords;
+    }
+
+    /**
+     * Records the registration of a user: the operation code, then the name and the email, each
+     * in modified UTF-8 after its 2-byte length, as by {@link DataOutputStream#writeUTF(String)}.
+     *
+     * @param name  the name of the user.
+     * @param email the email of the user.
+     */
+    void recordRegisterUser(String name, String email) {
+        try {
+            _out.writeByte(REGISTER_USER);
+            _out.writeUTF(name);
+            _out.writeUTF(email);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        commitRecord();
+    }
+
+    /**
+     * Records a request of a work: the operation code, then the user and work IDs, as 4-byte ints.
+     *
+     * @param userId the ID of the user requesting the work.
+     * @param workId the ID of the work.
+     */
+    void recordRequestWork(int userId, int workId) {
+        recordInts(REQUEST_WORK, userId, workId);
+    }
+
+    /**
+     * Records the return of a work: the operation code, then the user and work IDs, as 4-byte ints.
+     *
+     * @param userId the ID of the user returning the work.
+     * @param workId the ID of the work.
+     */
+    void recordReturnWork(int userId, int workId) {
+        recordInts(RETURN_WORK, userId, workId);
+    }
+
+    /**
+     * Records a change of the number of copies of a work: the operation code, then the work ID
+     * and the amount, as 4-byte ints.
+     *
+     * @param workId the ID of the work.
+     * @param amount the number of copies added, or removed if negative.
+     */
+    void recordChangeWorkInventory(int workId, int amount) {
+        recordInts(CHANGE_WORK_INVENTORY, workId, amount);
+    }
+
+    /**
+     * Records the payment of the fines of a user: the operation code, then the user ID, as a
+     * 4-byte int.
+     *
+     * @param userId the ID of the user.
+     */
+    void recordPayFine(int userId) {
+        recordInts(PAY_FINE, userId);
+    }
+
+    /**
+     * Records the advance of the current date: the operation code, then the number of days, as
+     * a 4-byte int.
+     *
+     * @param days the number of days the date advanced by.
+     */
+    void recordAdvanceDate(int days) {
+        recordInts(ADVANCE_DATE, days);
+    }
+
+    /**
+     * Records the subscription of a user to the notifications of a work: the operation code,
+     * then the user ID, the work ID and the ordinal of the notification type, as 4-byte ints.
+     *
+     * @param userId the ID of the user.
+     * @param workId the ID of the work.
+     * @param type   the type of the notifications.
+     */
+    void recordSubscribe(int userId, int workId, NotificationType type) {
+        recordInts(SUBSCRIBE, userId, workId, type.ordinal());
+    }
+
+    /**
+     * Records the end of the subscription of a user to the notifications of a work, with the
+     * same layout as {@link #recordSubscribe(int, int, NotificationType)}.
+     *
+     * @param userId the ID of the user.
+     * @param workId the ID of the work.
+     * @param type   the type of the notifications.
+     */
+    void recordUnsubscribe(int userId, int workId, NotificationType type) {
+        recordInts(UNSUBSCRIBE, userId, workId, type.ordinal());
+    }
+
+    /**
+     * Records the reading, and clearing, of the notifications of a user: the operation code, then
+     * the user ID, as a 4-byte int.
+     *
+     * @param userId the ID of the user.
+     */
+    void recordReadNotifications(int userId) {
+        recordInts(READ_NOTIFICATIONS, userId);
+    }
+
+    /**
+     * Encodes a record made of an operation code followed by integer arguments.
+     *
+     * @param op   the operation code.
+     * @param args the arguments of the operation.
+     */
+    private void recordInts(byte op, int... args) {
+        try {
+            _out.writeByte(op);
+            for (int arg : args)
+                _out.writeInt(arg);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        commitRecord();
+    }
+
+    /**
+     * Moves the record in the scratch buffer to the pending records, prefixed by its length.
+     */
+    private void commitRecord() {
+        int length = _record.size();
+        _pending.write(length >>> 24);
+        _pending.write(length >>> 16);
+        _pending.write(length >>> 8);
+        _pending.write(length);
+        _pending.write(_record.toByteArray(), 0, length);
+        _record.reset();
+        _pendingRecords++;
+    }
+
+    /**
+     * Takes the pending records, which are from then on counted as stored.
+     *
+     * @return the encoded records, to be written by {@link #append(byte[])}.
+     */
+    byte[] takePendingRecords() {
+        byte[] records = _pending.toByteArray();
+        _storedRecords += _pendingRecords;
+        _pendingRecords = 0;
+        _pending.reset();
+        return records;
+    }
+
+    /**
+     * Writes records at the end of the journal file, creating it if needed, and forces
+     * them to the storage device.
+     *
+     * @param records the records taken by {@link #takePendingRecords()}.
+     * @throws IOException if an error occurs while writing the journal file.
+     */
+    void append(byte[] records) throws IOException {
+        if (records.length == 0)
+            return;
+
+        try (FileChannel channel = FileChannel.open(_file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + records.length);
+            if (channel.size() == 0) {
+                buffer.putInt(MAGIC);
+                buffer.putShort(VERSION);
+                buffer.putLong(_snapshotChecksum);
+            }
+            buffer.put(records).flip();
+
+            channel.position(channel.size());
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Removes the journal file, if any. Used when a new snapshot makes it obsolete.
+     *
+     * @throws IOException if the file exists but cannot be removed.
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(_file);
+    }
+
+    /**
+     * Replays the journal file on the given library, which must hold the state stored in the
+     * snapshot this journal extends. A journal written for another snapshot is ignored, and a
+     * record torn by an interrupted write is cut off the end of the file.
+     *
+     * @param library the library to replay the records on.
+     * @throws IOException if the journal cannot be read or does not match the library state.
+     */
+    void replay(Library library) throws IOException {
+        if (!Files.exists(_file))
+            return;
+
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(_file)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION || in.readLong() != _snapshotChecksum) {
+                Files.delete(_file);
+                return;
+            }
+            validLength = HEADER_SIZE;
+
+            byte[] buffer = new byte[256];
+            byte[] prefix = new byte[Integer.BYTES];
+            while (in.readNBytes(prefix, 0, prefix.length) == prefix.length) {
+                int length = ((prefix[0] & 0xFF) << 24) | ((prefix[1] & 0xFF) << 16)
+                        | ((prefix[2] & 0xFF) << 8) | (prefix[3] & 0xFF);
+                if (length <= 0 || length > Files.size(_file))
+                    break;
+                if (buffer.length < length)
+                    buffer = new byte[length];
+                if (in.readNBytes(buffer, 0, length) < length)
+                    break;
+
+                apply(library, new DataInputStream(new ByteArrayInputStream(buffer, 0, length)));
+                validLength += prefix.length + length;
+                _storedRecords++;
+            }
+        } catch (EOFException e) {
+            // header torn before the first record was ever written
+        }
+
+        if (validLength < Files.size(_file)) {
+            try (FileChannel channel = FileChannel.open(_file, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+    }
+
+    /**
+     * Applies a single record to the library.
+     *
+     * @param library the library to apply the record to.
+     * @param in      the record contents.
+     * @throws IOException if the record is malformed or cannot be applied to the library.
+     */
+    private static void apply(Library library, DataInputStream in) throws IOException {
+        byte op = in.readByte();
+        try {
+            switch (op) {
+                case REGISTER_USER -> library.registerUser(in.readUTF(), in.readUTF());
+                case REQUEST_WORK -> library.requestWork(in.readInt(), in.readInt());
+                case RETURN_WORK -> library.returnWork(in.readInt(), in.readInt());
+                case CHANGE_WORK_INVENTORY -> library.changeWorkInventory(in.readInt(), in.readInt());
+                case PAY_FINE -> library.payFine(in.readInt());
+                case ADVANCE_DATE -> library.advanceDate(in.readInt());
+                case SUBSCRIBE -> library.subscribeUserToWorkNotifications(
+                        in.readInt(), in.readInt(), NotificationType.values()[in.readInt()]);
+                case UNSUBSCRIBE -> library.unsubscribeUserToWorkNotifications(
+                        in.readInt(), in.readInt(), NotificationType.values()[in.readInt()]);
+                case READ_NOTIFICATIONS -> library.getUserNotifications(in.readInt());
+                default -> throw new IOException("Unknown journal record " + op);
+            }
+        } catch (InvalidArgumentsException | NoSuchUserWithIdException | NoSuchWorkWithIdException
+                 | NotEnoughInventoryException | RequestRuleFailedException | UserNotSuspendedException
+                 | WorkNotBorrowedByUserException e) {
+            throw new IOException("Journal record " + op + " does not apply to the snapshot", e);
+        }
+    }
+}
@@ -2,6 +2,10 @@ package bci.core;
 
 import java.io.*;
 import java.util.*;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import bci.core.exception.*;
 import bci.core.request.*;
@@ -25,10 +29,43 @@ public class Library implements Serializable {
     @Serial
     private static final long serialVersionUID = 202501101348L;
 
+    /**
+     * The fields written by Java serialization, as in files written by earlier versions, whose
+     * maps by ID were {@link HashMap}s and a {@link LinkedHashMap}.
+     */
+    @Serial
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("_currentDate", Date.class),
+            new ObjectStreamField("_nextUserId", int.class),
+            new ObjectStreamField("_nextWorkId", int.class),
+            new ObjectStreamField("_nextRequestId", int.class),
+            new ObjectStreamField("_users", Set.class),
+            new ObjectStreamField("_usersById", Map.class),
+            new ObjectStreamField("_works", Map.class),
+            new ObjectStreamField("_creators", Map.class),
+            new ObjectStreamField("_activeRequests", Map.class),
+            new ObjectStreamField("_requestRules", List.class),
+    };
+
+    /**
+     * Number of archived requests read at a time when looking for requests to restore.
+     */
+    private static final int ARCHIVE_PAGE_SIZE = 4096;
+
+    /**
+     * Number of search results kept by the search cache.
+     */
+    private static final int SEARCH_CACHE_SIZE = 64;
+
+    /**
+     * Number of users or works read at a time by the streams over them.
+     */
+    private static final int STREAM_PAGE_SIZE = 256;
+
     /**
      * The current date of the library system.
      */
-    private final Date _currentDate;
+    private Date _currentDate;
 
     /**
      * Next user ID to be assigned.
@@ -48,55 +85,137 @@ public class Library implements Serializable {
     /**
      * A set of all registered users. Using TreeSet to automatically sort users by name and ID.
      */
-    private final Set<User> _users;
+    private Set<User> _users;
 
     /**
      * A map of user IDs to their corresponding User objects. Used for efficient lookup by ID.
+     * Grown once when many users are added at once.
      */
-    private final Map<Integer, User> _usersById;
+    private IntMap<User> _usersById;
 
     /**
-     * A map of work IDs to their corresponding Work objects. Using LinkedHashMap to preserve insertion order.
+     * A map of work IDs to their corresponding Work objects, in insertion order.
+     * Grown once when many works are added at once.
      */
-    private final Map<Integer, Work> _works;
+    private LinkedIntMap<Work> _works;
 
     /**
      * A map of creator names to their corresponding Creator objects. Used for efficient lookup by name.
      */
-    private final Map<String, Creator> _creators;
+    private Map<String, Creator> _creators;
 
     /**
      * A map of active request IDs to their corresponding Request objects.
      */
-    private final Map<Integer, Request> _activeRequests;
+    private IntMap<Request> _activeRequests;
 
     /**
-     * A list of archived requests.
+     * A map of request IDs to their corresponding Request objects, for the requests held in memory.
      */
-    private final List<Request> _archivedRequests;
+    private transient IntMap<Request> _requestsById;
 
     /**
      * List of rules to validate requests.
      */
-    private final List<RequestRule> _requestRules;
+    private List<RequestRule> _requestRules;
 
     /**
      * A flag indicating whether the library's state has been modified.
      */
     private transient boolean _modified = false;
 
+    /**
+     * The journal recording every mutating operation, if the library has a snapshot to extend.
+     */
+    private transient Journal _journal;
+
+    /**
+     * The snapshot holding the entities not yet decoded, if the library was loaded from one.
+     */
+    private transient MappedSnapshot _snapshot;
+
+    /**
+     * The entities changed since the last checkpoint of the library.
+     */
+    private transient DirtyEntities _dirty;
+
+    /**
+     * The archive of the settled requests.
+     */
+    private transient RequestArchive _archive;
+
+    /**
+     * The index of the works by the tokens of their titles and creator names. Built by the
+     * first search and kept up to date from then on.
+     */
+    private transient WorkSearchIndex _searchIndex;
+
+    /**
+     * The planner of the queries of the works.
+     */
+    private transient WorkQueryPlanner _queryPlanner;
+
+    /**
+     * The results of the most recent searches.
+     */
+    private transient SearchResultCache _searchCache;
+
+    /**
+     * The bitmaps of the works by category, type, availability and price band. Built by the
+     * first filter and kept up to date from then on.
+     */
+    private transient WorkFacets _facets;
+
+    /**
+     * The suggestions and completions of the creator names and titles of the works.
+     */
+    private transient WorkSuggestions _suggestions;
+
+    /**
+     * The requests by deadline, to update only the users whose state may have changed on
+     * advancing the date. Built when the date is first advanced.
+     */
+    private transient DeadlineQueue _deadlines;
+
+    /**
+     * The active requests of the users, by user and work.
+     */
+    private transient LoanIndex _loans;
+
     /**
      * Constructs a new Library instance with default values.
      * Initializes the current date, user set, user map, work map, and creator map.
      */
     Library() {
-        _currentDate = new Date();
+        this(new Date(), 1, 1, 1);
+    }
+
+    /**
+     * Constructs an empty Library with the given date and identifier counters.
+     * Used when rebuilding a library from a snapshot.
+     *
+     * @param currentDate   the current date of the library system.
+     * @param nextUserId    the next user ID to be assigned.
+     * @param nextWorkId    the next work ID to be assigned.
+     * @param nextRequestId the next request ID to be assigned.
+     */
+    Library(Date currentDate, int nextUserId, int nextWorkId, int nextRequestId) {
+        _currentDate = currentDate;
+        _nextUserId = nextUserId;
+        _nextWorkId = nextWorkId;
+        _nextRequestId = nextRequestId;
         _users = new TreeSet<>();
-        _usersById = new HashMap<>();
-        _works = new LinkedHashMap<>();
+        _usersById = new IntMap<>();
+        _works = new LinkedIntMap<>();
         _creators = new HashMap<>();
-        _activeRequests = new HashMap<>();
-        _archivedRequests = new LinkedList<>();
+        _activeRequests = new IntMap<>();
+        _requestsById = new IntMap<>();
+        _dirty = new DirtyEntities();
+        _archive = new RequestArchive();
+        _searchCache = new SearchResultCache(SEARCH_CACHE_SIZE);
+        _queryPlanner = new WorkQueryPlanner(this);
+        _suggestions = new WorkSuggestions(this);
+        _loans = new LoanIndex();
 
         _requestRules = List.of(
                 new NoDuplicateRequestsRule(),
@@ -127,6 +246,7 @@ public class Library implements Serializable {
         if (days <= 0) return;
         _currentDate.advanceDate(days);
         updateUsersStates();
+        if (_journal != null) _journal.recordAdvanceDate(days);
         _modified = true;
     }
 
@@ -139,13 +259,28 @@ public class Library implements Serializable {
      * @throws InvalidArgumentsException if the name or email is null or empty.
      */
     public User registerUser(String name, String email) throws InvalidArgumentsException {
+        User newUser = newUser(name, email);
+        _users.add(newUser);
+        _usersById.put(newUser.getId(), newUser);
+        return newUser;
+    }
+
+    /**
+     * Creates a new user with the next user ID, without adding it to the library yet.
+     *
+     * @param name  the name of the user.
+     * @param email the email of the user.
+     * @return the new User object.
+     * @throws InvalidArgumentsException if the name or email is null or empty.
+     */
+    private User newUser(String name, String email) throws InvalidArgumentsException {
         if (name == null || name.isBlank() || email == null || email.isBlank()) {
             throw new InvalidArgumentsException("Name and email must be non-empty.");
         }
 
         User newUser = new User(_nextUserId++, name, email);
-        _users.add(newUser);
-        _usersById.put(newUser.getId(), newUser);
+        _dirty.user(newUser);
+        if (_journal != null) _journal.recordRegisterUser(name, email);
         _modified = true;
         return newUser;
     }
@@ -159,6 +294,9 @@ public class Library implements Serializable {
      */
     public User getUserById(int id) throws NoSuchUserWithIdException {
         User user = _usersById.get(id);
+        if (user == null && _snapshot != null) {
+            user = _snapshot.user(id);
+        }
 
         if (user == null) {
             throw new NoSuchUserWithIdException(id);
@@ -176,7 +314,12 @@ public class Library implements Serializable {
      */
     public Collection<Notification> getUserNotifications(int userId) throws NoSuchUserWithIdException {
         User user = getUserById(userId);
-        return user.getNotifications();
+        Collection<Notification> notifications = user.getNotifications();
+        if (!notifications.isEmpty()) {
+            _dirty.user(user);
+            if (_journal != null) _journal.recordReadNotifications(userId);
+        }
+        return notifications;
     }
 
     /**
@@ -185,9 +328,85 @@ public class Library implements Serializable {
      * @return a set of all users.
      */
     public Collection<User> getUsers() {
+        if (_snapshot != null) {
+            _snapshot.loadUsers();
+        }
         return Collections.unmodifiableSet(_users);
     }
 
+    /**
+     * Gets a page of the users, in the order of {@link #getUsers()}. Users not yet decoded from
+     * a snapshot are found by name in an index of the snapshot, built by the first page from the
+     * names of the users alone, and only the users of the page are decoded.
+     *
+     * @param afterId the ID of the user after which the page starts, or 0 to start with the first user.
+     * @param limit   the maximum number of users in the page.
+     * @return the users of the page, fewer than the limit only if it is the last page.
+     * @throws NoSuchUserWithIdException if there is no user with the given ID to start after.
+     * @throws IllegalArgumentException  if the limit is not positive.
+     */
+    public List<User> getUsersPage(int afterId, int limit) throws NoSuchUserWithIdException {
+        checkPageLimit(limit);
+        User after = afterId == 0 ? null : getUserById(afterId);
+        return usersAfter(after, limit);
+    }
+
+    /**
+     * Streams the users, in the order of {@link #getUsers()}. The stream is lazy: users are
+     * only read from the library, a page at a time, as the stream is consumed.
+     *
+     * @return a stream of the users.
+     */
+    public Stream<User> streamUsers() {
+        return streamPages(afterId -> usersAfter(afterId == 0 ? null : _usersById.get(afterId), STREAM_PAGE_SIZE),
+                User::getId);
+    }
+
+    /**
+     * Gets the users following a user, in the order of {@link #getUsers()}. Unless every user
+     * was decoded, the users of the snapshot are merged with those registered since it was opened.
+     *
+     * @param after the user to start after, or null to start with the first user.
+     * @param limit the maximum number of users.
+     * @return the users following the given one.
+     */
+    private List<User> usersAfter(User after, int limit) {
+        // the users are always kept in a tree set, declared as a set for serialization
+        NavigableSet<User> users = (NavigableSet<User>) _users;
+        Iterator<User> held = (after == null ? users : users.tailSet(after, false)).iterator();
+        List<User> page = new ArrayList<>(Math.min(limit, STREAM_PAGE_SIZE));
+        if (_snapshot == null || _snapshot.hasAllUsers()) {
+            while (held.hasNext() && page.size() < limit) {
+                page.add(held.next());
+            }
+            return page;
+        }
+
+        // users registered since the snapshot was opened are taken first, as decoding adds to the set
+        List<User> added = new ArrayList<>();
+        int firstNewId = _snapshot.getManifest().getNextUserId();
+        while (held.hasNext() && added.size() < limit) {
+            User user = held.next();
+            if (user.getId() >= firstNewId) {
+                added.add(user);
+            }
+        }
+
+        MappedSnapshot.UserOrder stored = _snapshot.userOrder();
+        int next = after == null ? 0 : stored.indexAfter(after);
+        int nextAdded = 0;
+        while (page.size() < limit && (next < stored.size() || nextAdded < added.size())) {
+            if (nextAdded == added.size() || next < stored.size() && stored.compareTo(next, added.get(nextAdded)) < 0) {
+                int id = stored.id(next++);
+                User user = _usersById.get(id);
+                page.add(user != null ? user : _snapshot.user(id));
+            } else {
+                page.add(added.get(nextAdded++));
+            }
+        }
+        return page;
+    }
+
     /**
      * Pays the fine for a suspended user.
      *
@@ -200,7 +419,19 @@ public class Library implements Serializable {
         if (user.isActive()) {
             throw new UserNotSuspendedException(userId);
         }
+        List<Request> settled = new ArrayList<>();
+        for (Request request : user.getActiveRequests()) {
+            _dirty.request(request);
+            if (request.hasBeenReturned()) {
+                settled.add(request);
+                _loans.remove(request);
+            }
+        }
         user.payFine(_currentDate.getCurrentDate());
+        settle(user, settled);
+        _dirty.user(user);
+        if (_deadlines != null) _deadlines.touch(user);
+        if (_journal != null) _journal.recordPayFine(userId);
         _modified = true;
     }
 
@@ -213,6 +444,9 @@ public class Library implements Serializable {
      */
     public Work getWorkById(int id) throws NoSuchWorkWithIdException {
         Work work = _works.get(id);
+        if (work == null && _snapshot != null) {
+            work = _snapshot.work(id);
+        }
 
         if (work == null) {
             throw new NoSuchWorkWithIdException(id);
@@ -227,9 +461,45 @@ public class Library implements Serializable {
      * @return a collection of all works.
      */
     public Collection<Work> getWorks() {
+        loadWorks();
         return Collections.unmodifiableCollection(_works.values());
     }
 
+    /**
+     * Gets a page of the works, in the order of {@link #getWorks()}, which is that of their IDs.
+     * Works are looked up by ID, so a page takes time proportional to its size and to the number
+     * of works removed in it, and works not yet decoded from a snapshot are decoded one by one.
+     *
+     * @param afterId the ID after which the page starts, or 0 to start with the first work.
+     * @param limit   the maximum number of works in the page.
+     * @return the works of the page, fewer than the limit only if it is the last page.
+     * @throws IllegalArgumentException if the limit is not positive.
+     */
+    public List<Work> getWorksPage(int afterId, int limit) {
+        checkPageLimit(limit);
+        List<Work> page = new ArrayList<>(Math.min(limit, STREAM_PAGE_SIZE));
+        for (int id = Math.max(afterId, 0) + 1; id < _nextWorkId && page.size() < limit; id++) {
+            Work work = _works.get(id);
+            if (work == null && _snapshot != null) {
+                work = _snapshot.work(id);
+            }
+            if (work != null) {
+                page.add(work);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Streams the works, in the order of {@link #getWorks()}. The stream is lazy: works are only
+     * read from the library, a page at a time, as the stream is consumed.
+     *
+     * @return a stream of the works.
+     */
+    public Stream<Work> streamWorks() {
+        return streamPages(afterId -> getWorksPage(afterId, STREAM_PAGE_SIZE), Work::getId);
+    }
+
     /**
      * Retrieves a creator by their name.
      *
@@ -238,6 +508,9 @@ public class Library implements Serializable {
      * @throws NoSuchCreatorWithIdException if no creator with the given name exists.
      */
     public Creator getCreatorByName(String name) throws NoSuchCreatorWithIdException {
+        if (_snapshot != null) {
+            _snapshot.loadCreator(name);
+        }
         Creator creator = _creators.get(name);
 
         if (creator == null) {
@@ -258,16 +531,37 @@ public class Library implements Serializable {
     public void changeWorkInventory(int workId, int amount) throws NoSuchWorkWithIdException, NotEnoughInventoryException {
         Work work = getWorkById(workId);
         work.changeInventory(amount);
+        workAvailabilityChanged(work);
+        _dirty.work(work);
+        if (amount > 0) {
+            _dirty.observersOf(work);
+        }
 
         if (work.shouldBeRemovedFromSystem()) {
+            if (_snapshot != null) {
+                for (Creator creator : work.getCreators()) {
+                    _snapshot.loadCreator(creator.getName());
+                }
+            }
+
             Collection<Request> requestsToDispose = work.getRequests();
+            Map<Integer, User> usersOfRequests = new LinkedHashMap<>();
 
             for (Request request : requestsToDispose) {
-                _activeRequests.remove(request.getId());
                 request.getUser().disposeRequest(request);
-                _archivedRequests.remove(request);
+                _loans.remove(request);
+                _activeRequests.remove(request.getId());
+                _requestsById.remove(request.getId());
+                _dirty.request(request);
+                _dirty.user(request.getUser());
+                if (_deadlines != null) _deadlines.touch(request.getUser());
+                usersOfRequests.put(request.getUser().getId(), request.getUser());
             }
 
+            for (Creator creator : work.getCreators()) {
+                _dirty.creator(creator);
+            }
+            workRemoved(work);
             Collection<Creator> creatorsToDispose = work.dispose();
 
             for (Creator creator : creatorsToDispose) {
@@ -275,28 +569,335 @@ public class Library implements Serializable {
             }
 
             _works.remove(workId);
+            restoreSettledRequests(usersOfRequests.values());
         }
 
+        if (_journal != null) _journal.recordChangeWorkInventory(workId, amount);
         _modified = true;
     }
 
     /**
-     * Searches works by a term.
+     * Searches works by a term. Works whose title or creator names contain the term, ignoring
+     * case, are looked up in the search index, and listed in the order they are held, which is
+     * that of their IDs. The IDs of the works found are cached for the most recent terms, until
+     * a work matching the term is added or removed.
      *
      * @param term the search term.
      * @return a collection of works matching the term.
      */
     public Collection<Work> searchWorksByTerm(String term) {
+        return searchWorks(term).toList();
+    }
+
+    /**
+     * Gets a page of the works matching a term, in the order of {@link #searchWorksByTerm(String)}.
+     *
+     * @param term    the search term.
+     * @param afterId the ID after which the page starts, or 0 to start with the first work found.
+     * @param limit   the maximum number of works in the page.
+     * @return the works of the page, fewer than the limit only if it is the last page.
+     * @throws IllegalArgumentException if the limit is not positive.
+     */
+    public List<Work> searchWorksPage(String term, int afterId, int limit) {
+        checkPageLimit(limit);
+        int[] ids = searchWorkIds(term);
+        int from = Arrays.binarySearch(ids, afterId);
+        from = from >= 0 ? from + 1 : -from - 1;
+        int to = (int) Math.min(ids.length, (long) from + limit);
+        return Arrays.stream(ids, from, to).mapToObj(_works::get).toList();
+    }
+
+    /**
+     * Streams the works matching a term, in the order of {@link #searchWorksByTerm(String)}.
+     * The search runs when the stream is created, and only yields the IDs of the works found:
+     * works are only looked up as the stream is consumed.
+     *
+     * @param term the search term.
+     * @return a stream of the works matching the term.
+     */
+    public Stream<Work> searchWorks(String term) {
+        return Arrays.stream(searchWorkIds(term)).mapToObj(_works::get);
+    }
+
+    /**
+     * Streams the works meeting the criteria of a filter, in the order they are held, which is
+     * that of their IDs. The works are selected with the bitmaps of their categories, types,
+     * availability and price bands, and then with the works matching the search term of the
+     * filter, if any, as found by {@link #searchWorks(String)}. Works are only looked up as the
+     * stream is consumed.
+     *
+     * @param filter the criteria of the works.
+     * @return a stream of the works meeting the criteria.
+     */
+    public Stream<Work> filterWorks(WorkFilter filter) {
+        BitSet selected = facets().select(filter, _works::get);
+
+        String term = filter.getTerm();
+        if (term != null && !term.isBlank() && !selected.isEmpty()) {
+            selected.and(WorkQueryPlanner.idsOf(searchWorkIds(term)));
+        }
+        return selected.stream().mapToObj(_works::get);
+    }
+
+    /**
+     * Streams the works meeting a query, in the order they are held, which is that of their IDs.
+     *
+     * @param query the query.
+     * @return a stream of the works meeting the query.
+     * @see #queryWorks(WorkQuery, List)
+     */
+    public Stream<Work> queryWorks(WorkQuery query) {
+        return queryWorks(query, new ArrayList<>());
+    }
+
+    /**
+     * Streams the works meeting a query, in the order they are held, adding the steps by which
+     * they were found to a plan.
+     * <p>
+     * The number of works meeting each clause is first estimated, without finding them, and only
+     * the works of the clause with the fewest are then found; the other clauses are checked on
+     * them one by one, as planned by {@link WorkQueryPlanner}. A query that is a single term is
+     * searched as by {@link #searchWorks(String)}. The works are only looked up as the stream is
+     * consumed.
+     *
+     * @param query the query.
+     * @param plan  the list the steps of the plan are added to, in order.
+     * @return a stream of the works meeting the query.
+     */
+    public Stream<Work> queryWorks(WorkQuery query, List<WorkQuery.Step> plan) {
+        return _queryPlanner.query(query, plan);
+    }
+
+    /**
+     * Suggests the names of creators closest to a name, such as a mistyped one. Names are
+     * compared ignoring case and accents, and are suggested within one edit, an inserted,
+     * deleted or replaced character, for every three characters of the name, or two edits for
+     * shorter names.
+     *
+     * @param name  the name.
+     * @param count the maximum number of names suggested.
+     * @return the names suggested, from the closest to the farthest.
+     */
+    public List<String> suggestCreatorNames(String name, int count) {
+        return _suggestions.suggestCreatorNames(name, count);
+    }
+
+    /**
+     * Suggests the words of titles closest to a word, such as a mistyped one, as by
+     * {@link #suggestCreatorNames(String, int)}. Titles are split into words as for searches,
+     * and their words are suggested in lower case.
+     *
+     * @param word  the word.
+     * @param count the maximum number of words suggested.
+     * @return the words suggested, from the closest to the farthest.
+     */
+    public List<String> suggestTitleWords(String word, int count) {
+        return _suggestions.suggestTitleWords(word, count);
+    }
+
+    /**
+     * Completes the name of a creator, ignoring case and accents.
+     *
+     * @param prefix the start of the name.
+     * @param count  the maximum number of names returned.
+     * @return the names of creators starting with the prefix, in alphabetical order.
+     */
+    public List<String> completeCreatorNames(String prefix, int count) {
+        return _suggestions.completeCreatorNames(prefix, count);
+    }
+
+    /**
+     * Completes the title of a work, ignoring case and accents.
+     *
+     * @param prefix the start of the title.
+     * @param count  the maximum number of titles returned.
+     * @return the titles of works starting with the prefix, in alphabetical order, each once.
+     */
+    public List<String> completeTitles(String prefix, int count) {
+        return _suggestions.completeTitles(prefix, count);
+    }
+
+    /**
+     * Gets the bitmaps of the works, building them if needed.
+     *
+     * @return the work facets.
+     */
+    WorkFacets facets() {
+        loadWorks();
+        if (_facets == null) {
+            _facets = new WorkFacets(_works.values());
+        }
+        return _facets;
+    }
+
+    /**
+     * Searches the IDs of the works matching a term, from the search cache or the search index.
+     *
+     * @param term the search term.
+     * @return the IDs of the works found, in ascending order.
+     */
+    int[] searchWorkIds(String term) {
         if (term == null || term.isBlank()) {
-            return Collections.emptyList();
+            return new int[0];
         }
 
         String lowerCaseTerm = term.toLowerCase();
+        loadWorks();
+        int[] ids = _searchCache.get(lowerCaseTerm);
+        if (ids != null) {
+            return ids;
+        }
+
+        ids = searchIndex().search(lowerCaseTerm, _works::get);
+        if (ids == null) {
+            ids = _works.values()
+                    .stream()
+                    .filter(work -> work.hasTerm(lowerCaseTerm))
+                    .mapToInt(Work::getId)
+                    .toArray();
+        }
 
-        return _works.values()
-                .stream()
-                .filter(work -> work.hasTerm(lowerCaseTerm))
-                .toList();
+        _searchCache.put(lowerCaseTerm, ids);
+        return ids;
+    }
+
+    /**
+     * Estimates the number of works matching a term, from the search cache or the search index,
+     * without searching them.
+     *
+     * @param term the search term, in lower case.
+     * @return the estimated number of works, at least that of the works matching the term.
+     */
+    int estimateSearch(String term) {
+        int[] ids = _searchCache.get(term);
+        return ids != null ? ids.length : Math.min(searchIndex().estimate(term), _works.size());
+    }
+
+    /**
+     * Gets the search index, building it if needed.
+     *
+     * @return the search index.
+     */
+    private WorkSearchIndex searchIndex() {
+        if (_searchIndex == null) {
+            _searchIndex = new WorkSearchIndex(_works.values());
+        }
+        return _searchIndex;
+    }
+
+    /**
+     * Checks the size limit of a page.
+     *
+     * @param limit the maximum number of elements in the page.
+     * @throws IllegalArgumentException if the limit is not positive.
+     */
+    private static void checkPageLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page size must be positive.");
+        }
+    }
+
+    /**
+     * Streams the elements read a page at a time, each page starting after the last element
+     * of the previous one. Pages are only read as the stream is consumed.
+     *
+     * @param pageAfter reads the page after the element with the given ID, or the first page for 0.
+     * @param idOf      the ID of an element.
+     * @param <T>       the type of the elements.
+     * @return a stream of the elements of every page.
+     */
+    private static <T> Stream<T> streamPages(IntFunction<List<T>> pageAfter, ToIntFunction<T> idOf) {
+        Iterator<T> elements = new Iterator<>() {
+            private List<T> _page;
+            private int _next;
+
+            @Override
+            public boolean hasNext() {
+                if (_page == null) {
+                    _page = pageAfter.apply(0);
+                } else if (_next == _page.size() && _page.size() == STREAM_PAGE_SIZE) {
+                    _page = pageAfter.apply(idOf.applyAsInt(_page.get(_page.size() - 1)));
+                    _next = 0;
+                }
+                return _next < _page.size();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return _page.get(_next++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(elements,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Gets the number of searches answered from the search cache.
+     *
+     * @return the number of search cache hits.
+     */
+    public long getSearchCacheHits() {
+        return _searchCache.getHits();
+    }
+
+    /**
+     * Gets the number of searches that were not answered from the search cache.
+     *
+     * @return the number of search cache misses.
+     */
+    public long getSearchCacheMisses() {
+        return _searchCache.getMisses();
+    }
+
+    /**
+     * Updates the search index, the work facets and the suggestion and completion indexes, if
+     * built, and the search cache with a work just added.
+     *
+     * @param work the work added.
+     */
+    private void workAdded(Work work) {
+        if (_searchIndex != null) {
+            _searchIndex.add(work);
+        }
+        if (_facets != null) {
+            _facets.add(work);
+        }
+        _queryPlanner.workAdded(work);
+        _suggestions.workAdded(work);
+        _searchCache.invalidate(work);
+    }
+
+    /**
+     * Updates the search index, the work facets and the suggestion and completion indexes, if
+     * built, and the search cache with a work being removed, before it leaves its creators. The
+     * suggestion indexes are dropped, to be built again, once most of their texts are gone.
+     *
+     * @param work the work removed.
+     */
+    private void workRemoved(Work work) {
+        if (_searchIndex != null) {
+            _searchIndex.remove(work);
+        }
+        if (_facets != null) {
+            _facets.remove(work);
+        }
+        _queryPlanner.workRemoved(work);
+        _suggestions.workRemoved(work);
+        _searchCache.invalidate(work);
+    }
+
+    /**
+     * Updates the work facets, if built, with a work whose number of available copies changed.
+     *
+     * @param work the work.
+     */
+    private void workAvailabilityChanged(Work work) {
+        if (_facets != null) {
+            _facets.updateAvailability(work);
+        }
     }
 
     /**
@@ -314,6 +915,9 @@ public class Library implements Serializable {
         Work work = getWorkById(workId);
         user.subscribeToWorkForNotification(workId, type);
         work.subscribe(user);
+        _dirty.user(user);
+        _dirty.work(work);
+        if (_journal != null) _journal.recordSubscribe(userId, workId, type);
         _modified = true;
     }
 
@@ -334,6 +938,9 @@ public class Library implements Serializable {
         if (user.getSubscribedTypesOfWork(workId).isEmpty()) {
             work.unsubscribe(user);
         }
+        _dirty.user(user);
+        _dirty.work(work);
+        if (_journal != null) _journal.recordUnsubscribe(userId, workId, type);
         _modified = true;
     }
 
@@ -352,17 +959,27 @@ public class Library implements Serializable {
         User user = getUserById(userId);
         Work work = getWorkById(workId);
 
+        Request activeRequest = _loans.get(user, workId);
         for (RequestRule rule : _requestRules) {
-            rule.check(user, work);
+            rule.check(user, work, activeRequest);
         }
 
         int deadline = _currentDate.getCurrentDate() + user.getRequestDuration(work);
 
         Request newRequest = new Request(_nextRequestId++, user, work, deadline);
 
+        if (_deadlines != null) _deadlines.lend(user, newRequest);
         _activeRequests.put(newRequest.getId(), newRequest);
+        _requestsById.put(newRequest.getId(), newRequest);
         user.requestWork(newRequest);
+        _loans.add(newRequest);
         work.requestWork(newRequest);
+        workAvailabilityChanged(work);
+        _dirty.request(newRequest);
+        _dirty.user(user);
+        _dirty.work(work);
+        _dirty.observersOf(work);
+        if (_journal != null) _journal.recordRequestWork(userId, workId);
         _modified = true;
 
         return deadline;
@@ -383,11 +1000,7 @@ public class Library implements Serializable {
         User user = getUserById(userId);
         Work work = getWorkById(workId);
 
-        Request requestToReturn = user.getActiveRequests()
-                .stream()
-                .filter(request -> request.getWork().equals(work))
-                .findFirst()
-                .orElse(null);
+        Request requestToReturn = _loans.get(user, workId);
 
         if (requestToReturn == null) {
             throw new WorkNotBorrowedByUserException(workId, userId);
@@ -395,14 +1008,54 @@ public class Library implements Serializable {
 
         int currentDate = _currentDate.getCurrentDate();
         _activeRequests.remove(requestToReturn.getId());
-        _archivedRequests.add(requestToReturn);
         user.returnWork(requestToReturn, currentDate);
         requestToReturn.getWork().returnWork();
+        workAvailabilityChanged(work);
+        if (user.isSettled(requestToReturn)) {
+            _loans.remove(requestToReturn);
+            settle(user, List.of(requestToReturn));
+        }
+        _dirty.request(requestToReturn);
+        _dirty.user(user);
+        _dirty.work(work);
+        _dirty.observersOf(work);
+        if (_journal != null) _journal.recordReturnWork(userId, workId);
         _modified = true;
 
         return requestToReturn;
     }
 
+    /**
+     * Iterates over the history of settled requests, oldest first, one page at a time.
+     * Requests of works no longer in the library are left out, so pages may hold fewer
+     * requests than the page size.
+     *
+     * @param pageSize the number of archived requests read for each page.
+     * @return an iterator over the pages of settled requests.
+     * @throws IllegalArgumentException if the page size is not positive.
+     */
+    public Iterator<List<ArchivedRequest>> getRequestHistory(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive.");
+        }
+
+        Iterator<List<ArchivedRequest>> pages = _archive.pages(pageSize);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return pages.hasNext();
+            }
+
+            @Override
+            public List<ArchivedRequest> next() {
+                return pages.next()
+                        .stream()
+                        .filter(request -> hasWork(request.workId()))
+                        .toList();
+            }
+        };
+    }
+
     /**
      * Registers a new work in the library.
      *
@@ -411,8 +1064,22 @@ public class Library implements Serializable {
      * @throws InvalidArgumentsException if the builder arguments are invalid.
      */
     <T extends Work, B extends Work.Builder<T, B>> T registerWork(B workBuilder) throws InvalidArgumentsException {
-        T newWork = workBuilder.id(_nextWorkId++).build();
+        T newWork = newWork(workBuilder);
         _works.put(newWork.getId(), newWork);
+        workAdded(newWork);
+        return newWork;
+    }
+
+    /**
+     * Builds a new work with the next work ID, without adding it to the library yet.
+     *
+     * @param workBuilder the builder for creating the Work object.
+     * @return the new Work object.
+     * @throws InvalidArgumentsException if the builder arguments are invalid.
+     */
+    private <T extends Work, B extends Work.Builder<T, B>> T newWork(B workBuilder) throws InvalidArgumentsException {
+        T newWork = workBuilder.id(_nextWorkId++).build();
+        _dirty.work(newWork);
         return newWork;
     }
 
@@ -427,16 +1094,414 @@ public class Library implements Serializable {
         if (name == null || name.isBlank()) {
             throw new InvalidArgumentsException("Creator name must be non-empty.");
         }
-        return _creators.computeIfAbsent(name, Creator::new);
+        Creator creator = _creators.computeIfAbsent(name, Creator::new);
+        _dirty.creator(creator);
+        return creator;
+    }
+
+    /**
+     * Starts registering users, works and creators in bulk, as when importing a file.
+     *
+     * @return the bulk registration, whose entities are added to the library when it is finished.
+     */
+    BulkRegistration startBulkRegistration() {
+        return new BulkRegistration();
+    }
+
+    /**
+     * Gets the next user ID to be assigned.
+     *
+     * @return the next user ID.
+     */
+    int getNextUserId() {
+        return _nextUserId;
+    }
+
+    /**
+     * Gets the next work ID to be assigned.
+     *
+     * @return the next work ID.
+     */
+    int getNextWorkId() {
+        return _nextWorkId;
+    }
+
+    /**
+     * Gets the next request ID to be assigned.
+     *
+     * @return the next request ID.
+     */
+    int getNextRequestId() {
+        return _nextRequestId;
+    }
+
+    /**
+     * Adds a user rebuilt from a snapshot.
+     *
+     * @param user the user to add.
+     */
+    void restoreUser(User user) {
+        _users.add(user);
+        _usersById.put(user.getId(), user);
+    }
+
+    /**
+     * Adds users rebuilt from a snapshot, all at once.
+     *
+     * @param users the users to add.
+     */
+    void restoreUsers(List<User> users) {
+        addUsers(users);
+    }
+
+    /**
+     * Adds a work rebuilt from a snapshot. Works must be added in ID order, unless they are
+     * decoded on demand by {@link MappedSnapshot}.
+     *
+     * @param work the work to add.
+     */
+    void restoreWork(Work work) {
+        _works.put(work.getId(), work);
+        workAdded(work);
+    }
+
+    /**
+     * Adds works rebuilt from a snapshot, all at once. Works must be added in ID order, unless
+     * they are decoded on demand by {@link MappedSnapshot}.
+     *
+     * @param works the works to add.
+     */
+    void restoreWorks(List<Work> works) {
+        addWorks(works);
+    }
+
+    /**
+     * Adds many users at once. The map of users by ID is sized once for all of them, and the
+     * set of users is built once from them when it is empty, as on imports and loads; otherwise
+     * they are inserted into it.
+     *
+     * @param users the users to add.
+     */
+    private void addUsers(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+
+        _usersById.ensureCapacity(_usersById.size() + users.size());
+        for (User user : users) {
+            _usersById.put(user.getId(), user);
+        }
+
+        if (_users.isEmpty()) {
+            _users = new TreeSet<>(users);
+        } else {
+            _users.addAll(users);
+        }
+    }
+
+    /**
+     * Adds many works at once, after the works already added. The map of works is sized once
+     * for all of them, and the completion indexes are dropped, to be sorted again as a whole.
+     *
+     * @param works the works to add.
+     */
+    private void addWorks(List<Work> works) {
+        if (works.isEmpty()) {
+            return;
+        }
+
+        _works.ensureCapacity(_works.size() + works.size());
+        for (Work work : works) {
+            _works.put(work.getId(), work);
+        }
+        for (Work work : works) {
+            if (_searchIndex != null) {
+                _searchIndex.add(work);
+            }
+            if (_facets != null) {
+                _facets.add(work);
+            }
+            _queryPlanner.workAdded(work);
+        }
+        _suggestions.worksAdded(works);
+        _searchCache.invalidate(works);
+    }
+
+    /**
+     * Adds a creator rebuilt from a snapshot.
+     *
+     * @param creator the creator to add.
+     */
+    void restoreCreator(Creator creator) {
+        _creators.put(creator.getName(), creator);
+    }
+
+    /**
+     * Adds a request decoded on demand by {@link MappedSnapshot}. The request is active unless
+     * it was returned.
+     *
+     * @param request the request to add.
+     */
+    void restoreRequest(Request request) {
+        _requestsById.put(request.getId(), request);
+        if (!request.hasBeenReturned()) {
+            _activeRequests.put(request.getId(), request);
+        }
+    }
+
+    /**
+     * Moves the settled requests of a library read whole from a file written by an earlier
+     * version into the request archive, keeping in memory the most recent ones of each user.
+     * Only used by {@link LibraryManager}, before the journal of the file is replayed.
+     */
+    void archiveSettledRequests() {
+        List<Request> settled = new ArrayList<>();
+        for (Request request : _requestsById.values()) {
+            if (request.getUser().isSettled(request)) {
+                settled.add(request);
+            }
+        }
+        settled.sort(Comparator.comparingInt(Request::getId));
+        for (Request request : settled) {
+            _archive.append(request);
+        }
+        for (User user : _users) {
+            releaseRequests(user.trimSettledRequests());
+        }
+    }
+
+    /**
+     * Gets a user without decoding it from the snapshot the library was loaded from.
+     *
+     * @param id the ID of the user.
+     * @return the user, or null if the library does not hold it yet.
+     */
+    User getLoadedUser(int id) {
+        return _usersById.get(id);
+    }
+
+    /**
+     * Gets a work without decoding it from the snapshot the library was loaded from.
+     *
+     * @param id the ID of the work.
+     * @return the work, or null if the library does not hold it yet.
+     */
+    Work getLoadedWork(int id) {
+        return _works.get(id);
+    }
+
+    /**
+     * Gets a request without decoding it from the snapshot the library was loaded from.
+     *
+     * @param id the ID of the request.
+     * @return the request, or null if the library does not hold it yet.
+     */
+    Request getLoadedRequest(int id) {
+        return _requestsById.get(id);
+    }
+
+    /**
+     * Gets a creator without decoding it from the snapshot the library was loaded from.
+     *
+     * @param name the name of the creator.
+     * @return the creator, or null if the library does not hold it yet.
+     */
+    Creator getLoadedCreator(String name) {
+        return _creators.get(name);
+    }
+
+    /**
+     * Gets the creators without decoding them from the snapshot the library was loaded from.
+     *
+     * @return a collection of the creators the library holds.
+     */
+    Collection<Creator> getLoadedCreators() {
+        return Collections.unmodifiableCollection(_creators.values());
+    }
+
+    /**
+     * Gets the snapshot the entities not yet held by the library are decoded from.
+     *
+     * @return the snapshot, or null if the library holds every entity.
+     */
+    MappedSnapshot getSnapshot() {
+        return _snapshot;
+    }
+
+    /**
+     * Takes the entities changed since the last checkpoint and starts tracking changes anew.
+     *
+     * @return the entities changed since the last checkpoint.
+     */
+    DirtyEntities takeDirtyEntities() {
+        DirtyEntities dirty = _dirty;
+        _dirty = new DirtyEntities();
+        return dirty;
+    }
+
+    /**
+     * Gets the archive of the settled requests.
+     *
+     * @return the request archive.
+     */
+    RequestArchive getArchive() {
+        return _archive;
+    }
+
+    /**
+     * Sets the archive of the settled requests, opened along with the snapshot the library
+     * was loaded from. Only used by {@link LibraryManager}.
+     *
+     * @param archive the request archive.
+     */
+    void attachArchive(RequestArchive archive) {
+        _archive = archive;
+    }
+
+    /**
+     * Sets the snapshot the entities of this library are decoded from on demand.
+     * Only used by {@link MappedSnapshot}.
+     *
+     * @param snapshot the snapshot holding the entities of this library.
+     */
+    void attachSnapshot(MappedSnapshot snapshot) {
+        _snapshot = snapshot;
+    }
+
+    /**
+     * Decodes every work not yet decoded, and restores the ID order of the works,
+     * which were added in the order they were first used.
+     */
+    private void loadWorks() {
+        if (_snapshot == null || _snapshot.hasAllWorks()) {
+            return;
+        }
+
+        _snapshot.loadWorks();
+        List<Work> works = new ArrayList<>(_works.values());
+        works.sort(Comparator.comparingInt(Work::getId));
+        _works.clear();
+        for (Work work : works) {
+            _works.put(work.getId(), work);
+        }
     }
 
     /**
-     * Updates the states of all users based on the current date.
+     * Archives requests of a user that were just settled, and releases the settled requests
+     * of the user that are no longer among the most recent ones.
+     *
+     * @param user    the user of the requests.
+     * @param settled the requests settled.
+     */
+    private void settle(User user, Collection<Request> settled) {
+        for (Request request : settled) {
+            _archive.append(request);
+        }
+        releaseRequests(user.trimSettledRequests());
+    }
+
+    /**
+     * Releases settled requests left to the request archive.
+     *
+     * @param requests the requests to release.
+     */
+    private void releaseRequests(Collection<Request> requests) {
+        for (Request request : requests) {
+            request.getWork().releaseRequest(request);
+            _requestsById.remove(request.getId());
+            _dirty.request(request);
+            _dirty.work(request.getWork());
+        }
+    }
+
+    /**
+     * Restores from the request archive the most recent settled requests of users whose
+     * requests were disposed of, so that they still hold their most recent settled requests.
+     *
+     * @param users the users whose requests were disposed of.
+     */
+    private void restoreSettledRequests(Collection<User> users) {
+        Map<Integer, Set<Integer>> heldRequests = new HashMap<>();
+        for (User user : users) {
+            Set<Integer> held = new HashSet<>();
+            for (Request request : user.getAllRequests()) {
+                held.add(request.getId());
+            }
+            heldRequests.put(user.getId(), held);
+        }
+
+        Map<Integer, List<ArchivedRequest>> candidates = new HashMap<>();
+        Iterator<List<ArchivedRequest>> pages = _archive.pages(ARCHIVE_PAGE_SIZE);
+        while (pages.hasNext()) {
+            for (ArchivedRequest archived : pages.next()) {
+                Set<Integer> held = heldRequests.get(archived.userId());
+                if (held != null && !held.contains(archived.id())) {
+                    candidates.computeIfAbsent(archived.userId(), id -> new ArrayList<>()).add(archived);
+                }
+            }
+        }
+
+        for (User user : users) {
+            List<ArchivedRequest> archivedRequests = candidates.getOrDefault(user.getId(), new ArrayList<>());
+            archivedRequests.sort(Comparator.comparingInt(ArchivedRequest::id));
+            int restored = 0;
+            for (int i = archivedRequests.size() - 1; i >= 0 && restored < User.RECENT_SETTLED_REQUESTS; i--) {
+                ArchivedRequest archived = archivedRequests.get(i);
+                Work work = _works.get(archived.workId());
+                if (work == null && _snapshot != null) {
+                    work = _snapshot.work(archived.workId());
+                }
+                if (work == null) {
+                    continue;
+                }
+
+                Request request = new Request(archived.id(), user, work, archived.deadline());
+                request.markAsReturned(archived.returnDate());
+                if (archived.fineLiquidated()) {
+                    request.liquidateFine();
+                }
+                user.restoreSettledRequest(request);
+                work.restoreSettledRequest(request);
+                _requestsById.put(request.getId(), request);
+                _dirty.request(request);
+                _dirty.work(work);
+                restored++;
+            }
+            releaseRequests(user.trimSettledRequests());
+        }
+    }
+
+    /**
+     * Checks if a work is in the library, without decoding it from the snapshot the library
+     * was loaded from.
+     *
+     * @param id the ID of the work.
+     * @return true if the library has the work, false otherwise.
+     */
+    private boolean hasWork(int id) {
+        return _works.containsKey(id) || _snapshot != null && _snapshot.hasWork(id);
+    }
+
+    /**
+     * Updates the states of the users based on the current date: those with a request whose
+     * deadline the date went past, or changed since the date was last advanced. The first time,
+     * every user with some work not yet returned is updated.
      */
     private void updateUsersStates() {
+        if (_deadlines == null) {
+            if (_snapshot != null) {
+                _snapshot.loadActiveRequests();
+            }
+            _deadlines = new DeadlineQueue(_activeRequests.values());
+        }
         int currentDate = _currentDate.getCurrentDate();
-        for (Request request : _activeRequests.values()) {
-            request.getUser().updateState(currentDate);
+        for (User user : _deadlines.advance(currentDate)) {
+            boolean wasActive = user.isActive();
+            String classification = user.getClassification();
+            user.updateState(currentDate);
+            if (user.isActive() != wasActive || !user.getClassification().equals(classification)) {
+                _dirty.user(user);
+            }
         }
     }
 
@@ -459,6 +1524,97 @@ public class Library implements Serializable {
         _modified = false;
     }
 
+    /**
+     * Sets the library's state to modified, as it was when a library restored from an
+     * {@link ImportCache} was first imported. Only used by {@link ImportCache}.
+     */
+    void setToModified() {
+        _modified = true;
+    }
+
+    /**
+     * Checks if nothing was ever added to the library nor done with it since it was created.
+     *
+     * @return true if the library is as new, false otherwise.
+     */
+    boolean isNew() {
+        return _snapshot == null && _nextUserId == 1 && _nextWorkId == 1 && _nextRequestId == 1
+                && _creators.isEmpty() && _currentDate.getCurrentDate() == 1;
+    }
+
+    /**
+     * Sets the journal that records the mutating operations performed from now on.
+     * Only used by {@link LibraryManager}, after a snapshot is written or loaded.
+     *
+     * @param journal the journal to record operations on, or null to stop recording.
+     */
+    void setJournal(Journal journal) {
+        _journal = journal;
+    }
+
+    /**
+     * Reads a library from a file written by an earlier version, copying its maps by ID into
+     * {@link IntMap}s and a {@link LinkedIntMap}, and rebuilds the state not written by Java
+     * serialization.
+     *
+     * @param in the stream to read the library from.
+     * @throws IOException            if the library cannot be read.
+     * @throws ClassNotFoundException if the class of a serialized object cannot be found.
+     */
+    @Serial
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        _currentDate = (Date) fields.get("_currentDate", null);
+        _nextUserId = fields.get("_nextUserId", 1);
+        _nextWorkId = fields.get("_nextWorkId", 1);
+        _nextRequestId = fields.get("_nextRequestId", 1);
+        _users = (Set<User>) fields.get("_users", null);
+        _usersById = IntMap.of((Map<Integer, User>) fields.get("_usersById", null));
+        _works = LinkedIntMap.of((Map<Integer, Work>) fields.get("_works", null));
+        _creators = (Map<String, Creator>) fields.get("_creators", null);
+        _activeRequests = IntMap.of((Map<Integer, Request>) fields.get("_activeRequests", null));
+        _requestRules = (List<RequestRule>) fields.get("_requestRules", null);
+        _requestsById = new IntMap<>();
+        _dirty = new DirtyEntities();
+        _archive = new RequestArchive();
+        _searchCache = new SearchResultCache(SEARCH_CACHE_SIZE);
+        _queryPlanner = new WorkQueryPlanner(this);
+        _suggestions = new WorkSuggestions(this);
+        _loans = new LoanIndex();
+        for (Request request : _activeRequests.values()) {
+            _requestsById.put(request.getId(), request);
+        }
+        for (User user : _users) {
+            for (Request request : user.getAllRequests()) {
+                _requestsById.put(request.getId(), request);
+            }
+        }
+    }
+
+    /**
+     * Writes the library as earlier versions did, with its maps by ID as {@link HashMap}s and a
+     * {@link LinkedHashMap}.
+     *
+     * @param out the stream to write the library to.
+     * @throws IOException if the library cannot be written.
+     */
+    @Serial
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("_currentDate", _currentDate);
+        fields.put("_nextUserId", _nextUserId);
+        fields.put("_nextWorkId", _nextWorkId);
+        fields.put("_nextRequestId", _nextRequestId);
+        fields.put("_users", _users);
+        fields.put("_usersById", _usersById.toHashMap());
+        fields.put("_works", _works.toLinkedHashMap());
+        fields.put("_creators", _creators);
+        fields.put("_activeRequests", _activeRequests.toHashMap());
+        fields.put("_requestRules", _requestRules);
+        out.writeFields();
+    }
+
     /**
      * Reads a text input file at the beginning of the program and populates the
      * state of this library with the domain entities represented in the text file.
@@ -468,7 +1624,102 @@ public class Library implements Serializable {
      * @throws IOException                if there is an IO error while processing the text file.
      */
     void importFile(String filename) throws UnrecognizedEntryException, IOException {
+        importFile(filename, 1);
+    }
+
+    /**
+     * Reads a text input file, parsing it on several threads, and populates the state of this
+     * library with the domain entities represented in the text file. Entities are registered
+     * in file order, as by {@link #importFile(String)}.
+     *
+     * @param filename the name of the text input file to process.
+     * @param threads  the number of threads parsing the file.
+     * @throws UnrecognizedEntryException if some entry is not correct.
+     * @throws IOException                if there is an IO error while processing the text file.
+     */
+    void importFile(String filename, int threads) throws UnrecognizedEntryException, IOException {
         ImportFileParser parser = new ImportFileParser(this);
-        parser.parseFile(filename);
+        parser.parseFile(filename, threads);
+    }
+
+    /**
+     * Registration of many users, works and creators at once. Users and works get their IDs as
+     * they are registered, as by {@link #registerUser(String, String)} and
+     * {@link #registerWork(Work.Builder)}, but are only added to the library, and works linked
+     * to their creators, when the registration is finished. The lookup maps are then sized once
+     * for all of them, and the name-ordered set of users is built in one pass.
+     */
+    final class BulkRegistration {
+
+        /**
+         * The users registered, in ID order.
+         */
+        private final List<User> _newUsers = new ArrayList<>();
+
+        /**
+         * The works registered, in ID order.
+         */
+        private final List<Work> _newWorks = new ArrayList<>();
+
+        private BulkRegistration() {
+        }
+
+        /**
+         * Registers a new user.
+         *
+         * @param name  the name of the user.
+         * @param email the email of the user.
+         * @return the new User object.
+         * @throws InvalidArgumentsException if the name or email is null or empty.
+         */
+        User registerUser(String name, String email) throws InvalidArgumentsException {
+            User user = newUser(name, email);
+            _newUsers.add(user);
+            return user;
+        }
+
+        /**
+         * Registers a new creator, or gets the creator with the given name if there is one.
+         * Creators are added to the library immediately, so that works registered later share them.
+         *
+         * @param name the name of the creator.
+         * @return the Creator object.
+         * @throws InvalidArgumentsException if the name is null or empty.
+         */
+        Creator registerCreator(String name) throws InvalidArgumentsException {
+            return Library.this.registerCreator(name);
+        }
+
+        /**
+         * Registers a new work. The work is added to the works of its creators when the
+         * registration is finished.
+         *
+         * @param workBuilder the builder for creating the Work object.
+         * @return the new Work object.
+         * @throws InvalidArgumentsException if the builder arguments are invalid.
+         */
+        <T extends Work, B extends Work.Builder<T, B>> T registerWork(B workBuilder) throws InvalidArgumentsException {
+            T work = newWork(workBuilder);
+            _newWorks.add(work);
+            return work;
+        }
+
+        /**
+         * Adds the users and works registered so far to the library, and links the works to
+         * their creators.
+         */
+        void finish() {
+            addUsers(_newUsers);
+            addWorks(_newWorks);
+
+            for (Work work : _newWorks) {
+                for (Creator creator : work.getCreators()) {
+                    creator.addWork(work);
+                }
+            }
+
+            _newUsers.clear();
+            _newWorks.clear();
+        }
     }
-}
\ No newline at end of file
+}
@@ -3,6 +3,19 @@ package bci.core;
 import bci.core.exception.*;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.SortedMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
 
 /**
  * The façade class. Represents the manager of this application. It manages the current
@@ -10,6 +23,12 @@ import java.io.*;
  */
 public class LibraryManager {
 
+    /**
+     * Default number of journal records after which a save writes a checkpoint instead of
+     * appending to the journal.
+     */
+    private static final int SNAPSHOT_INTERVAL = 1000;
+
     /**
      * The object doing all the actual work.
      */
@@ -26,10 +45,105 @@ public class LibraryManager {
     private boolean _firstSave = true;
 
     /**
-     * Constructor. Creates a new LibraryManager with an empty Library.
+     * The journal extending the last snapshot written or loaded, if any.
+     */
+    private Journal _journal;
+
+    /**
+     * Number of creator segments of the associated file, or 0 if it is not a segmented file.
+     */
+    private int _creatorBuckets;
+
+    /**
+     * The current manifest of the associated file, if it is a segmented file. Only used by the
+     * thread writing saves, once the file is loaded.
+     */
+    private Manifest _manifest;
+
+    /**
+     * Size of the associated file once the saves written so far are stored. Only used by the
+     * thread writing saves, once the file is loaded.
+     */
+    private long _fileEnd;
+
+    /**
+     * Set, by the thread writing saves, when the associated file holds more replaced segments
+     * than current ones, so that the next save writes a full snapshot.
+     */
+    private volatile boolean _compactFile;
+
+    /**
+     * Whether saves are written on a background thread instead of the calling thread.
+     */
+    private final boolean _backgroundSaves;
+
+    /**
+     * Thread writing background saves, in the order they were started. Created on first use.
+     */
+    private ExecutorService _saver;
+
+    /**
+     * The last background save started, if any.
+     */
+    private Future<?> _lastSave;
+
+    /**
+     * Number of background saves started and not yet finished.
+     */
+    private final AtomicInteger _pendingSaves = new AtomicInteger();
+
+    /**
+     * The error of the last background save, if it failed.
+     */
+    private volatile IOException _saveError;
+
+    /**
+     * Set when a save fails, so that the next save writes a full snapshot.
+     */
+    private final AtomicBoolean _saveFailed = new AtomicBoolean();
+
+    /**
+     * Set, by the thread writing saves, while the last snapshot is not safely stored.
+     * Journal records extending it are then not written.
+     */
+    private boolean _snapshotMissing;
+
+    /**
+     * Compression level of the segments written by saves, or {@link Deflater#NO_COMPRESSION}.
+     */
+    private int _compressionLevel = Deflater.NO_COMPRESSION;
+
+    /**
+     * Number of journal records after which a save writes a checkpoint.
+     */
+    private int _checkpointInterval = SNAPSHOT_INTERVAL;
+
+    /**
+     * Number of threads parsing imported files.
+     */
+    private int _importThreads = 1;
+
+    /**
+     * Whether imports are cached, in an {@link ImportCache} next to each imported file.
+     */
+    private boolean _importCache;
+
+    /**
+     * Constructor. Creates a new LibraryManager with an empty Library whose saves are
+     * written on the calling thread.
      */
     public LibraryManager() {
+        this(false);
+    }
+
+    /**
+     * Constructor. Creates a new LibraryManager with an empty Library.
+     *
+     * @param backgroundSaves whether saves are written on a background thread.
+     */
+    public LibraryManager(boolean backgroundSaves) {
         _library = new Library();
+        _backgroundSaves = backgroundSaves;
     }
 
     /**
@@ -41,6 +155,57 @@ public class LibraryManager {
         return _library;
     }
 
+    /**
+     * Sets the compression level of the segments written by the following saves. Segments
+     * already written keep theirs, and files are read the same way whatever their compression.
+     *
+     * @param level a {@link Deflater} level from 1, fastest, to 9, smallest, or 0 to store
+     *              segments uncompressed, as by default.
+     * @throws IllegalArgumentException if the level is not between 0 and 9.
+     */
+    public void setCompressionLevel(int level) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        _compressionLevel = level;
+    }
+
+    /**
+     * Sets the number of journal records after which the following saves write a checkpoint
+     * instead of appending to the journal.
+     *
+     * @param records the number of records, {@value #SNAPSHOT_INTERVAL} by default.
+     * @throws IllegalArgumentException if the number of records is not positive.
+     */
+    public void setCheckpointInterval(int records) {
+        if (records <= 0)
+            throw new IllegalArgumentException("Invalid checkpoint interval " + records);
+        _checkpointInterval = records;
+    }
+
+    /**
+     * Sets the number of threads parsing the files imported from now on. Imports register the
+     * same entities, with the same IDs, whatever the number of threads.
+     *
+     * @param threads the number of threads, or 1, as by default, to parse files on the calling thread.
+     * @throws IllegalArgumentException if the number of threads is not positive.
+     */
+    public void setImportThreads(int threads) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("Invalid number of import threads " + threads);
+        _importThreads = threads;
+    }
+
+    /**
+     * Sets whether the files imported from now on are cached. The first import of a file into a
+     * new library then writes a binary cache of the imported library next to it, and later imports
+     * of the unchanged file into a new library open the cache instead of parsing the file again.
+     *
+     * @param cache true to cache imports, false, as by default, to always parse imported files.
+     */
+    public void setImportCache(boolean cache) {
+        _importCache = cache;
+    }
+
     /**
      * Checks if there is an associated file for the current library.
      *
@@ -51,26 +216,357 @@ public class LibraryManager {
     }
 
     /**
-     * Saves the serialized application's state into the file associated to the current library.
+     * Saves the application's state into the file associated to the current library.
+     * <p>
+     * When the file already holds a snapshot of this library, only the operations performed
+     * since the last save are appended to its journal. Once the journal holds as many records as
+     * {@linkplain #setCheckpointInterval(int) set}, a checkpoint appends to the file the segments
+     * holding the entities changed since the previous checkpoint and a manifest pointing to them.
+     * A full snapshot is written the first time the library is saved to a file, after a failed
+     * save, and when the replaced segments would take more space than the current ones.
+     * Checkpoints and snapshots also append the requests settled since the previous one to the
+     * request archive next to the file.
+     * <p>
+     * The state to save is captured in memory on the calling thread, so later changes to the
+     * library are left for the next save: the entities of the segments to write are copied, and
+     * are encoded when the save is written. Full snapshots are written to a temporary file, forced
+     * to the storage device and then renamed over the associated file. With background saves,
+     * encoding and writing happen on another thread and their outcome is reported by
+     * {@link #getSaveStatus()}.
      *
      * @throws FileNotFoundException           if the file cannot be created or opened.
      * @throws MissingFileAssociationException if the current library does not have an associated file.
      * @throws IOException                     if an error occurs while serializing the state to disk.
      */
     public void save() throws MissingFileAssociationException, FileNotFoundException, IOException {
-        if (!_library.isModified() && !_firstSave)
+        if (!_library.isModified() && !_firstSave && !_saveFailed.get())
             return;
 
         if (associatedFile == null || associatedFile.isEmpty())
             throw new MissingFileAssociationException();
 
-        try (ObjectOutputStream obOut = new ObjectOutputStream(new FileOutputStream(associatedFile))) {
-            obOut.writeObject(_library);
-            _firstSave = false;
-            _library.setToUnmodified();
+        boolean previousSaveFailed = _saveFailed.getAndSet(false);
+        boolean sameFile = !previousSaveFailed && !_compactFile && _journal != null
+                && _journal.belongsTo(associatedFile);
+        SaveTask task;
+        if (sameFile && _journal.size() < _checkpointInterval) {
+            task = captureJournalRecords();
+        } else if (sameFile && _creatorBuckets > 0) {
+            task = captureCheckpoint();
+        } else {
+            task = captureSnapshot();
+        }
+
+        _firstSave = false;
+        _library.setToUnmodified();
+
+        if (_backgroundSaves) {
+            startBackgroundSave(task);
+        } else {
+            try {
+                task.write();
+            } catch (IOException | RuntimeException e) {
+                _saveFailed.set(true);
+                throw e;
+            }
         }
     }
 
+    /**
+     * Takes the journal records not yet saved.
+     *
+     * @return the task appending them to the journal file.
+     */
+    private SaveTask captureJournalRecords() {
+        Journal journal = _journal;
+        byte[] records = journal.takePendingRecords();
+
+        return () -> {
+            if (_snapshotMissing)
+                throw new IOException("The snapshot extended by the journal was not saved");
+            journal.append(records);
+        };
+    }
+
+    /**
+     * Captures the segments holding the entities changed since the last checkpoint and starts a
+     * new, empty journal extending them. When the file then holds more replaced segments than
+     * current ones, the next save writes a full snapshot instead.
+     *
+     * @return the task appending the segments to the associated file.
+     * @throws IOException if the library cannot be encoded.
+     */
+    private SaveTask captureCheckpoint() throws IOException {
+        SnapshotCodec.Capture capture = SnapshotCodec.capture(_library, _library.takeDirtyEntities(),
+                _creatorBuckets);
+        RequestArchive.Write archive = _library.getArchive().capture(archiveOf(associatedFile), false);
+        Journal journal = startJournal(_creatorBuckets);
+        int level = _compressionLevel;
+
+        Path file = Path.of(associatedFile);
+        return () -> {
+            if (_snapshotMissing)
+                throw new IOException("The snapshot extended by the checkpoint was not saved");
+            try {
+                archive.write();
+                Manifest manifest;
+                byte[] encodedManifest;
+                long manifestPosition;
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    SortedMap<Long, SnapshotCodec.Segment> segments = SnapshotCodec.write(capture, level, channel,
+                            0, _fileEnd);
+                    manifest = Manifest.of(_manifest, capture, segments, archive.getLength());
+                    encodedManifest = manifest.toBytes();
+                    manifestPosition = endOf(segments, _fileEnd);
+                    write(channel, manifestPosition, encodedManifest);
+                    channel.force(false);
+                    write(channel, Manifest.slotPosition(encodedManifest),
+                            Manifest.slot(encodedManifest, manifestPosition));
+                    channel.force(false);
+                }
+                journal.bind(manifest.getId());
+                _manifest = manifest;
+                _fileEnd = manifestPosition + encodedManifest.length;
+                _compactFile = _fileEnd > 2 * (Manifest.HEADER_SIZE + manifest.getLiveBytes() + encodedManifest.length);
+            } catch (IOException | RuntimeException e) {
+                _snapshotMissing = true;
+                throw e;
+            }
+            archive.confirm();
+            journal.delete();
+        };
+    }
+
+    /**
+     * Captures a full snapshot of the current library and starts a new, empty journal extending it.
+     *
+     * @return the task writing the snapshot into the associated file.
+     * @throws IOException if the library cannot be encoded.
+     */
+    private SaveTask captureSnapshot() throws IOException {
+        int creatorBuckets = creatorBucketsOf(_library);
+        _library.takeDirtyEntities();
+        SnapshotCodec.Capture capture = SnapshotCodec.capture(_library, null, creatorBuckets);
+        RequestArchive.Write archive = _library.getArchive().capture(archiveOf(associatedFile), true);
+        Journal journal = startJournal(creatorBuckets);
+        int level = _compressionLevel;
+
+        Path file = Path.of(associatedFile);
+        return () -> {
+            _snapshotMissing = true;
+            archive.write();
+            Manifest manifest = writeAtomically(file,
+                    channel -> writeSnapshot(channel, 0, _manifest, capture, level, archive.getLength()));
+            archive.confirm();
+            journal.bind(manifest.getId());
+            journal.delete();
+            _manifest = manifest;
+            _fileEnd = Files.size(file);
+            _compactFile = false;
+            _snapshotMissing = false;
+        };
+    }
+
+    /**
+     * Gets the number of creator segments of full snapshots of a library: that of the snapshot it
+     * was loaded from, if any, so that creators keep their segments.
+     *
+     * @param library the library.
+     * @return the number of creator segments.
+     */
+    private static int creatorBucketsOf(Library library) {
+        MappedSnapshot loaded = library.getSnapshot();
+        return loaded != null ? loaded.getManifest().getCreatorBuckets()
+                : Math.max(1, (library.getLoadedCreators().size() + Manifest.CREATORS_PER_SEGMENT - 1)
+                        / Manifest.CREATORS_PER_SEGMENT);
+    }
+
+    /**
+     * Writes a full snapshot of a captured library into a file: the segments, each written as
+     * soon as it is encoded, then the manifest after them, and last the file header pointing to
+     * the manifest.
+     *
+     * @param channel       the file to write into.
+     * @param origin        the position of the snapshot in the file.
+     * @param previous      the manifest of the file the snapshot replaces, if any.
+     * @param capture       the captured library.
+     * @param level         the compression level of the segments.
+     * @param archiveLength the length of the request archive written along with the snapshot.
+     * @return the manifest of the snapshot.
+     * @throws IOException if an error occurs while writing the file.
+     */
+    static Manifest writeSnapshot(FileChannel channel, long origin, Manifest previous, SnapshotCodec.Capture capture,
+                                  int level, long archiveLength) throws IOException {
+        SortedMap<Long, SnapshotCodec.Segment> segments = SnapshotCodec.write(capture, level, channel, origin,
+                Manifest.HEADER_SIZE);
+        Manifest manifest = Manifest.of(previous, capture, segments, archiveLength);
+        byte[] encodedManifest = manifest.toBytes();
+        long manifestPosition = endOf(segments, Manifest.HEADER_SIZE);
+        write(channel, origin + manifestPosition, encodedManifest);
+        write(channel, origin, Manifest.header(encodedManifest, manifestPosition));
+        return manifest;
+    }
+
+    /**
+     * Gets the position following the last of the segments written from a given position.
+     *
+     * @param segments the segments written, by {@link Manifest#key(int, int)}, which is also
+     *                 the order in which they were written.
+     * @param position the position of the first segment.
+     * @return the position after the last segment.
+     */
+    private static long endOf(SortedMap<Long, SnapshotCodec.Segment> segments, long position) {
+        if (segments.isEmpty())
+            return position;
+        SnapshotCodec.Segment last = segments.get(segments.lastKey());
+        return last.position() + last.length();
+    }
+
+    /**
+     * Starts a new, empty journal extending a checkpoint not written yet, which binds it once
+     * written.
+     *
+     * @param creatorBuckets the number of creator segments of the checkpoint.
+     * @return the new journal.
+     */
+    private Journal startJournal(int creatorBuckets) {
+        Journal journal = new Journal(associatedFile);
+        _journal = journal;
+        _creatorBuckets = creatorBuckets;
+        _library.setJournal(journal);
+        return journal;
+    }
+
+    /**
+     * Gets the path of the request archive of a library file.
+     *
+     * @param filename the name of the library file.
+     * @return the path of its request archive.
+     */
+    private static Path archiveOf(String filename) {
+        return Path.of(filename + RequestArchive.SUFFIX);
+    }
+
+    /**
+     * Writes bytes into a file, from a given position.
+     *
+     * @param channel  the channel of the file.
+     * @param position the position to write at.
+     * @param bytes    the bytes to write.
+     * @throws IOException if an error occurs while writing the file.
+     */
+    static void write(FileChannel channel, long position, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    /**
+     * Replaces the contents of a file: the contents are written to a temporary file in the same
+     * directory, forced to the storage device and the temporary file is renamed over the file.
+     *
+     * @param file     the file to write.
+     * @param contents writes the new contents of the file.
+     * @param <T>      the type of the result of writing the contents.
+     * @return the result of writing the contents.
+     * @throws IOException if an error occurs while writing the file.
+     */
+    static <T> T writeAtomically(Path file, FileContents<T> contents) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            T result;
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                result = contents.writeTo(channel);
+                channel.force(true);
+            }
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return result;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Writes a captured save on the background thread.
+     *
+     * @param task the task writing the save.
+     */
+    private void startBackgroundSave(SaveTask task) {
+        if (_saver == null) {
+            _saver = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "library-save");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        _pendingSaves.incrementAndGet();
+        _lastSave = _saver.submit(() -> {
+            try {
+                task.write();
+                _saveError = null;
+            } catch (Throwable e) {
+                _saveError = e instanceof IOException io ? io : new IOException(e);
+                _saveFailed.set(true);
+            } finally {
+                _pendingSaves.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Waits for the background saves started so far to finish.
+     */
+    public void awaitPendingSaves() {
+        if (_lastSave == null)
+            return;
+
+        try {
+            _lastSave.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // failures are reported by getSaveStatus()
+        }
+    }
+
+    /**
+     * Gets the status of the background saves.
+     *
+     * @return the status of the background saves.
+     */
+    public SaveStatus getSaveStatus() {
+        if (_pendingSaves.get() > 0)
+            return SaveStatus.IN_PROGRESS;
+        if (_saveError != null)
+            return SaveStatus.FAILED;
+        return _lastSave == null ? SaveStatus.IDLE : SaveStatus.COMPLETED;
+    }
+
+    /**
+     * Gets the error of the last background save.
+     *
+     * @return the error of the last background save, or null if it did not fail.
+     */
+    public IOException getSaveError() {
+        return _saveError;
+    }
+
+    /**
+     * Checks if the library holds changes that are not saved, either because they were made
+     * after the last save or because the last save failed.
+     *
+     * @return true if there are unsaved changes, false otherwise.
+     */
+    public boolean hasUnsavedChanges() {
+        return _library.isModified() || _saveFailed.get();
+    }
+
     /**
      * Saves the serialized application's state into the specified file and associates the current library with it.
      *
@@ -85,32 +581,128 @@ public class LibraryManager {
     }
 
     /**
-     * Loads the previously serialized application's state and sets it as the current library.
+     * Loads the previously saved application's state and sets it as the current library.
+     * The snapshot stored in the file is opened first and the operations in its journal, if any,
+     * are then replayed on top of it. Segmented files are opened without decoding the entities
+     * they hold, which are decoded when first used, and the request archive next to them is opened
+     * up to the length recorded by the manifest. Files written with Java serialization by earlier
+     * versions are still accepted, and read whole; their settled requests are moved into a new
+     * request archive, written by the next save.
      *
      * @param filename the name of the file containing the serialized application's state.
      * @throws UnavailableFileException if the file does not exist or an error occurs while processing it.
      */
     public void load(String filename) throws UnavailableFileException {
-        try (ObjectInputStream obIn = new ObjectInputStream(new FileInputStream(filename))) {
-            _library = (Library) obIn.readObject();
+        awaitPendingSaves();
+
+        try {
+            Path file = Path.of(filename);
+            byte[] header;
+            try (InputStream in = Files.newInputStream(file)) {
+                header = in.readNBytes(Integer.BYTES + Short.BYTES);
+            }
+
+            Library library;
+            Manifest manifest = null;
+            long checksum;
+            if (SnapshotCodec.versionOf(header) == SnapshotCodec.VERSION) {
+                MappedSnapshot snapshot = MappedSnapshot.open(file);
+                library = snapshot.getLibrary();
+                manifest = snapshot.getManifest();
+                checksum = manifest.getId();
+                library.attachArchive(RequestArchive.open(archiveOf(filename), manifest.getArchiveLength()));
+            } else {
+                CRC32 crc = new CRC32();
+                try (CheckedInputStream checkedIn = new CheckedInputStream(Files.newInputStream(file), crc);
+                     BufferedInputStream in = new BufferedInputStream(checkedIn)) {
+                    library = (Library) new ObjectInputStream(in).readObject();
+                    checkedIn.transferTo(OutputStream.nullOutputStream());
+                }
+                checksum = crc.getValue();
+                library.archiveSettledRequests();
+            }
+
+            Journal journal = new Journal(filename, checksum);
+            journal.replay(library);
+            library.setToUnmodified();
+            library.setJournal(journal);
+
+            _library = library;
+            _journal = journal;
+            _creatorBuckets = manifest == null ? 0 : manifest.getCreatorBuckets();
+            _manifest = manifest;
+            _fileEnd = Files.size(file);
+            _compactFile = false;
+            _snapshotMissing = false;
+            _saveFailed.set(false);
             associatedFile = filename;
-        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+        } catch (IOException | ClassNotFoundException | ClassCastException | IllegalStateException
+                 | IndexOutOfBoundsException | InvalidPathException e) {
             throw new UnavailableFileException(filename);
         }
     }
 
     /**
      * Reads a text input file and initializes the current library with the domain entities represented in the file.
+     * <p>
+     * When imports are cached and the current library is new, the library is opened from the cache of the
+     * file instead, if the file did not change since the cache was written; otherwise, the file is parsed and
+     * the cache is written once the whole file is imported. Failing to write the cache does not fail the import.
      *
      * @param datafile the name of the text input file to import.
      * @throws ImportFileException if an error occurs during the processing of the import file.
      */
     public void importFile(String datafile) throws ImportFileException {
         try {
-            if (datafile != null && !datafile.isEmpty())
-                _library.importFile(datafile);
-        } catch (IOException | UnrecognizedEntryException e) {
+            if (datafile == null || datafile.isEmpty())
+                return;
+
+            ImportCache cache = null;
+            if (_importCache && associatedFile == null && _library.isNew()) {
+                cache = new ImportCache(Path.of(datafile));
+                Library cached = cache.open();
+                if (cached != null) {
+                    _library = cached;
+                    return;
+                }
+            }
+
+            _library.importFile(datafile, _importThreads);
+            if (cache != null)
+                writeImportCache(cache);
+        } catch (IOException | UnrecognizedEntryException | InvalidPathException e) {
             throw new ImportFileException(datafile, e);
         }
     }
+
+    /**
+     * Writes the cache of the file imported into the current library, a full snapshot of the library.
+     * Failures are ignored, since the file is parsed again when its cache is missing.
+     *
+     * @param cache the cache of the imported file.
+     */
+    private void writeImportCache(ImportCache cache) {
+        try {
+            SnapshotCodec.Capture capture = SnapshotCodec.capture(_library, null, creatorBucketsOf(_library));
+            cache.write(_library, capture, _compressionLevel);
+        } catch (IOException e) {
+            // the file is parsed again by the next import
+        }
+    }
+
+    /**
+     * Writes a save captured from the library.
+     */
+    private interface SaveTask {
+        void write() throws IOException;
+    }
+
+    /**
+     * Writes the contents of a file.
+     *
+     * @param <T> the type of the result of writing the contents.
+     */
+    interface FileContents<T> {
+        T writeTo(FileChannel channel) throws IOException;
+    }
 }
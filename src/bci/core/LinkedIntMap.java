@@ -0,0 +1,284 @@
+package bci.core;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A map from {@code int} keys to values, like {@link IntMap}, that iterates over its values in
+ * the order their keys were first added.
+ * <p>
+ * Entries are kept in parallel arrays of keys and values, in the order they were added, and a
+ * table with open addressing holds the position of each entry, by the hash of its key. Removing
+ * an entry leaves a hole in the arrays, skipped when iterating; the arrays are compacted once
+ * holes outnumber entries. Null values are not allowed.
+ *
+ * @param <V> the type of the values.
+ */
+public final class LinkedIntMap<V> {
+
+    private static final int MIN_CAPACITY = 8;
+
+    /**
+     * The table of positions, each one plus one, so that zero marks a free slot.
+     */
+    private int[] _index;
+
+    private int[] _keys;
+    private Object[] _values;
+
+    /**
+     * Number of positions used in the arrays of keys and values, holes included.
+     */
+    private int _end;
+    private int _size;
+    private int _modifications;
+
+    /**
+     * Creates an empty map.
+     */
+    public LinkedIntMap() {
+        this(0);
+    }
+
+    /**
+     * Creates an empty map, sized to hold some entries without growing.
+     *
+     * @param expectedSize the number of entries expected.
+     */
+    public LinkedIntMap(int expectedSize) {
+        int capacity = Math.max(MIN_CAPACITY / 2, expectedSize);
+        _index = new int[IntMap.capacityFor(capacity)];
+        _keys = new int[capacity];
+        _values = new Object[capacity];
+    }
+
+    /**
+     * Creates a map holding the entries of another map, in its order.
+     *
+     * @param map the map to copy.
+     * @param <V> the type of the values.
+     * @return the new map.
+     */
+    public static <V> LinkedIntMap<V> of(Map<Integer, V> map) {
+        LinkedIntMap<V> copy = new LinkedIntMap<>(map.size());
+        map.forEach(copy::put);
+        return copy;
+    }
+
+    /**
+     * Copies the entries of the map, in its order, into a {@link LinkedHashMap}.
+     *
+     * @return the new map.
+     */
+    public LinkedHashMap<Integer, V> toLinkedHashMap() {
+        LinkedHashMap<Integer, V> copy = new LinkedHashMap<>((int) Math.ceil(_size / 0.75));
+        for (int position = 0; position < _end; position++) {
+            if (_values[position] != null) {
+                copy.put(_keys[position], value(position));
+            }
+        }
+        return copy;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Gets the value of a key.
+     *
+     * @param key the key.
+     * @return the value of the key, or null if it has none.
+     */
+    public V get(int key) {
+        int position = _index[slotOf(key)] - 1;
+        return position < 0 ? null : value(position);
+    }
+
+    public boolean containsKey(int key) {
+        return _index[slotOf(key)] != 0;
+    }
+
+    /**
+     * Sets the value of a key, adding the key last if it is not in the map.
+     *
+     * @param key   the key.
+     * @param value the value, not null.
+     * @return the previous value of the key, or null if it had none.
+     */
+    public V put(int key, V value) {
+        Objects.requireNonNull(value);
+        int slot = slotOf(key);
+        int position = _index[slot] - 1;
+        if (position >= 0) {
+            V previous = value(position);
+            _values[position] = value;
+            return previous;
+        }
+
+        if (_end == _keys.length) {
+            resize(Math.max(MIN_CAPACITY, 2 * _size + 1));
+            slot = slotOf(key);
+        }
+        _keys[_end] = key;
+        _values[_end] = value;
+        _index[slot] = ++_end;
+        _size++;
+        _modifications++;
+        return null;
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @param key the key.
+     * @return the value the key had, or null if it had none.
+     */
+    public V remove(int key) {
+        int slot = slotOf(key);
+        int position = _index[slot] - 1;
+        if (position < 0) {
+            return null;
+        }
+        V previous = value(position);
+        _values[position] = null;
+        _size--;
+        _modifications++;
+
+        int mask = _index.length - 1;
+        int free = slot;
+        for (int next = (slot + 1) & mask; _index[next] != 0; next = (next + 1) & mask) {
+            int home = IntMap.hash(_keys[_index[next] - 1]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                _index[free] = _index[next];
+                free = next;
+            }
+        }
+        _index[free] = 0;
+
+        if (_end - _size > Math.max(_size, MIN_CAPACITY)) {
+            resize(_keys.length);
+        }
+        return previous;
+    }
+
+    /**
+     * Grows the arrays, if needed, to hold some entries without growing again.
+     *
+     * @param size the number of entries to hold.
+     */
+    public void ensureCapacity(int size) {
+        if (size > _keys.length) {
+            resize(size);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(_index, 0);
+        Arrays.fill(_values, 0, _end, null);
+        _end = 0;
+        _size = 0;
+        _modifications++;
+    }
+
+    /**
+     * Gets a view of the values of the map, which fails when iterated over while the map is
+     * changed, other than by setting the values of keys it already holds.
+     *
+     * @return the values, in the order their keys were first added.
+     */
+    public Collection<V> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new Iterator<>() {
+                    private final int _expectedModifications = _modifications;
+                    private int _position = nextPosition(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return _position < _end;
+                    }
+
+                    @Override
+                    public V next() {
+                        if (_modifications != _expectedModifications) {
+                            throw new ConcurrentModificationException();
+                        }
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        V value = value(_position);
+                        _position = nextPosition(_position + 1);
+                        return value;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return _size;
+            }
+        };
+    }
+
+    private int nextPosition(int position) {
+        while (position < _end && _values[position] == null) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Finds the slot of a key in the table: the slot holding its position, or the free slot
+     * where it would be added.
+     *
+     * @param key the key.
+     * @return the slot.
+     */
+    private int slotOf(int key) {
+        int mask = _index.length - 1;
+        int slot = IntMap.hash(key) & mask;
+        for (int position = _index[slot]; position != 0 && _keys[position - 1] != key; position = _index[slot]) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int position) {
+        return (V) _values[position];
+    }
+
+    /**
+     * Moves the entries to arrays of a new capacity, closing the holes between them, and
+     * rebuilds the table of positions.
+     *
+     * @param capacity the new capacity, at least the number of entries.
+     */
+    private void resize(int capacity) {
+        int[] keys = new int[capacity];
+        Object[] values = new Object[capacity];
+        int count = 0;
+        for (int position = 0; position < _end; position++) {
+            if (_values[position] != null) {
+                keys[count] = _keys[position];
+                values[count++] = _values[position];
+            }
+        }
+        _keys = keys;
+        _values = values;
+        _end = count;
+        _index = new int[IntMap.capacityFor(capacity)];
+        for (int position = 0; position < count; position++) {
+            _index[slotOf(keys[position])] = position + 1;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package bci.core;
+
+import bci.core.request.Request;
+import bci.core.user.User;
+
+import java.util.BitSet;
+
+/**
+ * The active requests of the users of a {@link Library}, by user and work, to find the request of
+ * a user for a work without walking the active requests of the user.
+ * <p>
+ * A user has at most one active request for each work, so a request is keyed by the IDs of its
+ * user and work, packed into a {@code long}. Keys and requests are kept in parallel arrays, with
+ * open addressing and linear probing, so lookups allocate nothing. A slot is free if it holds no
+ * request, and removals shift back the requests after them, leaving no tombstones.
+ * <p>
+ * The requests of a user are only indexed the first time they are looked up, so the requests of
+ * users read on demand from a snapshot are not read until needed. Requests of users not yet
+ * indexed are ignored when added or removed.
+ */
+final class LoanIndex {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] _keys = new long[INITIAL_CAPACITY];
+    private Request[] _requests = new Request[INITIAL_CAPACITY];
+    private int _size;
+
+    /**
+     * The IDs of the users whose requests are indexed.
+     */
+    private final BitSet _users = new BitSet();
+
+    /**
+     * Gets the active request of a user for a work.
+     *
+     * @param user   the user.
+     * @param workId the ID of the work.
+     * @return the active request, or null if the user has none for the work.
+     */
+    Request get(User user, int workId) {
+        if (!_users.get(user.getId())) {
+            _users.set(user.getId());
+            for (Request request : user.getActiveRequests()) {
+                put(request);
+            }
+        }
+        int slot = slotOf(keyOf(user.getId(), workId));
+        return _requests[slot];
+    }
+
+    /**
+     * Adds a request that became active.
+     *
+     * @param request the request.
+     */
+    void add(Request request) {
+        if (_users.get(request.getUser().getId())) {
+            put(request);
+        }
+    }
+
+    /**
+     * Removes a request that is no longer active.
+     *
+     * @param request the request.
+     */
+    void remove(Request request) {
+        if (!_users.get(request.getUser().getId())) {
+            return;
+        }
+        int slot = slotOf(keyOf(request));
+        if (_requests[slot] != request) {
+            return;
+        }
+
+        int mask = _keys.length - 1;
+        int free = slot;
+        for (int next = (slot + 1) & mask; _requests[next] != null; next = (next + 1) & mask) {
+            int home = hash(_keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                _keys[free] = _keys[next];
+                _requests[free] = _requests[next];
+                free = next;
+            }
+        }
+        _requests[free] = null;
+        _size--;
+    }
+
+    private void put(Request request) {
+        long key = keyOf(request);
+        int slot = slotOf(key);
+        if (_requests[slot] == null) {
+            if (2 * (_size + 1) > _keys.length) {
+                grow();
+                slot = slotOf(key);
+            }
+            _keys[slot] = key;
+            _size++;
+        }
+        _requests[slot] = request;
+    }
+
+    /**
+     * Finds the slot of a key: the slot holding it, or the free slot where it would be added.
+     *
+     * @param key the key.
+     * @return the slot.
+     */
+    private int slotOf(long key) {
+        int mask = _keys.length - 1;
+        int slot = hash(key) & mask;
+        while (_requests[slot] != null && _keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] keys = _keys;
+        Request[] requests = _requests;
+        _keys = new long[keys.length * 2];
+        _requests = new Request[keys.length * 2];
+        for (int i = 0; i < keys.length; i++) {
+            if (requests[i] != null) {
+                int slot = slotOf(keys[i]);
+                _keys[slot] = keys[i];
+                _requests[slot] = requests[i];
+            }
+        }
+    }
+
+    private static long keyOf(Request request) {
+        return keyOf(request.getUser().getId(), request.getWork().getId());
+    }
+
+    private static long keyOf(int userId, int workId) {
+        return (long) userId << 32 | (workId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Mixes the bits of a key, so that keys of the same user spread over the table.
+     *
+     * @param key the key.
+     * @return the hash of the key.
+     */
+    private static int hash(long key) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ mixed >>> 32);
+    }
+}
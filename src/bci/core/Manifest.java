@@ -0,0 +1,416 @@
+package bci.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Table of contents of a segmented library file.
+ * <p>
+ * Each kind of entity is split into segments: users, works and requests by ranges of IDs and
+ * creators by the hash of their name. The manifest holds the library counters, the length of
+ * the {@link RequestArchive} written along with it, and the position, stored length,
+ * decompressed length and checksum of the current version of every segment. A checkpoint appends the new versions of
+ * the segments it rewrites followed by a new manifest, which becomes current once the file
+ * header points to it. The header has two slots, written alternately, so the previous manifest
+ * is still found if the header is torn while being written.
+ * <pre>
+ *   header     magic, version, two slots with sequence, manifest position, length and checksum
+ *   segments   segment versions, current or replaced
+ *   manifests  manifest versions, current or replaced
+ * </pre>
+ */
+final class Manifest {
+
+    static final int USERS = 0;
+    static final int WORKS = 1;
+    static final int REQUESTS = 2;
+    static final int CREATORS = 3;
+
+    /**
+     * Number of IDs in each user, work and request segment.
+     */
+    static final int[] SEGMENT_IDS = { 64, 64, 256 };
+
+    /**
+     * Number of creators per creator segment when a library is first written.
+     */
+    static final int CREATORS_PER_SEGMENT = 64;
+
+    /**
+     * Size of the file header.
+     */
+    static final int HEADER_SIZE = 64;
+
+    /**
+     * Size of a header slot: sequence, manifest position, length and checksum.
+     */
+    private static final int SLOT_SIZE = 2 * Long.BYTES + 2 * Integer.BYTES;
+
+    /**
+     * Position of the first header slot.
+     */
+    private static final int FIRST_SLOT = 8;
+
+    private final long _sequence;
+    private final int _currentDate;
+    private final int _nextUserId;
+    private final int _nextWorkId;
+    private final int _nextRequestId;
+    private final long _archiveLength;
+    private final long[][] _positions;
+    private final int[][] _lengths;
+    private final int[][] _rawLengths;
+    private final int[][] _checksums;
+
+    private Manifest(long sequence, int currentDate, int nextUserId, int nextWorkId, int nextRequestId,
+                     long archiveLength, long[][] positions, int[][] lengths, int[][] rawLengths,
+                     int[][] checksums) {
+        _sequence = sequence;
+        _currentDate = currentDate;
+        _nextUserId = nextUserId;
+        _nextWorkId = nextWorkId;
+        _nextRequestId = nextRequestId;
+        _archiveLength = archiveLength;
+        _positions = positions;
+        _lengths = lengths;
+        _rawLengths = rawLengths;
+        _checksums = checksums;
+    }
+
+    /**
+     * Builds the manifest of a checkpoint of the library. The given segments are where they
+     * were written; every other segment keeps its place in the previous manifest.
+     *
+     * @param previous      the manifest the checkpoint replaces, or null to write every segment.
+     * @param library       the captured library being written.
+     * @param segments      the new segment versions, by {@link #key(int, int)}.
+     * @param archiveLength the length of the request archive written by the checkpoint.
+     * @return the manifest of the checkpoint.
+     */
+    static Manifest of(Manifest previous, SnapshotCodec.Capture library,
+                       Map<Long, SnapshotCodec.Segment> segments, long archiveLength) {
+        int[] counts = {
+                segmentOf(USERS, library.getNextUserId() - 1) + 1,
+                segmentOf(WORKS, library.getNextWorkId() - 1) + 1,
+                segmentOf(REQUESTS, library.getNextRequestId() - 1) + 1,
+                library.getCreatorBuckets(),
+        };
+        long[][] positions = new long[counts.length][];
+        int[][] lengths = new int[counts.length][];
+        int[][] rawLengths = new int[counts.length][];
+        int[][] checksums = new int[counts.length][];
+        for (int kind = 0; kind < counts.length; kind++) {
+            positions[kind] = previous == null ? new long[counts[kind]]
+                    : Arrays.copyOf(previous._positions[kind], counts[kind]);
+            lengths[kind] = previous == null ? new int[counts[kind]]
+                    : Arrays.copyOf(previous._lengths[kind], counts[kind]);
+            rawLengths[kind] = previous == null ? new int[counts[kind]]
+                    : Arrays.copyOf(previous._rawLengths[kind], counts[kind]);
+            checksums[kind] = previous == null ? new int[counts[kind]]
+                    : Arrays.copyOf(previous._checksums[kind], counts[kind]);
+        }
+
+        for (Map.Entry<Long, SnapshotCodec.Segment> segment : segments.entrySet()) {
+            int kind = (int) (segment.getKey() >>> 32);
+            int index = (int) (long) segment.getKey();
+            positions[kind][index] = segment.getValue().position();
+            lengths[kind][index] = segment.getValue().length();
+            rawLengths[kind][index] = segment.getValue().rawLength();
+            checksums[kind][index] = segment.getValue().checksum();
+        }
+
+        return new Manifest(previous == null ? 1 : previous._sequence + 1,
+                library.getCurrentDate(), library.getNextUserId(), library.getNextWorkId(),
+                library.getNextRequestId(), archiveLength, positions, lengths, rawLengths, checksums);
+    }
+
+    /**
+     * Gets the key of a segment, which orders segments by kind and then by index.
+     *
+     * @param kind  the kind of entities in the segment.
+     * @param index the index of the segment.
+     * @return the key of the segment.
+     */
+    static long key(int kind, int index) {
+        return (long) kind << 32 | index;
+    }
+
+    /**
+     * Gets the segment holding the entity with the given ID.
+     *
+     * @param kind the kind of entity: {@link #USERS}, {@link #WORKS} or {@link #REQUESTS}.
+     * @param id   the ID of the entity.
+     * @return the index of the segment.
+     */
+    static int segmentOf(int kind, int id) {
+        return id / SEGMENT_IDS[kind];
+    }
+
+    /**
+     * Gets the segment holding the creator with the given name.
+     *
+     * @param name    the name of the creator.
+     * @param buckets the number of creator segments.
+     * @return the index of the segment.
+     */
+    static int bucketOf(String name, int buckets) {
+        return Math.floorMod(name.hashCode(), buckets);
+    }
+
+    long getSequence() {
+        return _sequence;
+    }
+
+    int getCurrentDate() {
+        return _currentDate;
+    }
+
+    int getNextUserId() {
+        return _nextUserId;
+    }
+
+    int getNextWorkId() {
+        return _nextWorkId;
+    }
+
+    int getNextRequestId() {
+        return _nextRequestId;
+    }
+
+    /**
+     * Gets the length of the records of the request archive when this manifest was written.
+     *
+     * @return the length of the request archive.
+     */
+    long getArchiveLength() {
+        return _archiveLength;
+    }
+
+    /**
+     * Gets the identifier of this manifest.
+     *
+     * @return the identifier, as computed by {@link #idOf(byte[])}.
+     */
+    long getId() {
+        return idOf(toBytes());
+    }
+
+    int getCreatorBuckets() {
+        return _lengths[CREATORS].length;
+    }
+
+    int segmentCount(int kind) {
+        return _lengths[kind].length;
+    }
+
+    long position(int kind, int index) {
+        return _positions[kind][index];
+    }
+
+    int length(int kind, int index) {
+        return _lengths[kind][index];
+    }
+
+    /**
+     * Gets the length of a segment once decompressed. A segment is stored compressed when its
+     * stored length is smaller.
+     *
+     * @param kind  the kind of entities in the segment.
+     * @param index the index of the segment.
+     * @return the decompressed length of the segment.
+     */
+    int rawLength(int kind, int index) {
+        return _rawLengths[kind][index];
+    }
+
+    /**
+     * Checks that the current segments are within a file and that their stored bytes match their
+     * checksums, so that a damaged file is rejected when it is opened rather than when the
+     * entities of a damaged segment are first used.
+     *
+     * @param file the contents of the file.
+     * @throws IOException if a segment is out of the file or does not match its checksum.
+     */
+    void verify(ByteBuffer file) throws IOException {
+        for (int kind = 0; kind < _lengths.length; kind++) {
+            for (int index = 0; index < _lengths[kind].length; index++) {
+                long position = _positions[kind][index];
+                int length = _lengths[kind][index];
+                if (length == 0)
+                    continue;
+                if (position < HEADER_SIZE || length < 0 || _rawLengths[kind][index] < length
+                        || position + length > file.capacity())
+                    throw new IOException("Segment out of library file");
+                if ((int) checksumOf(file.slice((int) position, length)) != _checksums[kind][index])
+                    throw new IOException("Damaged segment in library file");
+            }
+        }
+    }
+
+    /**
+     * Gets the number of bytes taken by the current segment versions.
+     *
+     * @return the size of the current segments.
+     */
+    long getLiveBytes() {
+        long live = 0;
+        for (int[] lengths : _lengths) {
+            for (int length : lengths)
+                live += length;
+        }
+        return live;
+    }
+
+    /**
+     * Encodes this manifest.
+     *
+     * @return the encoded manifest.
+     */
+    byte[] toBytes() {
+        int size = 2 * Long.BYTES + 4 * Integer.BYTES + _lengths.length * Integer.BYTES;
+        for (int[] lengths : _lengths)
+            size += lengths.length * (Long.BYTES + 3 * Integer.BYTES);
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putLong(_sequence);
+        buffer.putInt(_currentDate);
+        buffer.putInt(_nextUserId);
+        buffer.putInt(_nextWorkId);
+        buffer.putInt(_nextRequestId);
+        buffer.putLong(_archiveLength);
+        for (int kind = 0; kind < _lengths.length; kind++) {
+            buffer.putInt(_lengths[kind].length);
+            for (int index = 0; index < _lengths[kind].length; index++) {
+                buffer.putLong(_positions[kind][index]);
+                buffer.putInt(_lengths[kind][index]);
+                buffer.putInt(_rawLengths[kind][index]);
+                buffer.putInt(_checksums[kind][index]);
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Gets the identifier of an encoded manifest, made of its sequence number and checksum.
+     * Journals are bound to the manifest they extend by this identifier.
+     *
+     * @param manifest the encoded manifest.
+     * @return the identifier of the manifest.
+     */
+    static long idOf(byte[] manifest) {
+        return ByteBuffer.wrap(manifest).getLong() << 32 | checksumOf(ByteBuffer.wrap(manifest));
+    }
+
+    /**
+     * Encodes a file header whose slot for the given manifest points to it. The other slot is
+     * left empty.
+     *
+     * @param manifest the encoded manifest.
+     * @param position the position of the manifest in the file.
+     * @return the encoded header.
+     */
+    static byte[] header(byte[] manifest, long position) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(SnapshotCodec.MAGIC);
+        header.putShort(SnapshotCodec.VERSION);
+        header.put(slotPosition(manifest), slot(manifest, position));
+        return header.array();
+    }
+
+    /**
+     * Gets the position in the file of the header slot pointing to a manifest.
+     *
+     * @param manifest the encoded manifest.
+     * @return the position of its slot.
+     */
+    static int slotPosition(byte[] manifest) {
+        return FIRST_SLOT + (int) (ByteBuffer.wrap(manifest).getLong() & 1) * SLOT_SIZE;
+    }
+
+    /**
+     * Encodes the header slot pointing to a manifest.
+     *
+     * @param manifest the encoded manifest.
+     * @param position the position of the manifest in the file.
+     * @return the encoded slot.
+     */
+    static byte[] slot(byte[] manifest, long position) {
+        ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+        slot.putLong(ByteBuffer.wrap(manifest).getLong());
+        slot.putLong(position);
+        slot.putInt(manifest.length);
+        slot.putInt((int) checksumOf(ByteBuffer.wrap(manifest)));
+        return slot.array();
+    }
+
+    /**
+     * Reads the current manifest of a segmented file: the valid manifest pointed to by a header
+     * slot with the highest sequence number.
+     *
+     * @param file the contents of the file.
+     * @return the current manifest.
+     * @throws IOException if no header slot points to a valid manifest.
+     */
+    static Manifest read(ByteBuffer file) throws IOException {
+        Manifest current = null;
+        for (int slot = FIRST_SLOT; slot < FIRST_SLOT + 2 * SLOT_SIZE; slot += SLOT_SIZE) {
+            long sequence = file.getLong(slot);
+            long position = file.getLong(slot + Long.BYTES);
+            int length = file.getInt(slot + 2 * Long.BYTES);
+            int checksum = file.getInt(slot + 2 * Long.BYTES + Integer.BYTES);
+            if (sequence <= 0 || position < HEADER_SIZE || length < Long.BYTES
+                    || position + length > file.capacity())
+                continue;
+
+            ByteBuffer manifest = file.slice((int) position, length);
+            if ((int) checksumOf(manifest) != checksum || manifest.getLong(0) != sequence)
+                continue;
+            if (current == null || sequence > current._sequence)
+                current = decode(manifest);
+        }
+        if (current == null)
+            throw new IOException("No valid manifest in library file");
+        return current;
+    }
+
+    private static Manifest decode(ByteBuffer in) throws IOException {
+        try {
+            long sequence = in.getLong();
+            int currentDate = in.getInt();
+            int nextUserId = in.getInt();
+            int nextWorkId = in.getInt();
+            int nextRequestId = in.getInt();
+            long archiveLength = in.getLong();
+            long[][] positions = new long[CREATORS + 1][];
+            int[][] lengths = new int[CREATORS + 1][];
+            int[][] rawLengths = new int[CREATORS + 1][];
+            int[][] checksums = new int[CREATORS + 1][];
+            for (int kind = 0; kind <= CREATORS; kind++) {
+                int count = in.getInt();
+                positions[kind] = new long[count];
+                lengths[kind] = new int[count];
+                rawLengths[kind] = new int[count];
+                checksums[kind] = new int[count];
+                for (int index = 0; index < count; index++) {
+                    positions[kind][index] = in.getLong();
+                    lengths[kind][index] = in.getInt();
+                    rawLengths[kind][index] = in.getInt();
+                    checksums[kind][index] = in.getInt();
+                }
+            }
+            return new Manifest(sequence, currentDate, nextUserId, nextWorkId, nextRequestId, archiveLength,
+                    positions, lengths, rawLengths, checksums);
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed manifest in library file", e);
+        }
+    }
+
+    private static long checksumOf(ByteBuffer bytes) {
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes.duplicate());
+        return checksum.getValue();
+    }
+}
@@ -0,0 +1,822 @@
+package bci.core;
+
+import bci.core.exception.InvalidArgumentsException;
+import bci.core.request.Request;
+import bci.core.user.Notification;
+import bci.core.user.NotificationType;
+import bci.core.user.User;
+import bci.core.work.*;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+
+/**
+ * Segmented library file opened for random access, from which the entities of a
+ * {@link Library} are decoded only when they are first used.
+ * <p>
+ * Opening a file reads its current {@link Manifest} and checks the stored bytes of the current
+ * segments against their checksums, so that a damaged file is rejected when it is opened, but
+ * decodes none of them. The library built by {@link #open(Path)} asks the snapshot for the
+ * users, works, creators and requests it does not hold yet. A decoded user or work is linked to
+ * the requests and users it refers to only when those links are first used, so decoding an
+ * entity only decodes its direct neighbours. Every entity is decoded at most once: after that
+ * the library holds it, and an entity the library no longer holds was removed from it.
+ * <p>
+ * The records of the entities never decoded are still current, and a checkpoint copies them
+ * as they are into the segments it rewrites. Compressed segments are decompressed when first
+ * read, and kept in memory until it runs short.
+ * <p>
+ * The file is mapped in memory, except on Windows, where a mapped file cannot be replaced
+ * until the mapping is garbage collected; the file is then read into memory instead.
+ *
+ * @see SnapshotCodec
+ */
+final class MappedSnapshot {
+
+    /**
+     * The contents of the library file.
+     */
+    private final ByteBuffer _buffer;
+
+    /**
+     * The manifest that was current when the file was opened.
+     */
+    private final Manifest _manifest;
+
+    /**
+     * The library the decoded entities are added to.
+     */
+    private final Library _library;
+
+    /**
+     * IDs of the users, works and requests already decoded.
+     */
+    private final BitSet _decodedUsers = new BitSet();
+    private final BitSet _decodedWorks = new BitSet();
+    private final BitSet _decodedRequests = new BitSet();
+
+    /**
+     * Names of the creators already decoded, and of those whose works were all decoded.
+     */
+    private final Set<String> _decodedCreators = new HashSet<>();
+    private final Set<String> _completeCreators = new HashSet<>();
+
+    /**
+     * IDs of the requests and users that decoded users and works refer to, by ID of the user or
+     * work, until they are linked.
+     */
+    private final Map<Integer, int[][]> _userLinks = new HashMap<>();
+    private final Map<Integer, int[][]> _workLinks = new HashMap<>();
+
+    /**
+     * Compressed segments already decompressed, by {@link Manifest#key(int, int)}.
+     */
+    private final Map<Long, SoftReference<ByteBuffer>> _decompressed = new ConcurrentHashMap<>();
+
+    /**
+     * The users of the snapshot by name, built by {@link #userOrder()}.
+     */
+    private UserOrder _userOrder;
+
+    private boolean _allUsers;
+    private boolean _allWorks;
+    private boolean _allActiveRequests;
+
+    private MappedSnapshot(ByteBuffer buffer) throws IOException {
+        _buffer = buffer;
+        if (buffer.capacity() < Manifest.HEADER_SIZE || buffer.getInt(0) != SnapshotCodec.MAGIC
+                || buffer.getShort(Integer.BYTES) != SnapshotCodec.VERSION)
+            throw new IOException("Not a segmented library file");
+
+        _manifest = Manifest.read(buffer);
+        _manifest.verify(buffer);
+        _library = new Library(new Date(_manifest.getCurrentDate()), _manifest.getNextUserId(),
+                _manifest.getNextWorkId(), _manifest.getNextRequestId());
+        _library.attachSnapshot(this);
+    }
+
+    /**
+     * Opens a segmented library file.
+     *
+     * @param file the library file.
+     * @return the opened snapshot.
+     * @throws IOException if the file cannot be read, does not hold a segmented library or is damaged.
+     */
+    static MappedSnapshot open(Path file) throws IOException {
+        return open(file, 0);
+    }
+
+    /**
+     * Opens a segmented library snapshot stored in a file from a given position, such as the one
+     * following the header of an {@link ImportCache}. Positions in the snapshot are relative to it.
+     *
+     * @param file     the file holding the snapshot.
+     * @param position the position of the snapshot in the file.
+     * @return the opened snapshot.
+     * @throws IOException if the file cannot be read, does not hold a segmented library there or is
+     *                     damaged.
+     */
+    static MappedSnapshot open(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size() - position;
+            if (size < 0)
+                throw new IOException("Not a segmented library file");
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Library file too large to map");
+
+            ByteBuffer buffer;
+            if (System.getProperty("os.name", "").startsWith("Windows")) {
+                buffer = ByteBuffer.allocate((int) size);
+                channel.position(position);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // keep reading until the whole file is in memory
+                }
+                buffer.flip();
+            } else {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            }
+            return new MappedSnapshot(buffer);
+        }
+    }
+
+    /**
+     * Gets the library backed by this snapshot.
+     *
+     * @return the library.
+     */
+    Library getLibrary() {
+        return _library;
+    }
+
+    /**
+     * Gets the manifest that was current when the file was opened.
+     *
+     * @return the manifest of the snapshot.
+     */
+    Manifest getManifest() {
+        return _manifest;
+    }
+
+    /**
+     * Decodes a user not held by the library.
+     *
+     * @param id the ID of the user.
+     * @return the user, or null if the snapshot has no such user or it was already decoded.
+     */
+    User user(int id) {
+        return _decodedUsers.get(id) || record(Manifest.USERS, id) == null ? null : userShell(id);
+    }
+
+    /**
+     * Decodes a work not held by the library.
+     *
+     * @param id the ID of the work.
+     * @return the work, or null if the snapshot has no such work or it was already decoded.
+     */
+    Work work(int id) {
+        return _decodedWorks.get(id) || record(Manifest.WORKS, id) == null ? null : workShell(id);
+    }
+
+    /**
+     * Checks if the snapshot holds a work not yet decoded, without decoding it.
+     *
+     * @param id the ID of the work.
+     * @return true if the snapshot has such a work and it was not decoded, false otherwise.
+     */
+    boolean hasWork(int id) {
+        return !_decodedWorks.get(id) && record(Manifest.WORKS, id) != null;
+    }
+
+    /**
+     * Decodes a creator and all its works, unless it was already done.
+     *
+     * @param name the name of the creator.
+     */
+    void loadCreator(String name) {
+        if (!_completeCreators.add(name))
+            return;
+
+        Cursor in = creatorRecord(name);
+        if (in == null)
+            return;
+        creator(name);
+        for (int count = in.readInt(); count > 0; count--)
+            workRef(in.readInt());
+    }
+
+    /**
+     * Decodes every user. The segments are decoded concurrently and the users are then added
+     * to the library in ID order.
+     */
+    void loadUsers() {
+        if (_allUsers)
+            return;
+        List<User> users = new ArrayList<>();
+        IntStream.range(0, _manifest.segmentCount(Manifest.USERS)).parallel()
+                .mapToObj(index -> decodeSegment(Manifest.USERS, index, true, this::decodeUser))
+                .toList()
+                .forEach(segment -> segment.forEach(decoded -> users.add(link(decoded))));
+        _library.restoreUsers(users);
+        _allUsers = true;
+    }
+
+    /**
+     * Checks whether every user was decoded.
+     *
+     * @return true if every user was decoded, false otherwise.
+     */
+    boolean hasAllUsers() {
+        return _allUsers;
+    }
+
+    /**
+     * Gets the users of the snapshot in the order of their names and then of their IDs. Only
+     * the names are read from the records of the users, which are not decoded, so that a page
+     * of users in that order only decodes the users in the page. Built when first needed.
+     *
+     * @return the users of the snapshot by name, whether they were decoded or not.
+     */
+    UserOrder userOrder() {
+        if (_userOrder == null) {
+            List<StoredUser> users = new ArrayList<>();
+            IntStream.range(0, _manifest.segmentCount(Manifest.USERS)).parallel()
+                    .mapToObj(index -> decodeSegment(Manifest.USERS, index, false,
+                            (id, record) -> new StoredUser(new Cursor(record, 0).readString(), id)))
+                    .toList()
+                    .forEach(users::addAll);
+            users.sort(Comparator.comparing(StoredUser::name).thenComparingInt(StoredUser::id));
+
+            String[] names = new String[users.size()];
+            int[] ids = new int[users.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = users.get(i).name();
+                ids[i] = users.get(i).id();
+            }
+            _userOrder = new UserOrder(names, ids);
+        }
+        return _userOrder;
+    }
+
+    /**
+     * Decodes every work. The segments are decoded concurrently and the works are then built
+     * and added to the library in ID order.
+     */
+    void loadWorks() {
+        if (_allWorks)
+            return;
+        List<Work> works = new ArrayList<>();
+        IntStream.range(0, _manifest.segmentCount(Manifest.WORKS)).parallel()
+                .mapToObj(index -> decodeSegment(Manifest.WORKS, index, true, this::decodeWork))
+                .toList()
+                .forEach(segment -> segment.forEach(decoded -> works.add(link(decoded))));
+        _library.restoreWorks(works);
+        _allWorks = true;
+    }
+
+    /**
+     * Checks whether every work was decoded.
+     *
+     * @return true if every work was decoded, false otherwise.
+     */
+    boolean hasAllWorks() {
+        return _allWorks;
+    }
+
+    /**
+     * Decodes every request that was active when the file was written.
+     */
+    void loadActiveRequests() {
+        if (_allActiveRequests)
+            return;
+        for (int id = 1; id < _manifest.getNextRequestId(); id++) {
+            ByteBuffer record = rawRequest(id);
+            if (record != null && record.getInt(3 * Integer.BYTES) == -1)
+                request(id);
+        }
+        _allActiveRequests = true;
+    }
+
+    /**
+     * Gets the IDs a decoded user or work refers to, if it was not linked to them yet.
+     *
+     * @param kind {@link Manifest#USERS} or {@link Manifest#WORKS}.
+     * @param id   the ID of the user or work.
+     * @return the IDs of the active and all requests of a user, or of the requests and observers
+     *         of a work, or null if the entity was linked or not decoded.
+     */
+    int[][] pendingLinks(int kind, int id) {
+        return (kind == Manifest.USERS ? _userLinks : _workLinks).get(id);
+    }
+
+    /**
+     * Checks whether all the works of a creator were decoded, so that the creator held by the
+     * library is complete.
+     *
+     * @param name the name of the creator.
+     * @return true if the creator is complete, false otherwise.
+     */
+    boolean isComplete(String name) {
+        return _completeCreators.contains(name);
+    }
+
+    /**
+     * Checks whether a user, work or request was decoded, so that the library holds it if it
+     * was not removed.
+     *
+     * @param kind {@link Manifest#USERS}, {@link Manifest#WORKS} or {@link Manifest#REQUESTS}.
+     * @param id   the ID of the entity.
+     * @return true if the entity was decoded, false otherwise.
+     */
+    boolean isDecoded(int kind, int id) {
+        return (kind == Manifest.USERS ? _decodedUsers : kind == Manifest.WORKS ? _decodedWorks : _decodedRequests)
+                .get(id);
+    }
+
+    /**
+     * Gets the record of a user or work as written in the file, whether it was decoded or not.
+     * Unlike the decoded entities, records can be read from several threads at once.
+     *
+     * @param kind {@link Manifest#USERS} or {@link Manifest#WORKS}.
+     * @param id   the ID of the entity.
+     * @return the record, or null if the snapshot has no such entity.
+     */
+    ByteBuffer storedRecord(int kind, int id) {
+        return record(kind, id);
+    }
+
+    /**
+     * Gets the record of a request never decoded.
+     *
+     * @param id the ID of the request.
+     * @return the record, or null if the request was decoded or the snapshot has no such request.
+     */
+    private ByteBuffer rawRequest(int id) {
+        return _decodedRequests.get(id) ? null : storedRequest(id);
+    }
+
+    /**
+     * Gets the record of a request as written in the file, whether it was decoded or not. Like
+     * the records of users and works, it can be read from several threads at once.
+     *
+     * @param id the ID of the request.
+     * @return the record, or null if the snapshot has no such request.
+     */
+    ByteBuffer storedRequest(int id) {
+        int index = Manifest.segmentOf(Manifest.REQUESTS, id);
+        int offset = id % Manifest.SEGMENT_IDS[Manifest.REQUESTS] * SnapshotCodec.REQUEST_SIZE;
+        if (id <= 0 || index >= _manifest.segmentCount(Manifest.REQUESTS)
+                || offset + SnapshotCodec.REQUEST_SIZE > _manifest.rawLength(Manifest.REQUESTS, index))
+            return null;
+
+        ByteBuffer segment = segment(Manifest.REQUESTS, index);
+        if ((segment.get(offset + 4 * Integer.BYTES) & SnapshotCodec.REQUEST_PRESENT) == 0)
+            return null;
+        return segment.slice(offset, SnapshotCodec.REQUEST_SIZE);
+    }
+
+    /**
+     * Gets the names of the creators that were decoded and then removed from the library.
+     *
+     * @return the names of the removed creators.
+     */
+    Set<String> removedCreators() {
+        Set<String> removed = new HashSet<>();
+        for (String name : _decodedCreators)
+            if (_library.getLoadedCreator(name) == null)
+                removed.add(name);
+        return removed;
+    }
+
+    /**
+     * Gets the records of the creators of a segment, as written in the file. Like the records
+     * of users and works, they can be read from several threads at once.
+     *
+     * @param bucket  the index of the creator segment.
+     * @param removed the names of the creators removed from the library, whose records are left out.
+     * @return the records, by creator name.
+     */
+    Map<String, byte[]> rawCreators(int bucket, Set<String> removed) {
+        Map<String, byte[]> records = new HashMap<>();
+        if (bucket >= _manifest.getCreatorBuckets() || _manifest.length(Manifest.CREATORS, bucket) == 0)
+            return records;
+
+        ByteBuffer segment = segment(Manifest.CREATORS, bucket);
+        int count = segment.getInt(0);
+        int start = (count + 2) * Integer.BYTES;
+        for (int i = 0; i < count; i++) {
+            int position = start + segment.getInt((i + 1) * Integer.BYTES);
+            int end = start + segment.getInt((i + 2) * Integer.BYTES);
+            String name = new Cursor(segment, position).readString();
+            if (!removed.contains(name)) {
+                byte[] record = new byte[end - position];
+                segment.get(position, record);
+                records.put(name, record);
+            }
+        }
+        return records;
+    }
+
+    private User userShell(int id) {
+        return register(decodeUser(id, record(Manifest.USERS, id)));
+    }
+
+    private Work workShell(int id) {
+        return register(decodeWork(id, record(Manifest.WORKS, id)));
+    }
+
+    /**
+     * Decodes the records of a segment, without touching the library, so that segments can be
+     * decoded concurrently.
+     *
+     * @param kind      {@link Manifest#USERS} or {@link Manifest#WORKS}.
+     * @param index     the index of the segment.
+     * @param undecoded whether to skip the records already decoded.
+     * @param decoder   decodes a record, given the ID of its entity.
+     * @return the decoded records, in ID order.
+     */
+    private <T> List<T> decodeSegment(int kind, int index, boolean undecoded,
+                                      BiFunction<Integer, ByteBuffer, T> decoder) {
+        BitSet decoded = kind == Manifest.USERS ? _decodedUsers : _decodedWorks;
+        List<T> records = new ArrayList<>();
+        for (int id = index * Manifest.SEGMENT_IDS[kind]; id < (index + 1) * Manifest.SEGMENT_IDS[kind]; id++) {
+            ByteBuffer record = undecoded && decoded.get(id) ? null : record(kind, id);
+            if (record != null)
+                records.add(decoder.apply(id, record));
+        }
+        return records;
+    }
+
+    private UserRecord decodeUser(int id, ByteBuffer record) {
+        Cursor in = new Cursor(record, 0);
+        User user = new User(id, in.readString(), in.readString());
+        boolean isActive = in.readInt() != 0;
+        String classification = in.readString();
+        int totalFines = in.readInt();
+        int[] activeRequests = in.readInts();
+        int[] allRequests = in.readInts();
+
+        for (int count = in.readInt(); count > 0; count--) {
+            NotificationType type = NotificationType.values()[in.readInt()];
+            user.update(new Notification(type, in.readString()));
+        }
+        for (int count = in.readInt(); count > 0; count--) {
+            int workId = in.readInt();
+            for (int types = in.readInt(); types > 0; types--)
+                user.subscribeToWorkForNotification(workId, NotificationType.values()[in.readInt()]);
+        }
+
+        user.restoreState(isActive, classification, totalFines, List.of(), List.of());
+        return new UserRecord(user, new int[][] { activeRequests, allRequests });
+    }
+
+    private WorkRecord decodeWork(int id, ByteBuffer record) {
+        Cursor in = new Cursor(record, 0);
+        WorkType type = WorkType.values()[in.readInt()];
+        String title = in.readString();
+        int price = in.readInt();
+        WorkCategory category = WorkCategory.values()[in.readInt()];
+        int totalCopies = in.readInt();
+        int availableCopies = in.readInt();
+        String code = in.readString();
+        String[] creators = new String[in.readInt()];
+        for (int i = 0; i < creators.length; i++)
+            creators[i] = in.readString();
+        return new WorkRecord(id, type, title, price, category, totalCopies, availableCopies, code, creators,
+                new int[][] { in.readInts(), in.readInts() });
+    }
+
+    /**
+     * Adds a decoded user to the library. Its requests are linked when first used.
+     *
+     * @param decoded the decoded user.
+     * @return the user.
+     */
+    private User register(UserRecord decoded) {
+        User user = link(decoded);
+        _library.restoreUser(user);
+        return user;
+    }
+
+    /**
+     * Prepares a decoded user to be added to the library. Its requests are linked when first used.
+     *
+     * @param decoded the decoded user.
+     * @return the user.
+     */
+    private User link(UserRecord decoded) {
+        User user = decoded.user();
+        _decodedUsers.set(user.getId());
+        _userLinks.put(user.getId(), decoded.links());
+        user.deferRequests(() -> {
+            int[][] links = _userLinks.remove(user.getId());
+            user.restoreRequests(requests(links[0]), requests(links[1]));
+        });
+        return user;
+    }
+
+    /**
+     * Builds a decoded work, linked to its creators, and adds it to the library. Its requests
+     * and observers are linked when first used.
+     *
+     * @param decoded the decoded work.
+     * @return the work.
+     */
+    private Work register(WorkRecord decoded) {
+        Work work = link(decoded);
+        _library.restoreWork(work);
+        return work;
+    }
+
+    /**
+     * Builds a decoded work, linked to its creators, to be added to the library. Its requests
+     * and observers are linked when first used.
+     *
+     * @param decoded the decoded work.
+     * @return the work.
+     */
+    private Work link(WorkRecord decoded) {
+        int id = decoded.id();
+        List<Creator> creators = new ArrayList<>(decoded.creators().length);
+        for (String name : decoded.creators())
+            creators.add(creator(name));
+
+        Work work;
+        try {
+            work = switch (decoded.type()) {
+                case BOOK -> new Book.Builder().id(id).title(decoded.title()).price(decoded.price())
+                        .category(decoded.category()).restoredTotalCopies(decoded.totalCopies()).isbn(decoded.code())
+                        .authors(creators).build();
+                case DVD -> new Dvd.Builder().id(id).title(decoded.title()).price(decoded.price())
+                        .category(decoded.category()).restoredTotalCopies(decoded.totalCopies()).igac(decoded.code())
+                        .director(creators.get(0)).build();
+            };
+        } catch (InvalidArgumentsException e) {
+            throw new IllegalStateException("Malformed work " + id + " in library file", e);
+        }
+        for (Creator creator : creators)
+            creator.addWork(work);
+
+        _decodedWorks.set(id);
+        _workLinks.put(id, decoded.links());
+        work.restoreState(decoded.availableCopies(), List.of(), List.of());
+        work.deferLinks(() -> {
+            int[][] links = _workLinks.remove(id);
+            work.restoreLinks(requests(links[0]), users(links[1]));
+        });
+        return work;
+    }
+
+    private Creator creator(String name) {
+        Creator creator = _library.getLoadedCreator(name);
+        if (creator == null) {
+            creator = new Creator(name);
+            _decodedCreators.add(name);
+            _library.restoreCreator(creator);
+        }
+        return creator;
+    }
+
+    private Request request(int id) {
+        ByteBuffer record = rawRequest(id);
+        if (record == null)
+            throw new IllegalStateException("Dangling reference to request " + id + " in library file");
+        _decodedRequests.set(id);
+
+        Request request = new Request(id, userRef(record.getInt(0)), workRef(record.getInt(Integer.BYTES)),
+                record.getInt(2 * Integer.BYTES));
+        int returnDate = record.getInt(3 * Integer.BYTES);
+        if (returnDate != -1)
+            request.markAsReturned(returnDate);
+        if ((record.get(4 * Integer.BYTES) & SnapshotCodec.REQUEST_LIQUIDATED) != 0)
+            request.liquidateFine();
+
+        _library.restoreRequest(request);
+        return request;
+    }
+
+    private User userRef(int id) {
+        User user = _library.getLoadedUser(id);
+        if (user == null && (_decodedUsers.get(id) || record(Manifest.USERS, id) == null))
+            throw new IllegalStateException("Dangling reference to user " + id + " in library file");
+        return user != null ? user : userShell(id);
+    }
+
+    private Work workRef(int id) {
+        Work work = _library.getLoadedWork(id);
+        if (work == null && (_decodedWorks.get(id) || record(Manifest.WORKS, id) == null))
+            throw new IllegalStateException("Dangling reference to work " + id + " in library file");
+        return work != null ? work : workShell(id);
+    }
+
+    private List<Request> requests(int[] ids) {
+        List<Request> requests = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Request request = _library.getLoadedRequest(id);
+            requests.add(request != null ? request : request(id));
+        }
+        return requests;
+    }
+
+    private List<User> users(int[] ids) {
+        List<User> users = new ArrayList<>(ids.length);
+        for (int id : ids)
+            users.add(userRef(id));
+        return users;
+    }
+
+    /**
+     * Finds the record of a user or work in the current version of its segment.
+     *
+     * @param kind {@link Manifest#USERS} or {@link Manifest#WORKS}.
+     * @param id   the ID of the entity.
+     * @return the record, or null if the snapshot has no such entity.
+     */
+    private ByteBuffer record(int kind, int id) {
+        int index = Manifest.segmentOf(kind, id);
+        if (id <= 0 || index >= _manifest.segmentCount(kind) || _manifest.length(kind, index) == 0)
+            return null;
+
+        ByteBuffer segment = segment(kind, index);
+        int slot = id % Manifest.SEGMENT_IDS[kind];
+        int start = segment.getInt(slot * Integer.BYTES);
+        int end = segment.getInt((slot + 1) * Integer.BYTES);
+        if (start == end)
+            return null;
+        int records = (Manifest.SEGMENT_IDS[kind] + 1) * Integer.BYTES;
+        return segment.slice(records + start, end - start);
+    }
+
+    /**
+     * Finds the record of a creator in its segment, whose records are sorted by name.
+     *
+     * @param name the name of the creator.
+     * @return a cursor on the works of the creator, or null if the snapshot has no such creator.
+     */
+    private Cursor creatorRecord(String name) {
+        int bucket = Manifest.bucketOf(name, _manifest.getCreatorBuckets());
+        if (_manifest.length(Manifest.CREATORS, bucket) == 0)
+            return null;
+
+        ByteBuffer segment = segment(Manifest.CREATORS, bucket);
+        int start = (segment.getInt(0) + 2) * Integer.BYTES;
+        int low = 0;
+        int high = segment.getInt(0) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            Cursor in = new Cursor(segment, start + segment.getInt((middle + 1) * Integer.BYTES));
+            int comparison = in.readString().compareTo(name);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return in;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the current version of a segment, decompressed if it is stored compressed.
+     *
+     * @param kind  the kind of entities in the segment.
+     * @param index the index of the segment.
+     * @return the segment.
+     */
+    private ByteBuffer segment(int kind, int index) {
+        int length = _manifest.length(kind, index);
+        int rawLength = _manifest.rawLength(kind, index);
+        ByteBuffer stored = _buffer.slice((int) _manifest.position(kind, index), length);
+        if (length >= rawLength)
+            return stored;
+
+        long key = Manifest.key(kind, index);
+        SoftReference<ByteBuffer> decompressed = _decompressed.get(key);
+        ByteBuffer segment = decompressed == null ? null : decompressed.get();
+        if (segment == null) {
+            try {
+                segment = SnapshotCodec.decompress(stored, rawLength);
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Malformed segment in library file", e);
+            }
+            _decompressed.put(key, new SoftReference<>(segment));
+        }
+        return segment;
+    }
+
+    /**
+     * The names and IDs of the users of a snapshot, sorted by name and then by ID, as users are
+     * listed.
+     */
+    record UserOrder(String[] names, int[] ids) {
+
+        int size() {
+            return ids.length;
+        }
+
+        int id(int index) {
+            return ids[index];
+        }
+
+        /**
+         * Compares the user at a position with a user of the library.
+         *
+         * @param index the position of the user.
+         * @param user  the user to compare with.
+         * @return a negative number, zero or a positive number if the user at the position is
+         *         listed before, is or is listed after the given one.
+         */
+        int compareTo(int index, User user) {
+            int comparison = names[index].compareTo(user.getName());
+            return comparison != 0 ? comparison : Integer.compare(ids[index], user.getId());
+        }
+
+        /**
+         * Finds the position of the first user listed after a user of the library.
+         *
+         * @param user the user to start after.
+         * @return the position of the first user after it, or {@link #size()} if there is none.
+         */
+        int indexAfter(User user) {
+            int low = 0;
+            int high = ids.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compareTo(middle, user) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * The name and ID of a user read from its record, without decoding it.
+     */
+    private record StoredUser(String name, int id) {
+    }
+
+    /**
+     * A user decoded from its record, with the IDs of its active and all requests.
+     */
+    private record UserRecord(User user, int[][] links) {
+    }
+
+    /**
+     * The fields of a work decoded from its record, with the IDs of its requests and observers.
+     */
+    private record WorkRecord(int id, WorkType type, String title, int price, WorkCategory category,
+                              int totalCopies, int availableCopies, String code, String[] creators, int[][] links) {
+    }
+
+    /**
+     * Reads the variable-length integers and strings of a record, starting at a given position
+     * of a buffer.
+     */
+    private static class Cursor {
+        private final ByteBuffer _buffer;
+        private int _position;
+
+        Cursor(ByteBuffer buffer, int position) {
+            _buffer = buffer;
+            _position = position;
+        }
+
+        int readInt() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = _buffer.get(_position++) & 0xFF;
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IllegalStateException("Malformed variable-length integer in library file");
+        }
+
+        int[] readInts() {
+            int[] values = new int[readInt()];
+            for (int i = 0; i < values.length; i++)
+                values[i] = readInt();
+            return values;
+        }
+
+        String readString() {
+            byte[] bytes = new byte[readInt()];
+            _buffer.get(_position, bytes);
+            _position += bytes.length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
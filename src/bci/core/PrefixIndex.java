@@ -0,0 +1,146 @@
+package bci.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of texts by prefix, to complete texts as they are typed.
+ * <p>
+ * Texts are kept in a sorted array of their keys, folded to lower case without accents as by
+ * {@link BkTree#fold(String)}, and then by the texts themselves. The texts starting with a prefix
+ * lie next to each other from the first key not below the folded prefix, found by binary search,
+ * so completing a prefix reads only the completions returned. Each text is counted as many times
+ * as it is added, and is only kept while its count is positive.
+ */
+final class PrefixIndex {
+
+    private String[] _keys;
+    private String[] _texts;
+    private int[] _counts;
+    private int _size;
+
+    /**
+     * Builds the index of the given texts, counting them and then sorting them all at once.
+     *
+     * @param texts the texts, each as many times as it is counted.
+     */
+    PrefixIndex(List<String> texts) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String text : texts) {
+            counts.merge(text, 1, Integer::sum);
+        }
+        String[][] entries = new String[counts.size()][];
+        int index = 0;
+        for (String text : counts.keySet()) {
+            entries[index++] = new String[] {BkTree.fold(text), text};
+        }
+        Arrays.sort(entries, Comparator.<String[], String>comparing(entry -> entry[0])
+                .thenComparing(entry -> entry[1]));
+
+        _size = entries.length;
+        _keys = new String[Math.max(_size, 1)];
+        _texts = new String[_keys.length];
+        _counts = new int[_keys.length];
+        for (int i = 0; i < _size; i++) {
+            _keys[i] = entries[i][0];
+            _texts[i] = entries[i][1];
+            _counts[i] = counts.get(entries[i][1]);
+        }
+    }
+
+    /**
+     * Adds a text, or counts it once more.
+     *
+     * @param text the text.
+     */
+    void add(String text) {
+        String key = BkTree.fold(text);
+        int index = indexOf(key, text);
+        if (index < _size && _keys[index].equals(key) && _texts[index].equals(text)) {
+            _counts[index]++;
+            return;
+        }
+
+        if (_size == _keys.length) {
+            int capacity = _size + (_size >> 1) + 1;
+            _keys = Arrays.copyOf(_keys, capacity);
+            _texts = Arrays.copyOf(_texts, capacity);
+            _counts = Arrays.copyOf(_counts, capacity);
+        }
+        System.arraycopy(_keys, index, _keys, index + 1, _size - index);
+        System.arraycopy(_texts, index, _texts, index + 1, _size - index);
+        System.arraycopy(_counts, index, _counts, index + 1, _size - index);
+        _keys[index] = key;
+        _texts[index] = text;
+        _counts[index] = 1;
+        _size++;
+    }
+
+    /**
+     * Counts a text once less, removing it when no longer counted.
+     *
+     * @param text the text.
+     */
+    void remove(String text) {
+        String key = BkTree.fold(text);
+        int index = indexOf(key, text);
+        if (index == _size || !_keys[index].equals(key) || !_texts[index].equals(text)) {
+            return;
+        }
+        if (--_counts[index] > 0) {
+            return;
+        }
+
+        _size--;
+        System.arraycopy(_keys, index + 1, _keys, index, _size - index);
+        System.arraycopy(_texts, index + 1, _texts, index, _size - index);
+        System.arraycopy(_counts, index + 1, _counts, index, _size - index);
+        _keys[_size] = null;
+        _texts[_size] = null;
+    }
+
+    /**
+     * Completes a prefix.
+     *
+     * @param prefix the prefix.
+     * @param count  the maximum number of completions.
+     * @return the texts whose keys start with the folded prefix, in the order of their keys.
+     */
+    List<String> complete(String prefix, int count) {
+        String key = BkTree.fold(prefix);
+        List<String> completions = new ArrayList<>(Math.min(count, 16));
+        for (int i = indexOf(key, ""); i < _size && completions.size() < count && _keys[i].startsWith(key); i++) {
+            completions.add(_texts[i]);
+        }
+        return completions;
+    }
+
+    /**
+     * Finds the first entry not below a key and text.
+     *
+     * @param key  the key.
+     * @param text the text.
+     * @return the index of the entry, or the number of entries if all are below.
+     */
+    private int indexOf(String key, String text) {
+        int low = 0;
+        int high = _size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = _keys[middle].compareTo(key);
+            if (comparison == 0) {
+                comparison = _texts[middle].compareTo(text);
+            }
+            if (comparison < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
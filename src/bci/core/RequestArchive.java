@@ -0,0 +1,297 @@
+package bci.core;
+
+import bci.core.request.ArchivedRequest;
+import bci.core.request.Request;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Append-only archive of the settled requests of a {@link Library}.
+ * <p>
+ * A request is archived as soon as it is settled, as a fixed-size record holding the IDs of
+ * its user and work. Users only keep their most recent settled requests in memory, so the
+ * history of a library lives in the archive file instead of the heap and the library file.
+ * Records are appended to an in-memory tail, which every checkpoint of the library writes at
+ * the end of the archive file next to it. The manifest of the checkpoint records the length of
+ * the archive, so records written after the last checkpoint are ignored when the library is
+ * loaded, and appended again when its journal is replayed.
+ * <p>
+ * The archive is read by {@link #pages(int)}, which hands out the records one page at a time.
+ * Records of requests disposed of along with their work are kept, and skipped by the library.
+ * <pre>
+ *   header   magic, version
+ *   records  request ID, user ID, work ID, deadline, return date, flags
+ * </pre>
+ * Checkpoints write the archive on the thread writing saves while the library keeps appending
+ * to it, so the state shared by both is only accessed while holding the lock of the archive.
+ */
+final class RequestArchive {
+
+    /**
+     * Suffix appended to the library filename to obtain the archive filename.
+     */
+    static final String SUFFIX = ".archive";
+
+    /**
+     * Magic number identifying archive files ("BCIA").
+     */
+    private static final int MAGIC = 0x42434941;
+
+    /**
+     * Version of the archive record format.
+     */
+    private static final short VERSION = 1;
+
+    /**
+     * Size of the archive file header.
+     */
+    private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES;
+
+    /**
+     * Size of a record: request ID, user ID, work ID, deadline, return date and flags.
+     */
+    private static final int RECORD_SIZE = 5 * Integer.BYTES + 1;
+
+    /**
+     * Flag set in the records of requests whose fine was liquidated.
+     */
+    private static final byte LIQUIDATED = 1;
+
+    /**
+     * The archive file holding the stored records, if any.
+     */
+    private Path _file;
+
+    /**
+     * Length of the records stored in the archive file.
+     */
+    private long _storedLength;
+
+    /**
+     * Records not yet stored in the archive file.
+     */
+    private final ByteArrayOutputStream _tail = new ByteArrayOutputStream();
+
+    /**
+     * Length of the records of the tail taken by checkpoints not yet written.
+     */
+    private int _capturedLength;
+
+    /**
+     * Constructs an empty archive, without an archive file.
+     */
+    RequestArchive() {
+    }
+
+    /**
+     * Opens the archive file of a library file.
+     *
+     * @param file   the archive file.
+     * @param length the length of its records, as recorded by the manifest of the library file.
+     * @return the opened archive.
+     * @throws IOException if the archive file is missing, shorter than the given length or
+     *                     does not hold an archive.
+     */
+    static RequestArchive open(Path file, long length) throws IOException {
+        RequestArchive archive = new RequestArchive();
+        if (length == 0)
+            return archive;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading until the whole header is read
+            }
+            header.flip();
+            if (channel.size() < HEADER_SIZE + length || header.getInt() != MAGIC || header.getShort() != VERSION)
+                throw new IOException("Request archive does not match its library file");
+        }
+        archive._file = file;
+        archive._storedLength = length;
+        return archive;
+    }
+
+    /**
+     * Archives a settled request.
+     *
+     * @param request the request to archive.
+     */
+    synchronized void append(Request request) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putInt(request.getId());
+        record.putInt(request.getUser().getId());
+        record.putInt(request.getWork().getId());
+        record.putInt(request.getDeadline());
+        record.putInt(request.getReturnDate());
+        record.put(request.isFineLiquidated() ? LIQUIDATED : 0);
+        _tail.writeBytes(record.array());
+    }
+
+    /**
+     * Iterates over the archived requests, oldest first, one page at a time. The pages cover the
+     * requests archived when the iteration starts.
+     *
+     * @param pageSize the number of requests in each page.
+     * @return an iterator over the pages.
+     */
+    Iterator<List<ArchivedRequest>> pages(int pageSize) {
+        Path file;
+        long storedLength;
+        byte[] tail;
+        synchronized (this) {
+            file = _file;
+            storedLength = _storedLength;
+            tail = _tail.toByteArray();
+        }
+        long length = storedLength + tail.length;
+        long pageLength = (long) pageSize * RECORD_SIZE;
+
+        return new Iterator<>() {
+            private long _position;
+
+            @Override
+            public boolean hasNext() {
+                return _position < length;
+            }
+
+            @Override
+            public List<ArchivedRequest> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                ByteBuffer page = ByteBuffer.allocate((int) Math.min(pageLength, length - _position));
+                if (_position < storedLength) {
+                    page.limit((int) Math.min(page.capacity(), storedLength - _position));
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                        while (page.hasRemaining()) {
+                            if (channel.read(page, HEADER_SIZE + _position + page.position()) < 0)
+                                throw new IOException("Request archive is shorter than recorded");
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    page.limit(page.capacity());
+                }
+                if (page.hasRemaining()) {
+                    int start = (int) (_position + page.position() - storedLength);
+                    page.put(tail, start, page.remaining());
+                }
+                _position += page.capacity();
+
+                page.flip();
+                List<ArchivedRequest> requests = new ArrayList<>(page.remaining() / RECORD_SIZE);
+                while (page.hasRemaining()) {
+                    requests.add(new ArchivedRequest(page.getInt(), page.getInt(), page.getInt(), page.getInt(),
+                            page.getInt(), (page.get() & LIQUIDATED) != 0));
+                }
+                return requests;
+            }
+        };
+    }
+
+    /**
+     * Takes the records a checkpoint of the library writes into the archive file.
+     *
+     * @param file    the archive file of the library file being written.
+     * @param rewrite whether to write every record not known to be stored, as when a previous
+     *                save failed, instead of only those not taken by previous checkpoints.
+     * @return the write of the records, to be done by {@link Write#write()}.
+     */
+    synchronized Write capture(Path file, boolean rewrite) {
+        boolean copy = _file == null || !_file.equals(file);
+        int from = rewrite || copy ? 0 : _capturedLength;
+        byte[] tail = _tail.toByteArray();
+        _capturedLength = tail.length;
+        return new Write(copy ? _file : null, file, _storedLength + from,
+                Arrays.copyOfRange(tail, from, tail.length));
+    }
+
+    /**
+     * Records that a write was done, so that its records are read from the archive file.
+     *
+     * @param write the write that was done.
+     */
+    private synchronized void confirm(Write write) {
+        int stored = (int) (write.getLength() - _storedLength);
+        byte[] tail = _tail.toByteArray();
+        _tail.reset();
+        _tail.write(tail, stored, tail.length - stored);
+        _capturedLength = Math.max(0, _capturedLength - stored);
+        _storedLength = write.getLength();
+        _file = write._file;
+    }
+
+    /**
+     * Records of the archive taken by a checkpoint, to be written into an archive file.
+     * When the archive file of the library changes, the records stored in the previous one
+     * are copied first.
+     */
+    final class Write {
+        private final Path _source;
+        private final Path _file;
+        private final long _position;
+        private final byte[] _records;
+
+        private Write(Path source, Path file, long position, byte[] records) {
+            _source = source;
+            _file = file;
+            _position = position;
+            _records = records;
+        }
+
+        /**
+         * Gets the length of the records in the archive file once written.
+         *
+         * @return the length of the archive.
+         */
+        long getLength() {
+            return _position + _records.length;
+        }
+
+        /**
+         * Writes the records into the archive file and forces them to the storage device.
+         *
+         * @throws IOException if an error occurs while writing the archive file.
+         */
+        void write() throws IOException {
+            if (getLength() == 0)
+                return;
+
+            try (FileChannel channel = FileChannel.open(_file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                if (_position == 0 || _source != null) {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putShort(VERSION).flip();
+                    while (header.hasRemaining())
+                        channel.write(header, header.position());
+                }
+                if (_source != null) {
+                    try (FileChannel source = FileChannel.open(_source, StandardOpenOption.READ)) {
+                        long copied = 0;
+                        while (copied < _position)
+                            copied += source.transferTo(HEADER_SIZE + copied, _position - copied,
+                                    channel.position(HEADER_SIZE + copied));
+                    }
+                }
+                ByteBuffer records = ByteBuffer.wrap(_records);
+                while (records.hasRemaining())
+                    channel.write(records, HEADER_SIZE + _position + records.position());
+                channel.force(false);
+            }
+        }
+
+        /**
+         * Records that the checkpoint taking these records was written, so that they are read
+         * from the archive file from now on.
+         */
+        void confirm() {
+            if (getLength() > 0)
+                RequestArchive.this.confirm(this);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package bci.core;
+
+/**
+ * State of the background saves started by {@link LibraryManager}.
+ */
+public enum SaveStatus {
+    /** No background save was started. */
+    IDLE,
+    /** A background save is being written. */
+    IN_PROGRESS,
+    /** The last background save was written successfully. */
+    COMPLETED,
+    /** The last background save failed; the next save writes a full snapshot. */
+    FAILED
+}
@@ -0,0 +1,120 @@
+package bci.core;
+
+import bci.core.work.Work;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of the results of searches of a {@link Library}, evicting the least recently
+ * used term first.
+ * <p>
+ * Results are kept as the IDs of the matching works, keyed by the search term in lower case, so
+ * works are looked up again when a cached result is used and show their current state. A cached
+ * result only changes when a work matching its term is added or removed, which is checked with
+ * {@link Work#hasTerm(String)}. The creators of a work only change when it is removed.
+ */
+final class SearchResultCache {
+
+    /**
+     * Maximum number of cached results.
+     */
+    private final int _capacity;
+
+    /**
+     * The IDs of the works matching each cached term, in ascending order, from the least
+     * recently used term to the most recently used.
+     */
+    private final Map<String, int[]> _results;
+
+    private long _hits;
+    private long _misses;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacity the maximum number of cached results.
+     */
+    SearchResultCache(int capacity) {
+        _capacity = capacity;
+        _results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+                return size() > _capacity;
+            }
+        };
+    }
+
+    /**
+     * Gets the cached result of a search, counting a hit or a miss.
+     *
+     * @param term the search term, in lower case.
+     * @return the IDs of the matching works, or null if the result is not cached.
+     */
+    int[] get(String term) {
+        int[] ids = _results.get(term);
+        if (ids == null) {
+            _misses++;
+        } else {
+            _hits++;
+        }
+        return ids;
+    }
+
+    /**
+     * Caches the result of a search.
+     *
+     * @param term the search term, in lower case.
+     * @param ids  the IDs of the matching works, in ascending order.
+     */
+    void put(String term, int[] ids) {
+        _results.put(term, ids);
+    }
+
+    /**
+     * Drops the cached results that a work added or removed changes. Must be called while the
+     * work still has its creators.
+     *
+     * @param work the work added or removed.
+     */
+    void invalidate(Work work) {
+        if (!_results.isEmpty()) {
+            _results.keySet().removeIf(work::hasTerm);
+        }
+    }
+
+    /**
+     * Drops the cached results that works added at once change. When more works are added than
+     * results are cached, every result is dropped instead of checking each work.
+     *
+     * @param works the works added.
+     */
+    void invalidate(Collection<Work> works) {
+        if (works.size() > _capacity) {
+            _results.clear();
+            return;
+        }
+        for (Work work : works) {
+            invalidate(work);
+        }
+    }
+
+    /**
+     * Gets the number of searches answered from the cache.
+     *
+     * @return the number of hits.
+     */
+    long getHits() {
+        return _hits;
+    }
+
+    /**
+     * Gets the number of searches not answered from the cache.
+     *
+     * @return the number of misses.
+     */
+    long getMisses() {
+        return _misses;
+    }
+}
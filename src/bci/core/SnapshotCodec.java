@@ -0,0 +1,602 @@
+package bci.core;
+
+import bci.core.request.Request;
+import bci.core.user.Notification;
+import bci.core.user.NotificationType;
+import bci.core.user.User;
+import bci.core.work.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary codec for the state of a {@link Library}.
+ * <p>
+ * Entities are written as flat records that refer to each other by ID, instead of the deep
+ * reference chains produced by Java serialization, and integers inside records are written as
+ * variable-length quantities. Records are grouped in the segments described by {@link Manifest};
+ * every segment, and every record in it, can be read on its own, so that {@link MappedSnapshot}
+ * decodes each entity only when it is first used and a checkpoint copies the records of the
+ * entities that did not change without decoding them.
+ * <pre>
+ *   users, works   offset of the record of each ID in the segment, then the records;
+ *                  an ID without a record has an empty one
+ *   requests       one fixed-size record for each ID in the segment, up to the last request
+ *   creators       count, offset of each record, then the records, sorted by name
+ * </pre>
+ * Segments can be compressed with {@link Deflater}, each on its own, so that a compressed
+ * segment is still read without reading the others; a segment is stored as it is when
+ * compressing does not make it smaller.
+ * <p>
+ * Settled requests other than the most recent ones of each user are kept in the
+ * {@link RequestArchive} instead.
+ */
+final class SnapshotCodec {
+
+    /**
+     * Magic number identifying snapshot files ("BCIS").
+     */
+    static final int MAGIC = 0x42434953;
+
+    /**
+     * Version of the segmented layout.
+     */
+    static final short VERSION = 6;
+
+    /**
+     * Size of a request record: user ID, work ID, deadline, return date and flags.
+     */
+    static final int REQUEST_SIZE = 4 * Integer.BYTES + 1;
+
+    /**
+     * Flag set in the records of existing requests.
+     */
+    static final byte REQUEST_PRESENT = 1;
+
+    /**
+     * Flag set in the records of requests whose fine was liquidated.
+     */
+    static final byte REQUEST_LIQUIDATED = 2;
+
+    /**
+     * Number of segments encoded ahead of the one being written, per processor.
+     */
+    private static final int SEGMENTS_AHEAD = 2;
+
+    private SnapshotCodec() {
+    }
+
+    /**
+     * Gets the snapshot version stored in the given bytes.
+     *
+     * @param header the first bytes of a file.
+     * @return the version of the snapshot, or 0 if the bytes do not start a snapshot.
+     */
+    static int versionOf(byte[] header) {
+        if (header.length < Integer.BYTES + Short.BYTES)
+            return 0;
+        ByteBuffer buffer = ByteBuffer.wrap(header);
+        return buffer.getInt() == MAGIC ? buffer.getShort() : 0;
+    }
+
+    /**
+     * Copies the state of the entities held by the segments of the library to encode, so that
+     * they can be encoded on another thread while the library changes.
+     * <p>
+     * Only the entities the library holds are copied, field by field. Entities it never decoded
+     * from the snapshot it was loaded from have not changed, so their records are read from
+     * the snapshot when encoding instead; so are the links of decoded entities that were never
+     * used.
+     *
+     * @param library        the library to capture.
+     * @param dirty          the entities changed since the previous checkpoint, or null to capture
+     *                       every segment.
+     * @param creatorBuckets the number of creator segments.
+     * @return the captured state.
+     * @throws IOException if the library holds entities that cannot be encoded.
+     */
+    static Capture capture(Library library, DirtyEntities dirty, int creatorBuckets) throws IOException {
+        SortedSet<Long> keys = new TreeSet<>();
+        if (dirty == null) {
+            addRange(keys, Manifest.USERS, library.getNextUserId());
+            addRange(keys, Manifest.WORKS, library.getNextWorkId());
+            addRange(keys, Manifest.REQUESTS, library.getNextRequestId());
+            for (int bucket = 0; bucket < creatorBuckets; bucket++)
+                keys.add(Manifest.key(Manifest.CREATORS, bucket));
+        } else {
+            addSegments(keys, Manifest.USERS, dirty.users());
+            addSegments(keys, Manifest.WORKS, dirty.works());
+            addSegments(keys, Manifest.REQUESTS, dirty.requests());
+            for (String name : dirty.creators())
+                keys.add(Manifest.key(Manifest.CREATORS, Manifest.bucketOf(name, creatorBuckets)));
+        }
+
+        MappedSnapshot snapshot = library.getSnapshot();
+        Map<Long, Object[]> records = new HashMap<>();
+        for (long key : keys)
+            if ((int) (key >>> 32) != Manifest.CREATORS)
+                records.put(key, captureRecords(library, (int) (key >>> 32), (int) key));
+        Map<Integer, List<CreatorState>> creators = new HashMap<>();
+        for (Creator creator : library.getLoadedCreators()) {
+            int bucket = Manifest.bucketOf(creator.getName(), creatorBuckets);
+            if (keys.contains(Manifest.key(Manifest.CREATORS, bucket)))
+                creators.computeIfAbsent(bucket, b -> new ArrayList<>()).add(new CreatorState(creator.getName(),
+                        creator.getWorks().stream().mapToInt(Work::getId).sorted().toArray(),
+                        snapshot != null && snapshot.isComplete(creator.getName())));
+        }
+        return new Capture(library, creatorBuckets, keys, records, creators,
+                snapshot == null ? Set.of() : snapshot.removedCreators());
+    }
+
+    /**
+     * Encodes the segments of a captured library and writes them into a file, one after the
+     * other, in key order.
+     * <p>
+     * Segments are encoded, and compressed, concurrently on the common {@link ForkJoinPool}, up
+     * to {@link #SEGMENTS_AHEAD} per processor ahead of the one being written, and each segment
+     * is written as soon as the segments before it are. Only those segments are held in memory,
+     * whatever the size of the library. Encoding only reads the captured state and the records
+     * of the snapshot the library was loaded from, so it does not need the library. Each segment
+     * is encoded the same way whatever thread encodes it, so the file does not depend on the
+     * number of threads.
+     *
+     * @param capture  the captured library.
+     * @param level    the {@link Deflater} compression level of the segments, or
+     *                 {@link Deflater#NO_COMPRESSION} to store them uncompressed.
+     * @param channel  the file to write into.
+     * @param origin   the position of the library file in the file, to which the positions of
+     *                 the segments are relative.
+     * @param position the position of the first segment, relative to the origin.
+     * @return where each segment was written, by {@link Manifest#key(int, int)}.
+     * @throws IOException if an error occurs while writing the file.
+     */
+    static SortedMap<Long, Segment> write(Capture capture, int level, FileChannel channel, long origin,
+                                          long position) throws IOException {
+        Iterator<Long> keys = capture._keys.iterator();
+        Deque<ForkJoinTask<Encoded>> pending = new ArrayDeque<>();
+        int ahead = SEGMENTS_AHEAD * Runtime.getRuntime().availableProcessors();
+        SortedMap<Long, Segment> written = new TreeMap<>();
+        try {
+            while (keys.hasNext() || !pending.isEmpty()) {
+                while (keys.hasNext() && pending.size() < ahead) {
+                    long key = keys.next();
+                    pending.add(ForkJoinPool.commonPool().submit(() -> encode(capture, key, level)));
+                }
+
+                Encoded encoded = pending.remove().join();
+                CRC32 checksum = new CRC32();
+                checksum.update(encoded.bytes());
+                ByteBuffer bytes = ByteBuffer.wrap(encoded.bytes());
+                long end = position;
+                while (bytes.hasRemaining())
+                    end += channel.write(bytes, origin + end);
+                written.put(encoded.key(), new Segment(position, encoded.bytes().length, encoded.length(),
+                        (int) checksum.getValue()));
+                position = end;
+            }
+        } finally {
+            for (ForkJoinTask<Encoded> task : pending)
+                task.cancel(false);
+        }
+        return written;
+    }
+
+    /**
+     * Encodes a segment, and compresses it unless compressing does not make it smaller.
+     *
+     * @param capture the captured library.
+     * @param key     the key of the segment.
+     * @param level   the compression level, or {@link Deflater#NO_COMPRESSION} to store it as it is.
+     * @return the segment to store.
+     */
+    private static Encoded encode(Capture capture, long key, int level) {
+        int index = (int) key;
+        byte[] segment = switch ((int) (key >>> 32)) {
+            case Manifest.USERS, Manifest.WORKS -> encodeRecords(capture, (int) (key >>> 32), index);
+            case Manifest.REQUESTS -> encodeRequests(capture, index);
+            default -> encodeCreators(capture, index);
+        };
+        if (level == Deflater.NO_COMPRESSION || segment.length == 0)
+            return new Encoded(key, segment, segment.length);
+
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(segment);
+            deflater.finish();
+            byte[] buffer = new byte[segment.length];
+            int length = 0;
+            while (!deflater.finished() && length < buffer.length)
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            return deflater.finished() && length < segment.length
+                    ? new Encoded(key, Arrays.copyOf(buffer, length), segment.length)
+                    : new Encoded(key, segment, segment.length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompresses a stored segment.
+     *
+     * @param stored the compressed segment.
+     * @param length the length of the segment once decompressed.
+     * @return the segment.
+     * @throws DataFormatException if the stored segment is malformed.
+     */
+    static ByteBuffer decompress(ByteBuffer stored, int length) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored.duplicate());
+            // one spare byte, so that a stored segment longer than recorded is detected
+            byte[] segment = new byte[length + 1];
+            int inflated = 0;
+            while (!inflater.finished()) {
+                int count = inflater.inflate(segment, inflated, segment.length - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary() || inflated == segment.length))
+                    break;
+                inflated += count;
+            }
+            if (!inflater.finished() || inflated != length)
+                throw new DataFormatException("Stored segment does not match its length");
+            return ByteBuffer.wrap(segment, 0, length).slice();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void addRange(SortedSet<Long> keys, int kind, int nextId) {
+        for (int index = 0; index <= Manifest.segmentOf(kind, nextId - 1); index++)
+            keys.add(Manifest.key(kind, index));
+    }
+
+    private static void addSegments(SortedSet<Long> keys, int kind, BitSet ids) {
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1))
+            keys.add(Manifest.key(kind, Manifest.segmentOf(kind, id)));
+    }
+
+    private static Object[] captureRecords(Library library, int kind, int index) throws IOException {
+        MappedSnapshot snapshot = library.getSnapshot();
+        int first = index * Manifest.SEGMENT_IDS[kind];
+        Object[] records = new Object[Manifest.SEGMENT_IDS[kind]];
+        for (int slot = 0; slot < records.length; slot++) {
+            int id = first + slot;
+            int[][] links = snapshot == null ? null : snapshot.pendingLinks(kind, id);
+            if (kind == Manifest.USERS && library.getLoadedUser(id) != null)
+                records[slot] = captureUser(library.getLoadedUser(id), links);
+            else if (kind == Manifest.WORKS && library.getLoadedWork(id) != null)
+                records[slot] = captureWork(library.getLoadedWork(id), links);
+            else if (kind == Manifest.REQUESTS && library.getLoadedRequest(id) != null)
+                records[slot] = captureRequest(library.getLoadedRequest(id));
+            else if (snapshot != null && !snapshot.isDecoded(kind, id))
+                records[slot] = STORED;
+        }
+        return records;
+    }
+
+    private static UserState captureUser(User user, int[][] links) {
+        Collection<Notification> notifications = user.getPendingNotifications();
+        int[] notificationTypes = new int[notifications.size()];
+        String[] messages = new String[notifications.size()];
+        int i = 0;
+        for (Notification notification : notifications) {
+            notificationTypes[i] = notification.getType().ordinal();
+            messages[i++] = notification.toString();
+        }
+
+        int[] subscribedWorks = user.getSubscribedWorks();
+        Arrays.sort(subscribedWorks);
+        int[][] subscribedTypes = new int[subscribedWorks.length][];
+        for (i = 0; i < subscribedWorks.length; i++)
+            subscribedTypes[i] = user.getSubscribedTypesOfWork(subscribedWorks[i]).stream()
+                    .mapToInt(NotificationType::ordinal).toArray();
+
+        return new UserState(user.getName(), user.getEmail(), user.isActive(), user.getClassification(),
+                user.getTotalFines(),
+                links != null ? links[0] : user.getActiveRequests().stream().mapToInt(Request::getId).toArray(),
+                links != null ? links[1] : user.getAllRequests().stream().mapToInt(Request::getId).toArray(),
+                notificationTypes, messages, subscribedWorks, subscribedTypes);
+    }
+
+    private static WorkState captureWork(Work work, int[][] links) throws IOException {
+        String code;
+        if (work instanceof Book book)
+            code = book.getIsbn();
+        else if (work instanceof Dvd dvd)
+            code = dvd.getIgac();
+        else
+            throw new IOException("Unsupported work " + work.getClass().getName());
+
+        int[] observers = links != null ? links[1] : new int[work.getObservers().size()];
+        if (links == null) {
+            int i = 0;
+            for (WorkObserver observer : work.getObservers()) {
+                if (!(observer instanceof User user))
+                    throw new IOException("Unsupported observer " + observer.getClass().getName());
+                observers[i++] = user.getId();
+            }
+        }
+
+        return new WorkState(work.getType().ordinal(), work.getTitle(), work.getPrice(),
+                work.getCategory().ordinal(), work.getTotalCopies(), work.getAvailableCopies(), code,
+                work.getCreators().stream().map(Creator::getName).toArray(String[]::new),
+                links != null ? links[0] : work.getRequests().stream().mapToInt(Request::getId).toArray(),
+                observers);
+    }
+
+    private static RequestState captureRequest(Request request) {
+        return new RequestState(request.getUser().getId(), request.getWork().getId(), request.getDeadline(),
+                request.getReturnDate(), request.isFineLiquidated());
+    }
+
+    private static byte[] encodeRecords(Capture capture, int kind, int index) {
+        Object[] captured = capture._records.get(Manifest.key(kind, index));
+        int first = index * Manifest.SEGMENT_IDS[kind];
+        int[] offsets = new int[captured.length + 1];
+        Encoder records = new Encoder();
+        for (int slot = 0; slot < captured.length; slot++) {
+            offsets[slot] = records.size();
+            if (captured[slot] instanceof UserState user)
+                writeUser(records, user);
+            else if (captured[slot] instanceof WorkState work)
+                writeWork(records, work);
+            else if (captured[slot] == STORED)
+                records.write(capture._snapshot.storedRecord(kind, first + slot));
+        }
+        offsets[captured.length] = records.size();
+        return records.size() == 0 ? new byte[0] : concat(fixedInts(offsets), records.toByteArray());
+    }
+
+    private static byte[] encodeRequests(Capture capture, int index) {
+        Object[] captured = capture._records.get(Manifest.key(Manifest.REQUESTS, index));
+        int first = index * Manifest.SEGMENT_IDS[Manifest.REQUESTS];
+        ByteBuffer records = ByteBuffer.allocate(captured.length * REQUEST_SIZE);
+        int end = 0;
+        for (int slot = 0; slot < captured.length; slot++) {
+            records.position(slot * REQUEST_SIZE);
+            if (captured[slot] instanceof RequestState request) {
+                records.putInt(request.user());
+                records.putInt(request.work());
+                records.putInt(request.deadline());
+                records.putInt(request.returnDate());
+                records.put((byte) (REQUEST_PRESENT | (request.fineLiquidated() ? REQUEST_LIQUIDATED : 0)));
+                end = records.position();
+            } else if (captured[slot] == STORED) {
+                ByteBuffer raw = capture._snapshot.storedRequest(first + slot);
+                if (raw != null) {
+                    records.put(raw);
+                    end = records.position();
+                }
+            }
+        }
+        return Arrays.copyOf(records.array(), end);
+    }
+
+    private static byte[] encodeCreators(Capture capture, int bucket) {
+        SortedMap<String, byte[]> records = new TreeMap<>();
+        if (capture._snapshot != null)
+            records.putAll(capture._snapshot.rawCreators(bucket, capture._removedCreators));
+        for (CreatorState creator : capture._creators.getOrDefault(bucket, List.of())) {
+            // a creator whose works were not all decoded is unchanged, and its record is kept
+            if (!creator.complete() && records.containsKey(creator.name()))
+                continue;
+            Encoder record = new Encoder();
+            record.writeString(creator.name());
+            record.writeInts(creator.works());
+            records.put(creator.name(), record.toByteArray());
+        }
+        if (records.isEmpty())
+            return new byte[0];
+
+        int[] offsets = new int[records.size() + 1];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int i = 0;
+        for (byte[] record : records.values()) {
+            offsets[i++] = bytes.size();
+            bytes.writeBytes(record);
+        }
+        offsets[i] = bytes.size();
+        return concat(fixedInts(new int[] { records.size() }), fixedInts(offsets), bytes.toByteArray());
+    }
+
+    private static void writeWork(Encoder out, WorkState work) {
+        out.writeInt(work.type());
+        out.writeString(work.title());
+        out.writeInt(work.price());
+        out.writeInt(work.category());
+        out.writeInt(work.totalCopies());
+        out.writeInt(work.availableCopies());
+        out.writeString(work.code());
+        out.writeInt(work.creators().length);
+        for (String creator : work.creators())
+            out.writeString(creator);
+        out.writeInts(work.requests());
+        out.writeInts(work.observers());
+    }
+
+    private static void writeUser(Encoder out, UserState user) {
+        out.writeString(user.name());
+        out.writeString(user.email());
+        out.writeInt(user.active() ? 1 : 0);
+        out.writeString(user.classification());
+        out.writeInt(user.totalFines());
+        out.writeInts(user.activeRequests());
+        out.writeInts(user.allRequests());
+
+        out.writeInt(user.notificationTypes().length);
+        for (int i = 0; i < user.notificationTypes().length; i++) {
+            out.writeInt(user.notificationTypes()[i]);
+            out.writeString(user.notifications()[i]);
+        }
+
+        out.writeInt(user.subscribedWorks().length);
+        for (int i = 0; i < user.subscribedWorks().length; i++) {
+            out.writeInt(user.subscribedWorks()[i]);
+            out.writeInts(user.subscribedTypes()[i]);
+        }
+    }
+
+    private static byte[] fixedInts(int[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Integer.BYTES);
+        buffer.asIntBuffer().put(values);
+        return buffer.array();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts)
+            out.writeBytes(part);
+        return out.toByteArray();
+    }
+
+    /**
+     * Marks the entities of a capture whose records are read from the snapshot the library was
+     * loaded from.
+     */
+    private static final Object STORED = new Object();
+
+    /**
+     * The state of the segments of a library to encode, copied at a point in time. Once
+     * captured, it does not change, whatever happens to the library.
+     */
+    static final class Capture {
+        private final int _currentDate;
+        private final int _nextUserId;
+        private final int _nextWorkId;
+        private final int _nextRequestId;
+        private final int _creatorBuckets;
+        private final MappedSnapshot _snapshot;
+        private final SortedSet<Long> _keys;
+
+        /**
+         * The entities of each user, work and request segment, by slot: their state, or
+         * {@link #STORED}, or null if there is no entity in the slot.
+         */
+        private final Map<Long, Object[]> _records;
+
+        private final Map<Integer, List<CreatorState>> _creators;
+        private final Set<String> _removedCreators;
+
+        private Capture(Library library, int creatorBuckets, SortedSet<Long> keys, Map<Long, Object[]> records,
+                        Map<Integer, List<CreatorState>> creators, Set<String> removedCreators) {
+            _currentDate = library.getCurrentDate().getCurrentDate();
+            _nextUserId = library.getNextUserId();
+            _nextWorkId = library.getNextWorkId();
+            _nextRequestId = library.getNextRequestId();
+            _creatorBuckets = creatorBuckets;
+            _snapshot = library.getSnapshot();
+            _keys = keys;
+            _records = records;
+            _creators = creators;
+            _removedCreators = removedCreators;
+        }
+
+        int getCurrentDate() {
+            return _currentDate;
+        }
+
+        int getNextUserId() {
+            return _nextUserId;
+        }
+
+        int getNextWorkId() {
+            return _nextWorkId;
+        }
+
+        int getNextRequestId() {
+            return _nextRequestId;
+        }
+
+        int getCreatorBuckets() {
+            return _creatorBuckets;
+        }
+    }
+
+    private record UserState(String name, String email, boolean active, String classification, int totalFines,
+                             int[] activeRequests, int[] allRequests, int[] notificationTypes,
+                             String[] notifications, int[] subscribedWorks, int[][] subscribedTypes) {
+    }
+
+    private record WorkState(int type, String title, int price, int category, int totalCopies,
+                             int availableCopies, String code, String[] creators, int[] requests,
+                             int[] observers) {
+    }
+
+    private record RequestState(int user, int work, int deadline, int returnDate, boolean fineLiquidated) {
+    }
+
+    private record CreatorState(String name, int[] works, boolean complete) {
+    }
+
+    /**
+     * A segment encoded to be written.
+     *
+     * @param key    the key of the segment.
+     * @param bytes  the bytes to store, compressed if shorter than the segment.
+     * @param length the length of the segment once decompressed.
+     */
+    private record Encoded(long key, byte[] bytes, int length) {
+    }
+
+    /**
+     * A segment as written in a file.
+     *
+     * @param position  the position of the segment, relative to the start of the library file.
+     * @param length    the stored length of the segment, shorter than its length if compressed.
+     * @param rawLength the length of the segment once decompressed.
+     * @param checksum  the CRC-32 of the stored bytes.
+     */
+    record Segment(long position, int length, int rawLength, int checksum) {
+    }
+
+    /**
+     * Buffers encoded values. Strings are written as their length followed by their UTF-8 bytes.
+     */
+    private static class Encoder {
+        private final ByteArrayOutputStream _bytes = new ByteArrayOutputStream(256);
+
+        int size() {
+            return _bytes.size();
+        }
+
+        byte[] toByteArray() {
+            return _bytes.toByteArray();
+        }
+
+        void write(ByteBuffer bytes) {
+            if (bytes == null)
+                return;
+            byte[] copy = new byte[bytes.remaining()];
+            bytes.get(copy);
+            _bytes.writeBytes(copy);
+        }
+
+        void writeInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                _bytes.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            _bytes.write(value);
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            _bytes.writeBytes(bytes);
+        }
+
+        void writeInts(int[] values) {
+            writeInt(values.length);
+            for (int value : values)
+                writeInt(value);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package bci.core;
+
+import bci.core.work.Work;
+import bci.core.work.WorkCategory;
+import bci.core.work.WorkType;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * Bitmaps of the works of a {@link Library} by category, type, availability and price band,
+ * indexed by work ID.
+ * <p>
+ * Work IDs are handed out in sequence, so the bitmaps are dense, and a {@link WorkFilter} is
+ * evaluated by combining them a word at a time: the bitmaps of the values allowed for each facet
+ * are OR-ed together, and the facets are AND-ed. Price ranges select whole bands at once; only
+ * the works of the bands a bound of the range falls into have their price checked.
+ */
+final class WorkFacets {
+
+    /**
+     * Lowest price of each price band but the first, which starts at the lowest price.
+     */
+    private static final int[] PRICE_BANDS = {5, 10, 15, 20, 25, 30, 40, 50, 75, 100};
+
+    private final BitSet _all = new BitSet();
+    private final Map<WorkCategory, BitSet> _categories = new EnumMap<>(WorkCategory.class);
+    private final Map<WorkType, BitSet> _types = new EnumMap<>(WorkType.class);
+    private final BitSet _available = new BitSet();
+    private final BitSet[] _prices = new BitSet[PRICE_BANDS.length + 1];
+
+    /**
+     * Builds the bitmaps of the given works.
+     *
+     * @param works the works.
+     */
+    WorkFacets(Collection<Work> works) {
+        for (WorkCategory category : WorkCategory.values()) {
+            _categories.put(category, new BitSet());
+        }
+        for (WorkType type : WorkType.values()) {
+            _types.put(type, new BitSet());
+        }
+        for (int band = 0; band < _prices.length; band++) {
+            _prices[band] = new BitSet();
+        }
+        for (Work work : works) {
+            add(work);
+        }
+    }
+
+    /**
+     * Adds a work to the bitmaps.
+     *
+     * @param work the work added.
+     */
+    void add(Work work) {
+        int id = work.getId();
+        _all.set(id);
+        _categories.get(work.getCategory()).set(id);
+        _types.get(work.getType()).set(id);
+        _prices[bandOf(work.getPrice())].set(id);
+        updateAvailability(work);
+    }
+
+    /**
+     * Removes a work from the bitmaps.
+     *
+     * @param work the work removed.
+     */
+    void remove(Work work) {
+        int id = work.getId();
+        _all.clear(id);
+        _categories.get(work.getCategory()).clear(id);
+        _types.get(work.getType()).clear(id);
+        _prices[bandOf(work.getPrice())].clear(id);
+        _available.clear(id);
+    }
+
+    /**
+     * Updates the availability of a work whose number of available copies changed.
+     *
+     * @param work the work.
+     */
+    void updateAvailability(Work work) {
+        _available.set(work.getId(), work.getAvailableCopies() > 0);
+    }
+
+    /**
+     * Selects the works meeting the criteria of a filter, but for its search term.
+     *
+     * @param filter the filter.
+     * @param works  the works of the library, by ID.
+     * @return the IDs of the works selected.
+     */
+    BitSet select(WorkFilter filter, IntFunction<Work> works) {
+        BitSet selected = (BitSet) _all.clone();
+        and(selected, _categories, filter.getCategories());
+        and(selected, _types, filter.getTypes());
+        if (filter.isAvailableOnly()) {
+            selected.and(_available);
+        }
+        if (filter.getMinPrice() != Integer.MIN_VALUE || filter.getMaxPrice() != Integer.MAX_VALUE) {
+            selected.and(priced(filter.getMinPrice(), filter.getMaxPrice(), selected, works));
+        }
+        return selected;
+    }
+
+    /**
+     * Estimates the number of works meeting the criteria of a filter, but for its search term,
+     * without selecting them: the number of works of the most selective criterion, counting for
+     * a price range the works of every band it reaches.
+     *
+     * @param filter the filter.
+     * @return the estimated number of works, at least that of the works selected.
+     */
+    int estimate(WorkFilter filter) {
+        int estimate = Math.min(count(_categories, filter.getCategories()), count(_types, filter.getTypes()));
+        if (filter.isAvailableOnly()) {
+            estimate = Math.min(estimate, _available.cardinality());
+        }
+        int min = filter.getMinPrice();
+        int max = filter.getMaxPrice();
+        if (min >= max) {
+            return 0;
+        }
+        if (min != Integer.MIN_VALUE || max != Integer.MAX_VALUE) {
+            int priced = 0;
+            for (int band = bandOf(min); band <= bandOf(max - 1); band++) {
+                priced += _prices[band].cardinality();
+            }
+            estimate = Math.min(estimate, priced);
+        }
+        return estimate;
+    }
+
+    /**
+     * Checks if a work meets the criteria of a filter, but for its search term, as when
+     * selected by {@link #select(WorkFilter, IntFunction)}.
+     *
+     * @param filter the filter.
+     * @param work   the work.
+     * @return true if the work meets the criteria, false otherwise.
+     */
+    static boolean matches(WorkFilter filter, Work work) {
+        if (!filter.getCategories().isEmpty() && !filter.getCategories().contains(work.getCategory())) {
+            return false;
+        }
+        if (!filter.getTypes().isEmpty() && !filter.getTypes().contains(work.getType())) {
+            return false;
+        }
+        if (filter.isAvailableOnly() && work.getAvailableCopies() == 0) {
+            return false;
+        }
+        if (filter.getMinPrice() != Integer.MIN_VALUE || filter.getMaxPrice() != Integer.MAX_VALUE) {
+            return work.getPrice() >= filter.getMinPrice() && work.getPrice() < filter.getMaxPrice();
+        }
+        return true;
+    }
+
+    /**
+     * Counts the works having one of the given values of a facet.
+     *
+     * @param bitmaps the bitmaps of the values of the facet.
+     * @param values  the values allowed, or none to allow every value.
+     * @param <E>     the type of the values.
+     * @return the number of works having one of the values.
+     */
+    private <E extends Enum<E>> int count(Map<E, BitSet> bitmaps, Set<E> values) {
+        if (values.isEmpty()) {
+            return _all.cardinality();
+        }
+        int count = 0;
+        for (E value : values) {
+            count += bitmaps.get(value).cardinality();
+        }
+        return count;
+    }
+
+    /**
+     * Keeps the selected works having one of the given values of a facet.
+     *
+     * @param selected the IDs of the works selected so far.
+     * @param bitmaps  the bitmaps of the values of the facet.
+     * @param values   the values allowed, or none to allow every value.
+     * @param <E>      the type of the values.
+     */
+    private static <E extends Enum<E>> void and(BitSet selected, Map<E, BitSet> bitmaps, Set<E> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        BitSet allowed = new BitSet();
+        for (E value : values) {
+            allowed.or(bitmaps.get(value));
+        }
+        selected.and(allowed);
+    }
+
+    /**
+     * Gets the selected works whose price is in a range.
+     *
+     * @param min      the lowest price in the range.
+     * @param max      the lowest price above the range.
+     * @param selected the IDs of the works selected so far.
+     * @param works    the works of the library, by ID.
+     * @return the IDs of the works in the range, among those selected for the bands partly in it.
+     */
+    private BitSet priced(int min, int max, BitSet selected, IntFunction<Work> works) {
+        BitSet priced = new BitSet();
+        if (min >= max) {
+            return priced;
+        }
+        int last = bandOf(max - 1);
+        for (int band = bandOf(min); band <= last; band++) {
+            if (lowestPriceOf(band) >= min && highestPriceOf(band) < max) {
+                priced.or(_prices[band]);
+                continue;
+            }
+            BitSet edge = (BitSet) _prices[band].clone();
+            edge.and(selected);
+            for (int id = edge.nextSetBit(0); id >= 0; id = edge.nextSetBit(id + 1)) {
+                int price = works.apply(id).getPrice();
+                if (price >= min && price < max) {
+                    priced.set(id);
+                }
+            }
+        }
+        return priced;
+    }
+
+    /**
+     * Gets the lowest price of a band.
+     *
+     * @param band the band.
+     * @return its lowest price.
+     */
+    private static int lowestPriceOf(int band) {
+        return band == 0 ? Integer.MIN_VALUE : PRICE_BANDS[band - 1];
+    }
+
+    /**
+     * Gets the highest price of a band.
+     *
+     * @param band the band.
+     * @return its highest price.
+     */
+    private static int highestPriceOf(int band) {
+        return band == PRICE_BANDS.length ? Integer.MAX_VALUE : PRICE_BANDS[band] - 1;
+    }
+
+    /**
+     * Gets the band of a price.
+     *
+     * @param price the price.
+     * @return the index of its band.
+     */
+    private static int bandOf(int price) {
+        int band = 0;
+        while (band < PRICE_BANDS.length && price >= PRICE_BANDS[band]) {
+            band++;
+        }
+        return band;
+    }
+}
@@ -0,0 +1,118 @@
+package bci.core;
+
+import bci.core.work.WorkCategory;
+import bci.core.work.WorkType;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Criteria selecting works, for {@link Library#filterWorks(WorkFilter)}.
+ * <p>
+ * A work is selected when it meets every criterion set: one of the categories given, if any, one
+ * of the types given, if any, at least one available copy, if required, a price in the range
+ * given, and the search term, if any, as matched by {@link Library#searchWorksByTerm(String)}.
+ * A filter with no criteria selects every work.
+ * <p>
+ * Example: {@code new WorkFilter().types(WorkType.DVD).categories(WorkCategory.REFERENCE)
+ * .available().priceBelow(25)}.
+ */
+public class WorkFilter {
+
+    private final Set<WorkCategory> _categories = EnumSet.noneOf(WorkCategory.class);
+    private final Set<WorkType> _types = EnumSet.noneOf(WorkType.class);
+    private boolean _availableOnly;
+    private int _minPrice = Integer.MIN_VALUE;
+    private int _maxPrice = Integer.MAX_VALUE;
+    private String _term;
+
+    /**
+     * Selects works of any of the given categories, along with those given before.
+     *
+     * @param categories the categories.
+     * @return this filter.
+     */
+    public WorkFilter categories(WorkCategory... categories) {
+        Collections.addAll(_categories, categories);
+        return this;
+    }
+
+    /**
+     * Selects works of any of the given types, along with those given before.
+     *
+     * @param types the types.
+     * @return this filter.
+     */
+    public WorkFilter types(WorkType... types) {
+        Collections.addAll(_types, types);
+        return this;
+    }
+
+    /**
+     * Selects only works with at least one available copy.
+     *
+     * @return this filter.
+     */
+    public WorkFilter available() {
+        _availableOnly = true;
+        return this;
+    }
+
+    /**
+     * Selects only works whose price is at least the given one.
+     *
+     * @param price the lowest price selected.
+     * @return this filter.
+     */
+    public WorkFilter priceAtLeast(int price) {
+        _minPrice = price;
+        return this;
+    }
+
+    /**
+     * Selects only works whose price is below the given one.
+     *
+     * @param price the lowest price not selected.
+     * @return this filter.
+     */
+    public WorkFilter priceBelow(int price) {
+        _maxPrice = price;
+        return this;
+    }
+
+    /**
+     * Selects only works matching a search term. A null or blank term selects every work.
+     *
+     * @param term the search term.
+     * @return this filter.
+     */
+    public WorkFilter term(String term) {
+        _term = term;
+        return this;
+    }
+
+    Set<WorkCategory> getCategories() {
+        return _categories;
+    }
+
+    Set<WorkType> getTypes() {
+        return _types;
+    }
+
+    boolean isAvailableOnly() {
+        return _availableOnly;
+    }
+
+    int getMinPrice() {
+        return _minPrice;
+    }
+
+    int getMaxPrice() {
+        return _maxPrice;
+    }
+
+    String getTerm() {
+        return _term;
+    }
+}
@@ -0,0 +1,336 @@
+package bci.core;
+
+import bci.core.work.WorkCategory;
+import bci.core.work.WorkType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A search for works, parsed from the text entered to search, for {@link Library#queryWorks(WorkQuery)}.
+ * <p>
+ * The text is a sequence of clauses separated by spaces, every one of which a work must meet:
+ * <pre>
+ *   author:NAME, creator:NAME   a creator name contains NAME
+ *   title:TEXT                  the title contains TEXT
+ *   category:CATEGORY           the category is CATEGORY, one of REFERENCE, FICTION or SCITECH
+ *   type:TYPE                   the type is TYPE, one of BOOK or DVD
+ *   available:true|false        the work has, or has no, available copy
+ *   price&lt;N, price&lt;=N, price&gt;N, price&gt;=N, price=N
+ *                               the price compares to N as given
+ *   "TEXT", TEXT                the title or a creator name contains TEXT
+ * </pre>
+ * Names and texts are matched ignoring case, and may be quoted to hold spaces, but may not be
+ * blank. Clauses on the category or type of a work may be repeated to allow any of the values
+ * given. Text holding no clause but bare words, or any clause not written as above, is searched
+ * as a whole, as a single term. The text may start with {@code ?} to show how the search is
+ * carried out, as in {@code ? author:saramago price<30}.
+ */
+public final class WorkQuery {
+
+    /**
+     * How the works meeting a clause are found.
+     */
+    public enum Access {
+        /** The works of the creators whose names hold the text given, from the index of creator names. */
+        CREATOR_INDEX,
+        /** The works holding the text given, from the search index. */
+        TERM_INDEX,
+        /** The works with the category, type, availability and price given, from their bitmaps. */
+        FACETS,
+        /** The candidate works left by the previous steps, checked one by one. */
+        RESIDUAL
+    }
+
+    /**
+     * A step of the plan by which a query is carried out.
+     *
+     * @param access     how the works meeting the clauses of the step are found.
+     * @param clauses    the clauses of the step, as written.
+     * @param candidates the number of works left after the step.
+     */
+    public record Step(Access access, String clauses, int candidates) {
+    }
+
+    /**
+     * Mark starting the text of a query whose plan is shown. It is a mark rather than a word, so
+     * that no search for words is taken for it; a search for text starting with it is quoted.
+     */
+    private static final char EXPLAIN = '?';
+
+    /**
+     * Field of the clauses on the price of works, followed by a comparison.
+     */
+    private static final String PRICE = "price";
+
+    private final boolean _explain;
+    private final List<String> _terms = new ArrayList<>();
+    private final List<String> _authors = new ArrayList<>();
+    private final List<String> _titles = new ArrayList<>();
+    private final WorkFilter _filter = new WorkFilter();
+    private final List<String> _facetClauses = new ArrayList<>();
+    private boolean _unavailableOnly;
+    private long _minPrice = Integer.MIN_VALUE;
+    private long _maxPrice = Integer.MAX_VALUE;
+
+    private WorkQuery(boolean explain) {
+        _explain = explain;
+    }
+
+    /**
+     * Parses the text of a query. Text that is not made of the clauses of a query is searched as
+     * a single term.
+     *
+     * @param text the text entered to search.
+     * @return the query.
+     */
+    public static WorkQuery parse(String text) {
+        String trimmed = text == null ? "" : text.strip();
+        boolean explain = false;
+        if (trimmed.length() > 1 && trimmed.charAt(0) == EXPLAIN) {
+            explain = true;
+            trimmed = trimmed.substring(1).strip();
+        }
+
+        WorkQuery query = new WorkQuery(explain);
+        if (!query.parseClauses(trimmed)) {
+            query = new WorkQuery(explain);
+            query._terms.add(explain ? trimmed : text);
+        }
+        return query;
+    }
+
+    /**
+     * Parses the clauses of a query.
+     *
+     * @param text the clauses, separated by spaces.
+     * @return true if the text is made of clauses, at least one of them not a bare word, false
+     *         otherwise.
+     */
+    private boolean parseClauses(String text) {
+        List<String> tokens = tokensOf(text);
+        if (tokens == null) {
+            return false;
+        }
+
+        boolean structured = false;
+        for (String token : tokens) {
+            if (token.startsWith("\"")) {
+                String term = unquote(token);
+                if (term.isBlank()) {
+                    return false;
+                }
+                _terms.add(term);
+                structured = true;
+            } else if (token.regionMatches(true, 0, PRICE, 0, PRICE.length()) && token.length() > PRICE.length()
+                    && "<>=".indexOf(token.charAt(PRICE.length())) >= 0) {
+                if (!parsePrice(token.substring(PRICE.length()))) {
+                    return false;
+                }
+                _facetClauses.add(token);
+                structured = true;
+            } else if (token.indexOf(':') >= 0) {
+                int colon = token.indexOf(':');
+                if (!parseField(token.substring(0, colon).toLowerCase(Locale.ROOT), unquote(token.substring(colon + 1)), token)) {
+                    return false;
+                }
+                structured = true;
+            } else if (isBareWord(token)) {
+                _terms.add(token);
+            } else {
+                return false;
+            }
+        }
+        if (_minPrice != Integer.MIN_VALUE) {
+            _filter.priceAtLeast((int) Math.min(_minPrice, Integer.MAX_VALUE));
+        }
+        // every price is below a bound past the highest one, which is then left out
+        if (_maxPrice < Integer.MAX_VALUE) {
+            _filter.priceBelow((int) _maxPrice);
+        }
+        return structured;
+    }
+
+    /**
+     * Parses a clause on a field of works.
+     *
+     * @param field the field, in lower case.
+     * @param value the value of the clause, unquoted.
+     * @param token the clause, as written.
+     * @return true if the clause is valid, false otherwise.
+     */
+    private boolean parseField(String field, String value, String token) {
+        if (value.isBlank()) {
+            return false;
+        }
+        try {
+            switch (field) {
+                case "author", "creator" -> _authors.add(value);
+                case "title" -> _titles.add(value);
+                case "category" -> {
+                    _filter.categories(WorkCategory.valueOf(value.toUpperCase(Locale.ROOT)));
+                    _facetClauses.add(token);
+                }
+                case "type" -> {
+                    _filter.types(WorkType.valueOf(value.toUpperCase(Locale.ROOT)));
+                    _facetClauses.add(token);
+                }
+                case "available" -> {
+                    if (value.equalsIgnoreCase("true")) {
+                        _filter.available();
+                        _facetClauses.add(token);
+                    } else if (value.equalsIgnoreCase("false")) {
+                        _unavailableOnly = true;
+                    } else {
+                        return false;
+                    }
+                }
+                default -> {
+                    return false;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parses the comparison of a clause on the price of works.
+     *
+     * @param comparison the comparison following the field, such as {@code <30}.
+     * @return true if the comparison is valid, false otherwise.
+     */
+    private boolean parsePrice(String comparison) {
+        int operator = 0;
+        while (operator < comparison.length() && "<>=".indexOf(comparison.charAt(operator)) >= 0) {
+            operator++;
+        }
+        long price;
+        try {
+            price = Integer.parseInt(comparison.substring(operator));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+
+        switch (comparison.substring(0, operator)) {
+            case "<" -> _maxPrice = Math.min(_maxPrice, price);
+            case "<=" -> _maxPrice = Math.min(_maxPrice, price + 1);
+            case ">" -> _minPrice = Math.max(_minPrice, price + 1);
+            case ">=" -> _minPrice = Math.max(_minPrice, price);
+            case "=" -> {
+                _minPrice = Math.max(_minPrice, price);
+                _maxPrice = Math.min(_maxPrice, price + 1);
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Splits text into tokens at the spaces outside quotes.
+     *
+     * @param text the text.
+     * @return the tokens, or null if a quote is not closed.
+     */
+    private static List<String> tokensOf(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (!token.isEmpty()) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                }
+                continue;
+            }
+            token.append(c);
+        }
+        if (quoted) {
+            return null;
+        }
+        if (!token.isEmpty()) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * Removes the quotes around text, if any.
+     *
+     * @param text the text.
+     * @return the text without the quotes around it.
+     */
+    private static String unquote(String text) {
+        if (text.length() >= 2 && text.startsWith("\"") && text.endsWith("\"")) {
+            return text.substring(1, text.length() - 1);
+        }
+        return text;
+    }
+
+    /**
+     * Checks if a token holds none of the characters of the syntax of clauses.
+     *
+     * @param token the token.
+     * @return true if the token is a bare word, false otherwise.
+     */
+    private static boolean isBareWord(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            if ("\":<>=".indexOf(token.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the plan of the query is to be shown.
+     *
+     * @return true if the text of the query started with {@code ?}, false otherwise.
+     */
+    public boolean isExplain() {
+        return _explain;
+    }
+
+    /**
+     * Checks if the query is a single term, searched as by {@link Library#searchWorks(String)}.
+     *
+     * @return true if the query has a single clause, on the title or creator names.
+     */
+    boolean isSingleTerm() {
+        return _terms.size() == 1 && _authors.isEmpty() && _titles.isEmpty() && _facetClauses.isEmpty()
+                && !_unavailableOnly;
+    }
+
+    List<String> getTerms() {
+        return Collections.unmodifiableList(_terms);
+    }
+
+    List<String> getAuthors() {
+        return Collections.unmodifiableList(_authors);
+    }
+
+    List<String> getTitles() {
+        return Collections.unmodifiableList(_titles);
+    }
+
+    WorkFilter getFilter() {
+        return _filter;
+    }
+
+    List<String> getFacetClauses() {
+        return Collections.unmodifiableList(_facetClauses);
+    }
+
+    boolean isUnavailableOnly() {
+        return _unavailableOnly;
+    }
+}
@@ -0,0 +1,237 @@
+package bci.core;
+
+import bci.core.work.Work;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Plans and evaluates the {@link WorkQuery queries} of the works of a {@link Library}.
+ * <p>
+ * The number of works meeting each clause is first estimated, without finding them: from the
+ * index of creator names for clauses on creators, from the search index of the library for texts
+ * and titles, and from its bitmaps of the works for their category, type, availability and price.
+ * Only the works of the clause with the fewest are then found, and the other clauses are checked
+ * on them one by one, from the most selective on. Clauses on unavailable works are only checked
+ * one by one, on every work if there is no other clause.
+ */
+final class WorkQueryPlanner {
+
+    /**
+     * The library whose works are queried.
+     */
+    private final Library _library;
+
+    /**
+     * The index of the works by the tokens of their creator names. Built by the first query on
+     * creators and kept up to date from then on.
+     */
+    private WorkSearchIndex _creatorIndex;
+
+    /**
+     * Creates the planner of the queries of a library.
+     *
+     * @param library the library whose works are queried.
+     */
+    WorkQueryPlanner(Library library) {
+        _library = library;
+    }
+
+    /**
+     * Streams the works meeting a query, in the order they are held, adding the steps by which
+     * they were found to a plan. A query that is a single term is searched as by
+     * {@link Library#searchWorks(String)}. The works are only looked up as the stream is consumed.
+     *
+     * @param query the query.
+     * @param plan  the list the steps of the plan are added to, in order.
+     * @return a stream of the works meeting the query.
+     */
+    Stream<Work> query(WorkQuery query, List<WorkQuery.Step> plan) {
+        if (query.isSingleTerm()) {
+            String term = query.getTerms().get(0);
+            int[] ids = _library.searchWorkIds(term);
+            plan.add(new WorkQuery.Step(WorkQuery.Access.TERM_INDEX, quoted(term), ids.length));
+            return Arrays.stream(ids).mapToObj(_library::getLoadedWork);
+        }
+
+        Collection<Work> works = _library.getWorks();
+        List<Clause> clauses = new ArrayList<>();
+        for (String term : query.getTerms()) {
+            String key = term.toLowerCase();
+            clauses.add(new Clause(WorkQuery.Access.TERM_INDEX, quoted(term), _library.estimateSearch(key),
+                    () -> idsOf(_library.searchWorkIds(term)), work -> work.hasTerm(key)));
+        }
+        for (String author : query.getAuthors()) {
+            String key = author.toLowerCase();
+            clauses.add(new Clause(WorkQuery.Access.CREATOR_INDEX, "author:" + quoted(author),
+                    Math.min(creatorIndex(works).estimate(key), works.size()),
+                    () -> idsOf(creatorWorkIds(works, key)), work -> work.hasCreatorTerm(key)));
+        }
+        for (String title : query.getTitles()) {
+            String key = title.toLowerCase();
+            Predicate<Work> titled = work -> work.getTitleKey().contains(key);
+            clauses.add(new Clause(WorkQuery.Access.TERM_INDEX, "title:" + quoted(title), _library.estimateSearch(key),
+                    () -> idsOf(_library.searchWorkIds(title), titled), titled));
+        }
+        if (!query.getFacetClauses().isEmpty()) {
+            WorkFilter filter = query.getFilter();
+            clauses.add(new Clause(WorkQuery.Access.FACETS, String.join(" ", query.getFacetClauses()),
+                    _library.facets().estimate(filter),
+                    () -> _library.facets().select(filter, _library::getLoadedWork),
+                    work -> WorkFacets.matches(filter, work)));
+        }
+        if (query.isUnavailableOnly()) {
+            clauses.add(new Clause(null, "available:false", works.size(), null,
+                    work -> work.getAvailableCopies() == 0));
+        }
+
+        clauses.sort(Comparator.comparingInt(Clause::estimate));
+        Clause first = null;
+        for (Clause clause : clauses) {
+            if (clause.access() != null) {
+                first = clause;
+                break;
+            }
+        }
+        BitSet selected;
+        if (first != null) {
+            selected = first.found().get();
+            plan.add(new WorkQuery.Step(first.access(), first.clause(), selected.cardinality()));
+        } else {
+            selected = new BitSet();
+            for (Work work : works) {
+                selected.set(work.getId());
+            }
+        }
+
+        for (Clause clause : clauses) {
+            if (clause == first) {
+                continue;
+            }
+            for (int id = selected.nextSetBit(0); id >= 0; id = selected.nextSetBit(id + 1)) {
+                if (!clause.predicate().test(_library.getLoadedWork(id))) {
+                    selected.clear(id);
+                }
+            }
+            plan.add(new WorkQuery.Step(WorkQuery.Access.RESIDUAL, clause.clause(), selected.cardinality()));
+        }
+        return selected.stream().mapToObj(_library::getLoadedWork);
+    }
+
+    /**
+     * Updates the index of creator names, if built, with a work just added.
+     *
+     * @param work the work added.
+     */
+    void workAdded(Work work) {
+        if (_creatorIndex != null) {
+            _creatorIndex.add(work);
+        }
+    }
+
+    /**
+     * Updates the index of creator names, if built, with a work being removed, before it leaves
+     * its creators.
+     *
+     * @param work the work removed.
+     */
+    void workRemoved(Work work) {
+        if (_creatorIndex != null) {
+            _creatorIndex.remove(work);
+        }
+    }
+
+    /**
+     * Gets the set of the given work IDs.
+     *
+     * @param ids the IDs.
+     * @return a bitmap of the IDs.
+     */
+    static BitSet idsOf(int[] ids) {
+        BitSet set = new BitSet();
+        for (int id : ids) {
+            set.set(id);
+        }
+        return set;
+    }
+
+    /**
+     * Gets the set of the IDs of the works given that meet a predicate.
+     *
+     * @param ids       the IDs of the works.
+     * @param predicate the predicate.
+     * @return the IDs of the works meeting the predicate.
+     */
+    private BitSet idsOf(int[] ids, Predicate<Work> predicate) {
+        BitSet set = new BitSet();
+        for (int id : ids) {
+            if (predicate.test(_library.getLoadedWork(id))) {
+                set.set(id);
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Quotes a text of a query, to show it in a plan.
+     *
+     * @param text the text.
+     * @return the text in quotes.
+     */
+    private static String quoted(String text) {
+        return "\"" + text + "\"";
+    }
+
+    /**
+     * Gets the index of creator names, building it if needed.
+     *
+     * @param works the works of the library.
+     * @return the index of creator names.
+     */
+    private WorkSearchIndex creatorIndex(Collection<Work> works) {
+        if (_creatorIndex == null) {
+            _creatorIndex = new WorkSearchIndex(works, false);
+        }
+        return _creatorIndex;
+    }
+
+    /**
+     * Searches the IDs of the works of the creators whose names contain a text, from the index
+     * of creator names.
+     *
+     * @param works the works of the library.
+     * @param name  the text, in lower case.
+     * @return the IDs of the works found, in ascending order.
+     */
+    private int[] creatorWorkIds(Collection<Work> works, String name) {
+        int[] ids = creatorIndex(works).search(name, _library::getLoadedWork);
+        if (ids == null) {
+            ids = works.stream()
+                    .filter(work -> work.hasCreatorTerm(name))
+                    .mapToInt(Work::getId)
+                    .toArray();
+        }
+        return ids;
+    }
+
+    /**
+     * A clause of a query, as planned by {@link #query(WorkQuery, List)}.
+     *
+     * @param access    how the works meeting the clause are found, or null if they are only
+     *                  checked one by one.
+     * @param clause    the clause, as written.
+     * @param estimate  the estimated number of works meeting the clause.
+     * @param found     finds the IDs of the works meeting the clause, if they can be found.
+     * @param predicate checks if a work meets the clause.
+     */
+    private record Clause(WorkQuery.Access access, String clause, int estimate, Supplier<BitSet> found,
+                          Predicate<Work> predicate) {
+    }
+}
@@ -0,0 +1,352 @@
+package bci.core;
+
+import bci.core.work.Work;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Inverted index of the works of a {@link Library}, from the tokens of their titles and of the
+ * names of their creators to their IDs, or from the tokens of the names of their creators alone.
+ * <p>
+ * Titles and names are lower-cased and split into tokens at every character that is neither a
+ * letter nor a digit. A search term matches the works whose title or a creator name contains it,
+ * so each run of letters and digits of the term lies within a single token of every matching
+ * work. The tokens are in turn indexed by their trigrams, so the tokens containing a run of three
+ * or more characters are found among those holding its rarest trigram. The candidates are the
+ * works holding a token that contains the run whose tokens have the fewest postings, and those
+ * are then checked with {@link Work#hasTerm(String)}, or {@link Work#hasCreatorTerm(String)} when
+ * only creator names are indexed, unless the term is that run alone. Only the
+ * postings of those tokens are read, instead of every work. Terms whose runs are all shorter than
+ * a trigram are looked up in every token instead, the candidates being the works holding, for
+ * every run, a token that contains it.
+ */
+final class WorkSearchIndex {
+
+    /**
+     * Length of the character sequences by which tokens are indexed.
+     */
+    private static final int TRIGRAM = 3;
+
+    /**
+     * IDs of the works holding each token.
+     */
+    private final Map<String, Postings> _postings = new HashMap<>();
+
+    /**
+     * The tokens holding each trigram.
+     */
+    private final Map<String, List<String>> _tokensByTrigram = new HashMap<>();
+
+    /**
+     * Whether titles are indexed, along with creator names.
+     */
+    private final boolean _titles;
+
+    /**
+     * Builds the index of the titles and creator names of the given works.
+     *
+     * @param works the works to index.
+     */
+    WorkSearchIndex(Collection<Work> works) {
+        this(works, true);
+    }
+
+    /**
+     * Builds the index of the given works.
+     *
+     * @param works  the works to index.
+     * @param titles true to index titles along with creator names, false to index creator names alone.
+     */
+    WorkSearchIndex(Collection<Work> works, boolean titles) {
+        _titles = titles;
+        for (Work work : works) {
+            add(work);
+        }
+    }
+
+    /**
+     * Indexes a work.
+     *
+     * @param work the work to index.
+     */
+    void add(Work work) {
+        for (String token : tokensOf(work)) {
+            Postings postings = _postings.get(token);
+            if (postings == null) {
+                postings = new Postings();
+                _postings.put(token, postings);
+                for (int i = 0; i + TRIGRAM <= token.length(); i++) {
+                    List<String> tokens = _tokensByTrigram.computeIfAbsent(token.substring(i, i + TRIGRAM),
+                            key -> new ArrayList<>(1));
+                    if (tokens.isEmpty() || tokens.get(tokens.size() - 1) != token) {
+                        tokens.add(token);
+                    }
+                }
+            }
+            postings.add(work.getId());
+        }
+    }
+
+    /**
+     * Removes a work from the index. Must be called while the work still has its creators.
+     *
+     * @param work the work to remove.
+     */
+    void remove(Work work) {
+        for (String token : tokensOf(work)) {
+            Postings postings = _postings.get(token);
+            if (postings != null && postings.remove(work.getId()) && postings.isEmpty()) {
+                _postings.remove(token);
+                for (int i = 0; i + TRIGRAM <= token.length(); i++) {
+                    String trigram = token.substring(i, i + TRIGRAM);
+                    List<String> tokens = _tokensByTrigram.get(trigram);
+                    if (tokens != null && tokens.remove(token) && tokens.isEmpty()) {
+                        _tokensByTrigram.remove(trigram);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Searches works by a term.
+     *
+     * @param term  the search term, in lower case.
+     * @param works the works of the library, by ID.
+     * @return the IDs of the works matching the term, in ascending order, or null if the term
+     *         holds no letter nor digit to look up, in which case every work has to be checked.
+     */
+    int[] search(String term, IntFunction<Work> works) {
+        List<String> pieces = tokensOf(term);
+        if (pieces.isEmpty()) {
+            return null;
+        }
+
+        List<Postings> rarest = null;
+        int rarestCount = Integer.MAX_VALUE;
+        for (String piece : pieces) {
+            if (piece.length() >= TRIGRAM) {
+                List<Postings> postings = postingsContaining(piece);
+                int count = sizeOf(postings);
+                if (count < rarestCount) {
+                    rarest = postings;
+                    rarestCount = count;
+                }
+            }
+        }
+        if (rarest != null) {
+            BitSet found = new BitSet();
+            for (Postings postings : rarest) {
+                postings.addTo(found);
+            }
+            return matching(found, term, pieces, works, _titles);
+        }
+
+        BitSet[] candidates = new BitSet[pieces.size()];
+        for (int i = 0; i < candidates.length; i++) {
+            candidates[i] = new BitSet();
+        }
+        for (Map.Entry<String, Postings> entry : _postings.entrySet()) {
+            String token = entry.getKey();
+            for (int i = 0; i < candidates.length; i++) {
+                if (token.contains(pieces.get(i))) {
+                    entry.getValue().addTo(candidates[i]);
+                }
+            }
+        }
+        BitSet found = candidates[0];
+        for (int i = 1; i < candidates.length; i++) {
+            found.and(candidates[i]);
+        }
+        return matching(found, term, pieces, works, _titles);
+    }
+
+    /**
+     * Estimates the number of works matching a term without searching them: the number of
+     * postings {@link #search(String, IntFunction)} reads for the run of the term with the
+     * fewest, which is at least that of the works found.
+     *
+     * @param term the search term, in lower case.
+     * @return the estimated number of works, or {@link Integer#MAX_VALUE} if no run of the term is
+     *         as long as a trigram, in which case every token has to be read.
+     */
+    int estimate(String term) {
+        int estimate = Integer.MAX_VALUE;
+        for (String piece : tokensOf(term)) {
+            if (piece.length() >= TRIGRAM) {
+                estimate = Math.min(estimate, sizeOf(postingsContaining(piece)));
+            }
+        }
+        return estimate;
+    }
+
+    /**
+     * Gets the number of postings of several tokens, counting a work once for each token.
+     *
+     * @param postings the postings of the tokens.
+     * @return the sum of their sizes.
+     */
+    private static int sizeOf(List<Postings> postings) {
+        int size = 0;
+        for (Postings tokenPostings : postings) {
+            size += tokenPostings.size();
+        }
+        return size;
+    }
+
+    /**
+     * Gets the postings of the tokens containing a run of letters and digits, from the tokens
+     * holding its rarest trigram.
+     *
+     * @param piece the run, of at least three characters.
+     * @return the postings of the tokens containing the run.
+     */
+    private List<Postings> postingsContaining(String piece) {
+        List<String> rarest = null;
+        for (int i = 0; i + TRIGRAM <= piece.length(); i++) {
+            List<String> tokens = _tokensByTrigram.get(piece.substring(i, i + TRIGRAM));
+            if (tokens == null) {
+                return List.of();
+            }
+            if (rarest == null || tokens.size() < rarest.size()) {
+                rarest = tokens;
+            }
+        }
+
+        List<Postings> postings = new ArrayList<>();
+        for (String token : rarest) {
+            if (token.contains(piece)) {
+                postings.add(_postings.get(token));
+            }
+        }
+        return postings;
+    }
+
+    /**
+     * Gets the candidate works that match a term.
+     *
+     * @param candidates the IDs of the candidate works.
+     * @param term       the search term, in lower case.
+     * @param pieces     the runs of letters and digits of the term.
+     * @param works      the works of the library, by ID.
+     * @param titles     true to match titles along with creator names, false to match creator names alone.
+     * @return the IDs of the works matching the term, in ascending order.
+     */
+    private static int[] matching(BitSet candidates, String term, List<String> pieces, IntFunction<Work> works,
+                                  boolean titles) {
+        // a term made of a single token is contained in every work holding a token containing it
+        boolean verify = !(pieces.size() == 1 && pieces.get(0).length() == term.length());
+        int[] matches = new int[candidates.cardinality()];
+        int count = 0;
+        for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+            Work work = works.apply(id);
+            if (work != null && (!verify || (titles ? work.hasTerm(term) : work.hasCreatorTerm(term)))) {
+                matches[count++] = id;
+            }
+        }
+        return count == matches.length ? matches : Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * Gets the tokens of the title, if indexed, and the creator names of a work. Tokens repeated
+     * in them are repeated, which postings ignore.
+     *
+     * @param work the work.
+     * @return the tokens of the work.
+     */
+    private List<String> tokensOf(Work work) {
+        List<String> tokens = _titles ? tokensOf(work.getTitleKey()) : new ArrayList<>();
+        for (Creator creator : work.getCreators()) {
+            tokens.addAll(tokensOf(creator.getNameKey()));
+        }
+        return tokens;
+    }
+
+    /**
+     * Splits lower-cased text into its runs of letters and digits.
+     *
+     * @param text the text.
+     * @return the tokens of the text, in order.
+     */
+    static List<String> tokensOf(String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                tokens.add(text.substring(start, i));
+                start = -1;
+            }
+            i += Character.charCount(codePoint);
+        }
+        if (start >= 0) {
+            tokens.add(text.substring(start));
+        }
+        return tokens;
+    }
+
+    /**
+     * IDs of the works holding a token, in ascending order.
+     */
+    private static final class Postings {
+
+        private int[] _ids = new int[2];
+        private int _size;
+
+        void add(int id) {
+            if (_size > 0 && _ids[_size - 1] >= id) {
+                int index = Arrays.binarySearch(_ids, 0, _size, id);
+                if (index >= 0) {
+                    return;
+                }
+                insert(-index - 1, id);
+                return;
+            }
+            insert(_size, id);
+        }
+
+        private void insert(int index, int id) {
+            if (_size == _ids.length) {
+                _ids = Arrays.copyOf(_ids, _size * 2);
+            }
+            System.arraycopy(_ids, index, _ids, index + 1, _size - index);
+            _ids[index] = id;
+            _size++;
+        }
+
+        boolean remove(int id) {
+            int index = Arrays.binarySearch(_ids, 0, _size, id);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(_ids, index + 1, _ids, index, _size - index - 1);
+            _size--;
+            return true;
+        }
+
+        boolean isEmpty() {
+            return _size == 0;
+        }
+
+        int size() {
+            return _size;
+        }
+
+        void addTo(BitSet ids) {
+            for (int i = 0; i < _size; i++) {
+                ids.set(_ids[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package bci.core;
+
+import bci.core.work.Work;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Suggestions and completions of the creator names and titles of the works of a {@link Library}.
+ * <p>
+ * Names and title words are suggested from {@link BkTree}s, by edit distance, and names and
+ * titles are completed from {@link PrefixIndex}es. Each index is built from the works of the
+ * library when it is first needed. The trees are kept up to date from then on, and dropped, to
+ * be built again, once most of their texts are gone. The prefix indexes are kept up to date with
+ * works added or removed one at a time, and built again after works are added at once.
+ */
+final class WorkSuggestions {
+
+    /**
+     * The library whose works are suggested.
+     */
+    private final Library _library;
+
+    /**
+     * The names of the creators of the works, by edit distance.
+     */
+    private BkTree _creatorNames;
+
+    /**
+     * The words of the titles of the works, by edit distance.
+     */
+    private BkTree _titleWords;
+
+    /**
+     * The names of the creators of the works, and the titles of the works, by prefix.
+     */
+    private PrefixIndex _creatorPrefixes;
+    private PrefixIndex _titlePrefixes;
+
+    /**
+     * Creates the suggestions of the works of a library.
+     *
+     * @param library the library whose works are suggested.
+     */
+    WorkSuggestions(Library library) {
+        _library = library;
+    }
+
+    /**
+     * Suggests the names of creators closest to a name, within one edit for every three
+     * characters of the name, or two edits for shorter names.
+     *
+     * @param name  the name.
+     * @param count the maximum number of names suggested.
+     * @return the names suggested, from the closest to the farthest.
+     */
+    List<String> suggestCreatorNames(String name, int count) {
+        if (_creatorNames == null) {
+            _creatorNames = new BkTree();
+            for (Work work : _library.getWorks()) {
+                addCreatorNames(work);
+            }
+        }
+        return _creatorNames.closest(name, count, suggestionDistance(name));
+    }
+
+    /**
+     * Suggests the words of titles closest to a word, as for creator names.
+     *
+     * @param word  the word.
+     * @param count the maximum number of words suggested.
+     * @return the words suggested, in lower case, from the closest to the farthest.
+     */
+    List<String> suggestTitleWords(String word, int count) {
+        if (_titleWords == null) {
+            _titleWords = new BkTree();
+            for (Work work : _library.getWorks()) {
+                addTitleWords(work);
+            }
+        }
+        return _titleWords.closest(word, count, suggestionDistance(word));
+    }
+
+    /**
+     * Completes the name of a creator.
+     *
+     * @param prefix the start of the name.
+     * @param count  the maximum number of names returned.
+     * @return the names of creators starting with the prefix, in alphabetical order.
+     */
+    List<String> completeCreatorNames(String prefix, int count) {
+        if (_creatorPrefixes == null) {
+            List<String> names = new ArrayList<>();
+            for (Work work : _library.getWorks()) {
+                for (Creator creator : work.getCreators()) {
+                    names.add(creator.getName());
+                }
+            }
+            _creatorPrefixes = new PrefixIndex(names);
+        }
+        return _creatorPrefixes.complete(prefix, count);
+    }
+
+    /**
+     * Completes the title of a work.
+     *
+     * @param prefix the start of the title.
+     * @param count  the maximum number of titles returned.
+     * @return the titles of works starting with the prefix, in alphabetical order, each once.
+     */
+    List<String> completeTitles(String prefix, int count) {
+        if (_titlePrefixes == null) {
+            Collection<Work> works = _library.getWorks();
+            List<String> titles = new ArrayList<>(works.size());
+            for (Work work : works) {
+                titles.add(work.getTitle());
+            }
+            _titlePrefixes = new PrefixIndex(titles);
+        }
+        return _titlePrefixes.complete(prefix, count);
+    }
+
+    /**
+     * Updates the indexes built with a work just added.
+     *
+     * @param work the work added.
+     */
+    void workAdded(Work work) {
+        if (_creatorNames != null) {
+            addCreatorNames(work);
+        }
+        if (_titleWords != null) {
+            addTitleWords(work);
+        }
+        if (_creatorPrefixes != null) {
+            for (Creator creator : work.getCreators()) {
+                _creatorPrefixes.add(creator.getName());
+            }
+        }
+        if (_titlePrefixes != null) {
+            _titlePrefixes.add(work.getTitle());
+        }
+    }
+
+    /**
+     * Updates the indexes built with many works added at once. The prefix indexes are dropped,
+     * to be sorted again as a whole.
+     *
+     * @param works the works added.
+     */
+    void worksAdded(List<Work> works) {
+        for (Work work : works) {
+            if (_creatorNames != null) {
+                addCreatorNames(work);
+            }
+            if (_titleWords != null) {
+                addTitleWords(work);
+            }
+        }
+        _creatorPrefixes = null;
+        _titlePrefixes = null;
+    }
+
+    /**
+     * Updates the indexes built with a work being removed, before it leaves its creators.
+     *
+     * @param work the work removed.
+     */
+    void workRemoved(Work work) {
+        if (_creatorNames != null) {
+            for (Creator creator : work.getCreators()) {
+                _creatorNames.remove(creator.getName());
+            }
+            if (_creatorNames.isMostlyEmpty()) {
+                _creatorNames = null;
+            }
+        }
+        if (_titleWords != null) {
+            for (String word : WorkSearchIndex.tokensOf(work.getTitleKey())) {
+                _titleWords.remove(word);
+            }
+            if (_titleWords.isMostlyEmpty()) {
+                _titleWords = null;
+            }
+        }
+        if (_creatorPrefixes != null) {
+            for (Creator creator : work.getCreators()) {
+                _creatorPrefixes.remove(creator.getName());
+            }
+        }
+        if (_titlePrefixes != null) {
+            _titlePrefixes.remove(work.getTitle());
+        }
+    }
+
+    /**
+     * Gets the greatest number of edits of the suggestions for a text.
+     *
+     * @param text the text.
+     * @return the maximum edit distance of the suggestions.
+     */
+    private static int suggestionDistance(String text) {
+        return Math.max(2, text.length() / 3);
+    }
+
+    /**
+     * Adds the names of the creators of a work to their index.
+     *
+     * @param work the work.
+     */
+    private void addCreatorNames(Work work) {
+        for (Creator creator : work.getCreators()) {
+            _creatorNames.add(creator.getName());
+        }
+    }
+
+    /**
+     * Adds the words of the title of a work to their index.
+     *
+     * @param work the work.
+     */
+    private void addTitleWords(Work work) {
+        for (String word : WorkSearchIndex.tokensOf(work.getTitleKey())) {
+            _titleWords.add(word);
+        }
+    }
+}
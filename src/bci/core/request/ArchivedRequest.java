@@ -0,0 +1,15 @@
+package bci.core.request;
+
+/**
+ * A settled request as kept in the request archive: returned, with no fine left to pay.
+ * Refers to its user and work by ID, so it keeps neither alive.
+ *
+ * @param id             the request ID
+ * @param userId         the ID of the user who made the request
+ * @param workId         the ID of the requested work
+ * @param deadline       the deadline for returning the work
+ * @param returnDate     the date the work was returned
+ * @param fineLiquidated whether a fine for the request was paid
+ */
+public record ArchivedRequest(int id, int userId, int workId, int deadline, int returnDate, boolean fineLiquidated) {
+}
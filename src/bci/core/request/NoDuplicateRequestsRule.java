@@ -44,4 +44,19 @@ public class NoDuplicateRequestsRule extends RequestRule {
             throw new RequestRuleFailedException(user.getId(), work.getId(), this.getId());
         }
     }
+
+    /**
+     * Checks if the user has already made a request for the given work, as found by the library.
+     *
+     * @param user the user making the request
+     * @param work the work being requested
+     * @param activeRequest the active request of the user for the work, or null if there is none
+     * @throws RequestRuleFailedException if a duplicate request is found
+     */
+    @Override
+    public void check(User user, Work work, Request activeRequest) throws RequestRuleFailedException {
+        if (activeRequest != null) {
+            throw new RequestRuleFailedException(user.getId(), work.getId(), this.getId());
+        }
+    }
 }
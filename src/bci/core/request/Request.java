@@ -68,6 +68,33 @@ public class Request implements Serializable {
         return _work;
     }
 
+    /**
+     * Gets the deadline for returning the work.
+     *
+     * @return the deadline
+     */
+    public int getDeadline() {
+        return _deadline;
+    }
+
+    /**
+     * Gets the date the work was returned.
+     *
+     * @return the return date, or -1 if not yet returned
+     */
+    public int getReturnDate() {
+        return _returnDate;
+    }
+
+    /**
+     * Checks if the fine has been liquidated.
+     *
+     * @return true if the fine was liquidated, false otherwise
+     */
+    public boolean isFineLiquidated() {
+        return _fineLiquidated;
+    }
+
     /**
      * Checks if the work has been returned.
      *
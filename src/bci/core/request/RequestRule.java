@@ -22,4 +22,17 @@ public abstract class RequestRule implements Serializable {
     }
 
     public abstract void check(User user, Work work) throws RequestRuleFailedException;
+
+    /**
+     * Checks the rule, given the active request of the user for the work, already looked up by
+     * the library. By default, the active request is not needed.
+     *
+     * @param user the user making the request
+     * @param work the work being requested
+     * @param activeRequest the active request of the user for the work, or null if there is none
+     * @throws RequestRuleFailedException if the rule fails
+     */
+    public void check(User user, Work work, Request activeRequest) throws RequestRuleFailedException {
+        check(user, work);
+    }
 }
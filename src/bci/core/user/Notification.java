@@ -34,6 +34,18 @@ public class Notification implements Serializable {
         _message = String.format("%s: %s", type.toString(), associatedWork.toString());
     }
 
+    /**
+     * Constructs a Notification with the specified type and an already formatted message.
+     * Used when rebuilding notifications from a snapshot.
+     *
+     * @param type the type of the notification
+     * @param message the message describing the notification
+     */
+    public Notification(NotificationType type, String message) {
+        this.type = type;
+        _message = message;
+    }
+
     /**
      * Returns the type of the notification.
      *
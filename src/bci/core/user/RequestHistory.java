@@ -0,0 +1,127 @@
+package bci.core.user;
+
+import bci.core.request.Request;
+
+import java.util.Collection;
+
+/**
+ * The outcomes of the most recent requests of a {@link User}, by which the user is classified.
+ * <p>
+ * Requests are kept in the order they were made, most recent first, as in
+ * {@link User#getAllRequests()}: for each one, a bit tells whether it was returned and another
+ * whether it was returned late, so recent late returns are counted with a single bit count. An
+ * on-time return only counts towards consecutive on-time returns until the date is past its
+ * deadline, after which {@link Request#shouldPayFine(int)} holds for it, so deadlines are kept
+ * as well. On-time returns owe no fine, so they are never liquidated.
+ */
+final class RequestHistory {
+
+    /**
+     * Number of requests kept, the most looked at by any classification.
+     */
+    static final int SIZE = 5;
+
+    private static final int ALL = (1 << SIZE) - 1;
+
+    private final int[] _ids = new int[SIZE];
+    private final int[] _deadlines = new int[SIZE];
+    private int _size;
+
+    /**
+     * Bit {@code i} is set if the {@code i}-th most recent request was returned.
+     */
+    private int _returned;
+
+    /**
+     * Bit {@code i} is set if the {@code i}-th most recent request was returned after its deadline.
+     */
+    private int _late;
+
+    /**
+     * Builds the history of the given requests.
+     *
+     * @param requests the requests, most recent first.
+     * @return the history of the most recent of them.
+     */
+    static RequestHistory of(Collection<Request> requests) {
+        RequestHistory history = new RequestHistory();
+        for (Request request : requests) {
+            if (history._size == SIZE) {
+                break;
+            }
+            history.set(history._size++, request);
+        }
+        return history;
+    }
+
+    /**
+     * Adds a request just made, dropping the oldest one kept if there are already {@value #SIZE}.
+     *
+     * @param request the request.
+     */
+    void add(Request request) {
+        System.arraycopy(_ids, 0, _ids, 1, SIZE - 1);
+        System.arraycopy(_deadlines, 0, _deadlines, 1, SIZE - 1);
+        _returned = (_returned << 1) & ALL;
+        _late = (_late << 1) & ALL;
+        _size = Math.min(_size + 1, SIZE);
+        set(0, request);
+    }
+
+    /**
+     * Records the return of a request, if it is one of those kept.
+     *
+     * @param request the request returned.
+     */
+    void returned(Request request) {
+        for (int i = 0; i < _size; i++) {
+            if (_ids[i] == request.getId()) {
+                set(i, request);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Counts the late returns among the most recent requests.
+     *
+     * @param n the number of requests looked at, at most {@value #SIZE}.
+     * @return the number of them returned late.
+     */
+    int countLateReturns(int n) {
+        return Integer.bitCount(_late & ((1 << n) - 1));
+    }
+
+    /**
+     * Counts the most recent requests returned on time, whose deadlines are not past, up to the
+     * first that is not.
+     *
+     * @param n           the maximum number counted, at most {@value #SIZE}.
+     * @param currentDate the current date.
+     * @return the number of consecutive on-time returns.
+     */
+    int countConsecutiveOnTimeReturns(int n, int currentDate) {
+        int onTime = Integer.numberOfTrailingZeros(~(_returned & ~_late));
+        int count = Math.min(Math.min(n, _size), onTime);
+        for (int i = 0; i < count; i++) {
+            if (currentDate > _deadlines[i]) {
+                return i;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Sets the outcome of the request at a position.
+     *
+     * @param index   the position of the request, from the most recent.
+     * @param request the request.
+     */
+    private void set(int index, Request request) {
+        int bit = 1 << index;
+        _ids[index] = request.getId();
+        _deadlines[index] = request.getDeadline();
+        _returned = request.hasBeenReturned() ? _returned | bit : _returned & ~bit;
+        _late = request.wasOverdue() ? _late | bit : _late & ~bit;
+    }
+}
@@ -17,6 +17,12 @@ public class User extends WorkObserver implements Comparable<User>, Serializable
     @Serial
     private static final long serialVersionUID = 7147658457022990947L;
 
+    /**
+     * Number of settled requests kept in memory, the most recent ones. Classification only
+     * looks at the most recent requests, so older settled requests are left to the request archive.
+     */
+    public static final int RECENT_SETTLED_REQUESTS = 5;
+
     private final int _id;
     private final String _name;
     private final String _email;
@@ -26,6 +32,12 @@ public class User extends WorkObserver implements Comparable<User>, Serializable
     private final List<Request> _allRequests;
     private final List<Notification> _notifications;
     private int _totalFines;
+    private transient Runnable _pendingRequests;
+
+    /**
+     * The outcomes of the most recent requests, or null until rebuilt from the requests.
+     */
+    private transient RequestHistory _history;
 
     /**
      * Constructs a new User.
@@ -61,6 +73,22 @@ public class User extends WorkObserver implements Comparable<User>, Serializable
         return _name;
     }
 
+    /**
+     * Gets the user email.
+     * @return user email
+     */
+    public String getEmail() {
+        return _email;
+    }
+
+    /**
+     * Gets the name of the user classification.
+     * @return classification name
+     */
+    public String getClassification() {
+        return _classification.toString();
+    }
+
     /**
      * Checks if the user is active.
      * @return true if active, false otherwise
@@ -99,7 +127,24 @@ public class User extends WorkObserver implements Comparable<User>, Serializable
      * @return unmodifiable list of active requests
      */
     public Collection<Request> getActiveRequests() {
-        return Collections.unmodifiableList(_activeRequests);
+        return Collections.unmodifiableList(activeRequests());
+    }
+
+    /**
+     * Gets the collection of the requests of the user, most recent first: the requests not yet
+     * settled and the {@value #RECENT_SETTLED_REQUESTS} most recent settled ones.
+     * @return unmodifiable list of requests
+     */
+    public Collection<Request> getAllRequests() {
+        return Collections.unmodifiableList(allRequests());
+    }
+
+    /**
+     * Gets the notifications for the user without clearing them.
+     * @return unmodifiable list of pending notifications
+     */
+    public Collection<Notification> getPendingNotifications() {
+        return Collections.unmodifiableList(_notifications);
     }
 
     /**
@@ -136,13 +181,13 @@ public class User extends WorkObserver implements Comparable<User>, Serializable
      */
     public void payFine(int currentDate) {
         List<Request> toRemove = new ArrayList<>();
-        for (Request request : _activeRequests) {
+        for (Request request : activeRequests()) {
             if (request.hasBeenReturned()) {
                 request.liquidateFine();
                 toRemove.add(request);
             }
         }
-        _activeRequests.removeAll(toRemove);
+        activeRequests().removeAll(toRemove);
         _totalFines = 0;
 
         _isActive = hasNoSuspensionFlags(currentDate);
@@ -153,8 +198,11 @@ public class User extends WorkObserver implements Comparable<User>, Serializable
      * @param request the request to add
      */
     public void requestWork(Request request) {
-        _activeRequests.add(request);
-        _allRequests.addFirst(request);
+        activeRequests().add(request);
+        allRequests().add(0, request);
+        if (_history != null) {
+            _history.add(request);
+        }
     }
 
     /**
@@ -164,9 +212,12 @@ public class User extends WorkObserver implements Comparable<User>, Serializable
      */
     public void returnWork(Request request, int currentDate) {
         request.markAsReturned(currentDate);
+        if (_history != null) {
+            _history.returned(request);
+        }
 
         if (!request.shouldPayFine(currentDate)) {
-            _activeRequests.remove(request);
+            activeRequests().remove(request);
         } else {
             int fine = request.calculateFine(currentDate);
             _totalFines += fine;
@@ -181,8 +232,90 @@ public class User extends WorkObserver implements Comparable<User>, Serializable
      * @param request the request to dispose
      */
     public void disposeRequest(Request request) {
-        _activeRequests.remove(request);
-        _allRequests.remove(request);
+        activeRequests().remove(request);
+        allRequests().remove(request);
+        _history = null;
+    }
+
+    /**
+     * Checks if a request of the user is settled: returned, with no fine left to pay.
+     * @param request the request to check
+     * @return true if settled, false otherwise
+     */
+    public boolean isSettled(Request request) {
+        return request.hasBeenReturned() && !activeRequests().contains(request);
+    }
+
+    /**
+     * Removes the settled requests older than the {@value #RECENT_SETTLED_REQUESTS} most recent ones.
+     * @return the removed requests
+     */
+    public List<Request> trimSettledRequests() {
+        List<Request> trimmed = new ArrayList<>();
+        int settled = 0;
+        Iterator<Request> iterator = allRequests().iterator();
+        while (iterator.hasNext()) {
+            Request request = iterator.next();
+            if (isSettled(request) && ++settled > RECENT_SETTLED_REQUESTS) {
+                iterator.remove();
+                trimmed.add(request);
+            }
+        }
+        return trimmed;
+    }
+
+    /**
+     * Adds back a settled request read from the request archive.
+     * @param request the request to add
+     */
+    public void restoreSettledRequest(Request request) {
+        ListIterator<Request> iterator = allRequests().listIterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getId() < request.getId()) {
+                iterator.previous();
+                break;
+            }
+        }
+        iterator.add(request);
+        _history = null;
+    }
+
+    /**
+     * Restores the state of a user rebuilt from a snapshot.
+     * @param isActive whether the user is active
+     * @param classification the classification name, as returned by {@link #getClassification()}
+     * @param totalFines total fines
+     * @param activeRequests the active requests, in request order
+     * @param allRequests the requests, as returned by {@link #getAllRequests()}
+     */
+    public void restoreState(boolean isActive, String classification, int totalFines,
+                             List<Request> activeRequests, List<Request> allRequests) {
+        _isActive = isActive;
+        _classification = UserClassificationState.valueOf(classification);
+        _totalFines = totalFines;
+        restoreRequests(activeRequests, allRequests);
+    }
+
+    /**
+     * Restores the requests of a user rebuilt from a snapshot.
+     * @param activeRequests the active requests, in request order
+     * @param allRequests the requests, as returned by {@link #getAllRequests()}
+     */
+    public void restoreRequests(List<Request> activeRequests, List<Request> allRequests) {
+        _pendingRequests = null;
+        _activeRequests.clear();
+        _activeRequests.addAll(activeRequests);
+        _allRequests.clear();
+        _allRequests.addAll(allRequests);
+        _history = null;
+    }
+
+    /**
+     * Defers restoring the requests of a user rebuilt from a snapshot until they are first needed.
+     * @param restoreRequests restores the requests, by calling {@link #restoreRequests}
+     */
+    public void deferRequests(Runnable restoreRequests) {
+        _pendingRequests = restoreRequests;
     }
 
     /**
@@ -232,38 +365,21 @@ public class User extends WorkObserver implements Comparable<User>, Serializable
 
     /**
      * Counts the number of consecutive on-time returns up to n.
-     * @param n maximum number to count
+     * @param n maximum number to count, at most {@value RequestHistory#SIZE}
      * @param currentDate the current date
      * @return count of consecutive on-time returns
      */
     int countConsecutiveOnTimeReturns(int n, int currentDate) {
-        int count = 0;
-        for (Request request : _allRequests) {
-            if (request.hasBeenReturned() && !request.wasOverdue() && !request.isOverdue(currentDate) && !request.shouldPayFine(currentDate) && count < n) {
-                count++;
-            } else {
-                break;
-            }
-        }
-        return count;
+        return history().countConsecutiveOnTimeReturns(n, currentDate);
     }
 
     /**
      * Counts the number of recent late returns up to n.
-     * @param n maximum number to check
+     * @param n maximum number to check, at most {@value RequestHistory#SIZE}
      * @return count of recent late returns
      */
     int countRecentLateReturns(int n) {
-        int count = 0;
-        int checked = 0;
-        for (Request request : _allRequests) {
-            if (checked == n) break;
-            if (request.wasOverdue()) {
-                count++;
-            }
-            checked++;
-        }
-        return count;
+        return history().countLateReturns(n);
     }
 
     /**
@@ -274,11 +390,36 @@ public class User extends WorkObserver implements Comparable<User>, Serializable
     private boolean hasNoSuspensionFlags(int currentDate) {
         if (_totalFines > 0) return false;
 
-        for (Request request : _activeRequests) {
+        for (Request request : activeRequests()) {
             if (request.isOverdue(currentDate)) {
                 return false;
             }
         }
         return true;
     }
-}
\ No newline at end of file
+
+    private List<Request> activeRequests() {
+        resolveRequests();
+        return _activeRequests;
+    }
+
+    private List<Request> allRequests() {
+        resolveRequests();
+        return _allRequests;
+    }
+
+    private RequestHistory history() {
+        if (_history == null) {
+            _history = RequestHistory.of(allRequests());
+        }
+        return _history;
+    }
+
+    private void resolveRequests() {
+        if (_pendingRequests != null) {
+            Runnable restoreRequests = _pendingRequests;
+            _pendingRequests = null;
+            restoreRequests.run();
+        }
+    }
+}
@@ -14,4 +14,20 @@ abstract class UserClassificationState implements Serializable {
     public abstract int getMaxWorkRequestPrice();
     public abstract int getRequestDuration(Work work);
     public abstract String toString();
+
+    /**
+     * Gets the classification state with the given name.
+     *
+     * @param name the name of the state, as returned by {@link #toString()}
+     * @return the state with that name
+     * @throws IllegalArgumentException if there is no state with that name
+     */
+    static UserClassificationState valueOf(String name) {
+        return switch (name) {
+            case "NORMAL" -> NormalState.getInstance();
+            case "CUMPRIDOR" -> CumpridorState.getInstance();
+            case "FALTOSO" -> FaltosoState.getInstance();
+            default -> throw new IllegalArgumentException("Unknown classification " + name);
+        };
+    }
 }
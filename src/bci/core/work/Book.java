@@ -24,8 +24,12 @@ public class Book extends Work {
         this._authors = builder._authors;
     }
 
+    public String getIsbn() {
+        return _isbn;
+    }
+
     @Override
-    protected Collection<Creator> getCreators() {
+    public Collection<Creator> getCreators() {
         return Collections.unmodifiableList(_authors);
     }
 
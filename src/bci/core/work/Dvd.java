@@ -21,8 +21,12 @@ public class Dvd extends Work {
         this._director = builder._director;
     }
 
+    public String getIgac() {
+        return _igac;
+    }
+
     @Override
-    protected Collection<Creator> getCreators() {
+    public Collection<Creator> getCreators() {
         return Collections.singleton(_director);
     }
 
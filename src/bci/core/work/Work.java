@@ -13,6 +13,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 
 public abstract class Work implements Serializable {
     @Serial
@@ -27,6 +28,8 @@ public abstract class Work implements Serializable {
     private final WorkType _type;
     private final List<Request> _requests;
     private final List<WorkObserver> _observers;
+    private transient Runnable _pendingLinks;
+    private transient String _titleKey;
 
     protected Work(Builder<?, ?> builder) {
         _id = builder._id;
@@ -46,6 +49,17 @@ public abstract class Work implements Serializable {
     public String getTitle() {
         return _title;
     }
+
+    /**
+     * Gets the title in lower case, by which works are listed. Computed once per work.
+     *
+     * @return the title in lower case.
+     */
+    public String getTitleKey() {
+        if (_titleKey == null)
+            _titleKey = _title.toLowerCase();
+        return _titleKey;
+    }
     public int getPrice() {
         return _price;
     }
@@ -58,16 +72,61 @@ public abstract class Work implements Serializable {
     public int getAvailableCopies() {
         return _availableCopies;
     }
+    public WorkType getType() {
+        return _type;
+    }
     public Collection<Request> getRequests() {
-        return Collections.unmodifiableList(_requests);
+        return Collections.unmodifiableList(requests());
+    }
+    public Collection<WorkObserver> getObservers() {
+        return Collections.unmodifiableList(observers());
+    }
+
+    /**
+     * Restores the state of a work rebuilt from a snapshot.
+     * @param availableCopies the number of available copies.
+     * @param requests the requests of the work, in request order.
+     * @param observers the observers subscribed to the work, in subscription order.
+     */
+    public void restoreState(int availableCopies, List<Request> requests, List<? extends WorkObserver> observers) {
+        _availableCopies = availableCopies;
+        restoreLinks(requests, observers);
+    }
+
+    /**
+     * Restores the requests and observers of a work rebuilt from a snapshot.
+     * @param requests the requests of the work, in request order.
+     * @param observers the observers subscribed to the work, in subscription order.
+     */
+    public void restoreLinks(List<Request> requests, List<? extends WorkObserver> observers) {
+        _pendingLinks = null;
+        _requests.clear();
+        _requests.addAll(requests);
+        _observers.clear();
+        _observers.addAll(observers);
+    }
+
+    /**
+     * Defers restoring the requests and observers of a work rebuilt from a snapshot until
+     * they are first needed.
+     * @param restoreLinks restores the requests and observers, by calling {@link #restoreLinks}.
+     */
+    public void deferLinks(Runnable restoreLinks) {
+        _pendingLinks = restoreLinks;
     }
 
     public boolean hasTerm(String term) {
-        if (_title.toLowerCase().contains(term)) {
-            return true;
-        }
+        return getTitleKey().contains(term) || hasCreatorTerm(term);
+    }
+
+    /**
+     * Checks if the name of a creator of the work contains a term.
+     * @param term the term, in lower case.
+     * @return true if a creator name contains the term, false otherwise.
+     */
+    public boolean hasCreatorTerm(String term) {
         for (Creator creator : getCreators()) {
-            if (creator.getName().toLowerCase().contains(term)) {
+            if (creator.getNameKey().contains(term)) {
                 return true;
             }
         }
@@ -109,18 +168,41 @@ public abstract class Work implements Serializable {
             }
         }
 
-        _requests.clear();
-        _observers.clear();
+        requests().clear();
+        observers().clear();
 
         return creatorsToDispose;
     }
 
     public void requestWork(Request request) {
-        _requests.add(request);
+        requests().add(request);
         _availableCopies--;
         notifyWorkWasRequested();
     }
 
+    /**
+     * Removes a settled request left to the request archive.
+     * @param request the request to remove.
+     */
+    public void releaseRequest(Request request) {
+        requests().remove(request);
+    }
+
+    /**
+     * Adds back a settled request read from the request archive.
+     * @param request the request to add.
+     */
+    public void restoreSettledRequest(Request request) {
+        ListIterator<Request> iterator = requests().listIterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getId() > request.getId()) {
+                iterator.previous();
+                break;
+            }
+        }
+        iterator.add(request);
+    }
+
     public void returnWork() {
         if (++_availableCopies == 1) {
             notifyWorkHasAvailableCopy();
@@ -128,11 +210,11 @@ public abstract class Work implements Serializable {
     }
 
     public void subscribe(WorkObserver observer) {
-        _observers.add(observer);
+        observers().add(observer);
     }
 
     public void unsubscribe(WorkObserver observer) {
-        _observers.remove(observer);
+        observers().remove(observer);
     }
 
     private void notifyWorkWasRequested() {
@@ -146,14 +228,32 @@ public abstract class Work implements Serializable {
     }
 
     private void notifyObservers(Notification notification) {
-        for (WorkObserver observer : _observers) {
+        for (WorkObserver observer : observers()) {
             if (observer.getSubscribedTypesOfWork(_id).contains(notification.getType())) {
                 observer.update(notification);
             }
         }
     }
 
-    protected abstract Collection<Creator> getCreators();
+    public abstract Collection<Creator> getCreators();
+
+    private List<Request> requests() {
+        resolveLinks();
+        return _requests;
+    }
+
+    private List<WorkObserver> observers() {
+        resolveLinks();
+        return _observers;
+    }
+
+    private void resolveLinks() {
+        if (_pendingLinks != null) {
+            Runnable restoreLinks = _pendingLinks;
+            _pendingLinks = null;
+            restoreLinks.run();
+        }
+    }
 
     protected String getGeneralDescription() {
         return String.format("%d - %d de %d - %s - %s - %d - %s",
@@ -165,6 +265,11 @@ public abstract class Work implements Serializable {
         return obj instanceof Work work && _id == work._id;
     }
 
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(_id);
+    }
+
     @Override
     public abstract String toString();
 
@@ -221,6 +326,18 @@ public abstract class Work implements Serializable {
             return self();
         }
 
+        /**
+         * Sets the total copies of a work restored from a snapshot. Unlike {@link #totalCopies(int)},
+         * any number is accepted, as the work may have been left with none, or fewer, since it was
+         * created.
+         * @param totalCopies the total copies of the work when it was saved.
+         * @return this builder.
+         */
+        public B restoredTotalCopies(int totalCopies) {
+            this._totalCopies = totalCopies;
+            return self();
+        }
+
         protected abstract B self();
 
         public abstract T build();
@@ -1,35 +1,63 @@
 package bci.core.work;
 
+import bci.core.IntMap;
 import bci.core.user.Notification;
 import bci.core.user.NotificationType;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public abstract class WorkObserver implements Serializable {
     @Serial
     private static final long serialVersionUID = 7147111111111111124L;
 
-    private final HashMap<Integer, List<NotificationType>> _subscribedWorks = new HashMap<>();
+    /**
+     * The fields written by Java serialization, as in files written by earlier versions, whose
+     * subscriptions were a {@link HashMap}.
+     */
+    @Serial
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("_subscribedWorks", HashMap.class),
+    };
+
+    private IntMap<List<NotificationType>> _subscribedWorks = new IntMap<>();
 
     public List<NotificationType> getSubscribedTypesOfWork(int workId) {
-        return _subscribedWorks.getOrDefault(workId, new ArrayList<>());
+        List<NotificationType> types = _subscribedWorks.get(workId);
+        return types != null ? types : new ArrayList<>();
+    }
+
+    /**
+     * Gets the IDs of the works subscribed to.
+     *
+     * @return the IDs of the works, in no given order.
+     */
+    public int[] getSubscribedWorks() {
+        return _subscribedWorks.keys();
     }
 
     public void subscribeToWorkForNotification(int workId, NotificationType type) {
-        _subscribedWorks.putIfAbsent(workId, new ArrayList<>());
         List<NotificationType> types = _subscribedWorks.get(workId);
+        if (types == null) {
+            types = new ArrayList<>();
+            _subscribedWorks.put(workId, types);
+        }
         if (!types.contains(type)) {
             types.add(type);
         }
     }
 
     public void unsubscribeFromWorkForNotification(int workId, NotificationType type) {
-        if (_subscribedWorks.containsKey(workId)) {
-            List<NotificationType> types = _subscribedWorks.get(workId);
+        List<NotificationType> types = _subscribedWorks.get(workId);
+        if (types != null) {
             types.remove(type);
             if (types.isEmpty()) {
                 _subscribedWorks.remove(workId);
@@ -38,4 +66,18 @@ public abstract class WorkObserver implements Serializable {
     }
 
     public abstract void update(Notification notification);
+
+    @Serial
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        _subscribedWorks = IntMap.of((Map<Integer, List<NotificationType>>) fields.get("_subscribedWorks", new HashMap<>()));
+    }
+
+    @Serial
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("_subscribedWorks", _subscribedWorks.toHashMap());
+        out.writeFields();
+    }
 }